@@ -0,0 +1,264 @@
+package core;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// The quadtree MutualAttraction sums its forces over, rebuilt every step
+// from the bodies with mass.
+//
+// Bodies are sorted by the Morton code of their position quantised to 16
+// bits a side within a square around them all, so the bodies of every cell
+// of the tree are one range of the sorted order. A cell is only kept where
+// its bodies split between its quadrants: a range whose first and last codes
+// agree on their first d digits (2 bits each) lies in one cell of depth d,
+// and its children are the runs of the next digit. Every boundary between
+// two sorted bodies in different cells then splits exactly one kept cell,
+// so a cell's number is its first split less one: 0 to n - 2, no matter in
+// which order the cells are built. Subtrees are built on the executor with
+// nothing to share but the arrays they fill in. Ranges that go all 16
+// digits down without splitting, and single bodies, are leaves, referred to
+// as ~first body.
+final class BarnesHutTree {
+    private static final int DIGITS = 16;
+    private static final int BUILD_GRAIN = 4096;
+    private static final int PARALLEL_GRAIN = 512;
+
+    int count;
+    int root;
+    // Sorted bodies: index in the world's body list, position and mass
+    int[] body = new int[0];
+    double[] x = new double[0], y = new double[0], mass = new double[0];
+    private int[] code = new int[0];
+    // The bodies as add() got them, and which of them each sorted body is
+    private int[] addedBody = new int[0];
+    private double[] addedX = new double[0], addedY = new double[0], addedMass = new double[0];
+    private int[] order = new int[0];
+    // Leaves by first body: the end of their range
+    int[] leafEnd = new int[0];
+    // Cells by number: the children, the range of bodies, the side, and the
+    // mass and centre of mass of everything in the cell
+    int[] children = new int[0], childCount = new int[0];
+    int[] cellFrom = new int[0], cellTo = new int[0];
+    double[] cellSize = new double[0], cellMass = new double[0], centerX = new double[0], centerY = new double[0];
+
+    // Radix sort scratch
+    private int[] code2 = new int[0], order2 = new int[0];
+    private final int[] counts = new int[(1 << 16) + 1];
+
+    // State of the build being done, in fields for the range passes
+    private double rootX, rootY, rootSize, scale;
+    private final ParallelRange.Body codePass = this::computeCodes;
+    private final ParallelRange.Body gatherPass = this::gather;
+
+    // Takes the bodies for the next build(): index in the world's body list,
+    // position and mass
+    void clear() { count = 0; }
+
+    void add(int index, double px, double py, double m) {
+        if (count == addedX.length) grow(Math.max(64, count * 2));
+        addedBody[count] = index;
+        addedX[count] = px;
+        addedY[count] = py;
+        addedMass[count] = m;
+        count++;
+    }
+
+    void build(ForkJoinPool executor) {
+        if (count == 0) return;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, addedX[i]);
+            minY = Math.min(minY, addedY[i]);
+            maxX = Math.max(maxX, addedX[i]);
+            maxY = Math.max(maxY, addedY[i]);
+        }
+        rootX = minX;
+        rootY = minY;
+        rootSize = Math.max(Math.max(maxX - minX, maxY - minY), 1e-9);
+        scale = (1 << DIGITS) / rootSize;
+
+        if (executor == null) {
+            computeCodes(0, count);
+        } else {
+            executor.invoke(new ParallelRange(codePass, 0, count, PARALLEL_GRAIN));
+        }
+        sort();
+        if (executor == null) {
+            gather(0, count);
+            root = build(0, count);
+        } else {
+            executor.invoke(new ParallelRange(gatherPass, 0, count, PARALLEL_GRAIN));
+            Build task = new Build(this, 0, count);
+            executor.invoke(task);
+            root = task.ref;
+        }
+    }
+
+    private void grow(int capacity) {
+        addedBody = Arrays.copyOf(addedBody, capacity);
+        addedX = Arrays.copyOf(addedX, capacity);
+        addedY = Arrays.copyOf(addedY, capacity);
+        addedMass = Arrays.copyOf(addedMass, capacity);
+        body = new int[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        mass = new double[capacity];
+        code = new int[capacity];
+        code2 = new int[capacity];
+        order = new int[capacity];
+        order2 = new int[capacity];
+        leafEnd = new int[capacity];
+        children = new int[4 * capacity];
+        childCount = new int[capacity];
+        cellFrom = new int[capacity];
+        cellTo = new int[capacity];
+        cellSize = new double[capacity];
+        cellMass = new double[capacity];
+        centerX = new double[capacity];
+        centerY = new double[capacity];
+    }
+
+    private void computeCodes(int from, int to) {
+        int max = (1 << DIGITS) - 1;
+        for (int i = from; i < to; i++) {
+            int qx = Math.min((int) ((addedX[i] - rootX) * scale), max);
+            int qy = Math.min((int) ((addedY[i] - rootY) * scale), max);
+            code[i] = spread(qx) | (spread(qy) << 1);
+            order[i] = i;
+        }
+    }
+
+    // Sorts code and order by code, 16 bits at a time. Stable, so bodies in
+    // one leaf stay in the order they were added.
+    private void sort() {
+        for (int shift = 0; shift < 32; shift += 16) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) counts[((code[i] >>> shift) & 0xFFFF) + 1]++;
+            for (int d = 0; d < 1 << 16; d++) counts[d + 1] += counts[d];
+            for (int i = 0; i < count; i++) {
+                int at = counts[(code[i] >>> shift) & 0xFFFF]++;
+                code2[at] = code[i];
+                order2[at] = order[i];
+            }
+            int[] t = code; code = code2; code2 = t;
+            t = order; order = order2; order2 = t;
+        }
+    }
+
+    private void gather(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int k = order[i];
+            body[i] = addedBody[k];
+            x[i] = addedX[k];
+            y[i] = addedY[k];
+            mass[i] = addedMass[k];
+        }
+    }
+
+    // The cell or leaf of sorted bodies [from, to), with its mass data
+    private int build(int from, int to) {
+        int diff = code[from] ^ code[to - 1];
+        if (to - from == 1 || diff == 0) {
+            leafEnd[from] = to;
+            return ~from;
+        }
+        int depth = Integer.numberOfLeadingZeros(diff) >>> 1;
+        int shift = 2 * (DIGITS - 1 - depth);
+        int cell = split(from, to, shift) - 1;
+        int n = 0;
+        for (int start = from; start < to; n++) {
+            int end = split(start, to, shift);
+            children[4 * cell + n] = build(start, end);
+            start = end;
+        }
+        finishCell(cell, n, from, to, depth);
+        return cell;
+    }
+
+    // The first of sorted bodies [from, to) past the run of from's digit at shift
+    private int split(int from, int to, int shift) {
+        int digit = (code[from] >>> shift) & 3;
+        int lo = from + 1, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((code[mid] >>> shift) & 3) == digit) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private void finishCell(int cell, int n, int from, int to, int depth) {
+        childCount[cell] = n;
+        cellFrom[cell] = from;
+        cellTo[cell] = to;
+        cellSize[cell] = rootSize / (1 << depth);
+        double m = 0, mx = 0, my = 0;
+        for (int k = 0; k < n; k++) {
+            int child = children[4 * cell + k];
+            if (child >= 0) {
+                m += cellMass[child];
+                mx += cellMass[child] * centerX[child];
+                my += cellMass[child] * centerY[child];
+            } else {
+                for (int j = ~child; j < leafEnd[~child]; j++) {
+                    m += mass[j];
+                    mx += mass[j] * x[j];
+                    my += mass[j] * y[j];
+                }
+            }
+        }
+        cellMass[cell] = m;
+        centerX[cell] = mx / m;
+        centerY[cell] = my / m;
+    }
+
+    // v's 16 low bits moved to the even bits
+    private static int spread(int v) {
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        return (v | (v << 1)) & 0x55555555;
+    }
+
+    // Builds a large range's children as tasks of their own
+    private static final class Build extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BarnesHutTree tree;
+        private final int from, to;
+        int ref;
+
+        Build(BarnesHutTree tree, int from, int to) {
+            this.tree = tree;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int[] code = tree.code;
+            int diff = code[from] ^ code[to - 1];
+            if (to - from <= BUILD_GRAIN || diff == 0) {
+                ref = tree.build(from, to);
+                return;
+            }
+            int depth = Integer.numberOfLeadingZeros(diff) >>> 1;
+            int shift = 2 * (DIGITS - 1 - depth);
+            int cell = tree.split(from, to, shift) - 1;
+            Build[] parts = new Build[4];
+            int n = 0;
+            for (int start = from; start < to; n++) {
+                int end = tree.split(start, to, shift);
+                parts[n] = new Build(tree, start, end);
+                start = end;
+            }
+            if (n == 2) invokeAll(parts[0], parts[1]);
+            else if (n == 3) invokeAll(parts[0], parts[1], parts[2]);
+            else invokeAll(parts[0], parts[1], parts[2], parts[3]);
+            for (int k = 0; k < n; k++) tree.children[4 * cell + k] = parts[k].ref;
+            tree.finishCell(cell, n, from, to, depth);
+            ref = cell;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package core;
+
+import java.util.Arrays;
+
+// Recycles bodies for scenes that keep spawning and removing them, like
+// projectiles or debris, so steady churn does not allocate. Bodies go back in
+// once PhysicsWorld.removeBody() has taken them out; acquire() hands them out
+// again in the state a new PhysicsBody with the same arguments would have.
+//
+// Not thread safe; use it from the thread that changes the world.
+public class BodyPool {
+    private PhysicsBody[] free = new PhysicsBody[16];
+    private int size;
+
+    public PhysicsBody acquire(double x, double y, Shape shape, double mass, boolean isStatic) {
+        if (size == 0) return new PhysicsBody(new Vector2D(x, y), shape, mass, isStatic);
+        PhysicsBody body = free[--size];
+        free[size] = null;
+        body.reset(x, y, shape, mass, isStatic);
+        return body;
+    }
+
+    // body must not be in a world, nor released twice
+    public void release(PhysicsBody body) {
+        if (body.index >= 0) throw new IllegalArgumentException("Body is still in a world");
+        if (size == free.length) free = Arrays.copyOf(free, size * 2);
+        free[size++] = body;
+    }
+
+    // Bodies waiting to be reused
+    public int size() { return size; }
+}
@@ -0,0 +1,22 @@
+package core;
+
+import java.util.List;
+
+// Finds the pairs of bodies whose bounds overlap so that only those pairs
+// reach the (much more expensive) narrow phase in PhysicsWorld.
+public interface BroadPhase {
+    // Writes candidate pairs as indices into bodies. Pairs where both bodies are
+    // static or sleeping are never reported.
+    void collectPairs(List<PhysicsBody> bodies, PairList pairs);
+
+    // Drops any state kept between steps, e.g. after PhysicsWorld.reset().
+    default void clear() {}
+
+    // Forgets a body PhysicsWorld.removeBody() has taken out. Another body
+    // has moved into its index, so state kept by index must not rely on it.
+    default void remove(PhysicsBody body) {}
+
+    static boolean isInactive(PhysicsBody b) {
+        return b.isStatic || b.isSleeping;
+    }
+}
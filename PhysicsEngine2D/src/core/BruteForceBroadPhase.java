@@ -0,0 +1,20 @@
+package core;
+
+import java.util.List;
+
+// Reports every pair that has at least one active body. Kept as a reference
+// to compare the other strategies against.
+public class BruteForceBroadPhase implements BroadPhase {
+    @Override
+    public void collectPairs(List<PhysicsBody> bodies, PairList pairs) {
+        int n = bodies.size();
+        for (int i = 0; i < n; i++) {
+            PhysicsBody a = bodies.get(i);
+            for (int j = i + 1; j < n; j++) {
+                PhysicsBody b = bodies.get(j);
+                if (BroadPhase.isInactive(a) && BroadPhase.isInactive(b)) continue;
+                pairs.add(i, j);
+            }
+        }
+    }
+}
@@ -1,18 +1,27 @@
 package core;
 
-import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CircleShape implements Shape {
     private final double radius;
+    private final Vector2D supportCenter;
+    private final Vector2D centroid = new Vector2D(0, 0);
+    private static final Map<Double, CircleShape> SHARED = new ConcurrentHashMap<>();
 
     public CircleShape(double radius) {
         this.radius = radius;
+        this.supportCenter = new Vector2D(0, radius);
     }
 
-    @Override
-    public void draw(Graphics2D g, Vector2D position, double angle) {
-        int r = (int) (radius * 2);
-        g.fillOval((int)(position.x - radius), (int)(position.y - radius), r, r);
+    // Shapes hold nothing specific to a body, so bodies of one size can share
+    // an instance. Returns the same shape for the same radius.
+    public static CircleShape of(double radius) {
+        return SHARED.computeIfAbsent(radius, CircleShape::new);
+    }
+
+    public double getRadius() {
+        return radius;
     }
 
     @Override
@@ -21,7 +30,22 @@ public class CircleShape implements Shape {
     }
     
     @Override
-    public Vector2D getSupportCenter(double angle) {
-        return new Vector2D(0, radius);
+    public Vector2D getSupportCenter(double cos, double sin) {
+        return supportCenter;
+    }
+
+    @Override
+    public double getArea() {
+        return Math.PI * radius * radius;
+    }
+
+    @Override
+    public Vector2D getCentroid() {
+        return centroid;
+    }
+
+    @Override
+    public double getUnitInertia() {
+        return radius * radius / 2;
     }
 }
@@ -0,0 +1,264 @@
+package core;
+
+// Narrow phase. Polygons (RectangleShape, TriangleShape) are tested with the
+// separating axis theorem on their cached world vertices; every other shape is
+// treated as a circle of its bounding radius. Pieces of StaticGeometry go
+// through the same polygon code.
+public final class Collision {
+    private Collision() {}
+
+    // Fills m with the contacts between a and b; returns false if they are apart
+    public static boolean collide(PhysicsBody a, PhysicsBody b, ContactManifold m) {
+        m.set(a, b);
+        boolean polyA = a.shape instanceof PolygonShape;
+        boolean polyB = b.shape instanceof PolygonShape;
+        if (polyA && polyB) return polygonPolygon(a.getWorldVertices(), a.getWorldNormals(), b.getWorldVertices(), b.getWorldNormals(), m, 0);
+        if (polyA) return circlePolygon(b, a.getWorldVertices(), a.getWorldNormals(), m, true, 0);
+        if (polyB) return circlePolygon(a, b.getWorldVertices(), b.getWorldNormals(), m, false, 0);
+        return circleCircle(a, b, m);
+    }
+
+    // Fills m with the contacts between body (as A) and a piece of static
+    // geometry (as B, represented by the geometry's static body). Features
+    // up to margin apart are reported too, as points of negative depth, so
+    // the solver can stop a body at a thin piece it would otherwise cross in
+    // one step.
+    public static boolean collide(PhysicsBody body, StaticGeometry geometry, int piece, ContactManifold m, double margin) {
+        m.set(body, geometry.body);
+        double[] v = geometry.getVertices(piece), n = geometry.getNormals(piece);
+        if (body.shape instanceof PolygonShape) return polygonPolygon(body.getWorldVertices(), body.getWorldNormals(), v, n, m, margin);
+        return circlePolygon(body, v, n, m, false, margin);
+    }
+
+    // A lower bound on the distance between a and b, negative exactly when
+    // they overlap. Exact when a circle is involved; for two polygons it is the
+    // largest separation along a face normal, which never exceeds the distance.
+    public static double separation(PhysicsBody a, PhysicsBody b) {
+        boolean polyA = a.shape instanceof PolygonShape;
+        boolean polyB = b.shape instanceof PolygonShape;
+        if (polyA && polyB) return polygonSeparation(a.getWorldVertices(), a.getWorldNormals(), b.getWorldVertices(), b.getWorldNormals());
+        if (polyA) return circlePolygonSeparation(b, a.getWorldVertices(), a.getWorldNormals());
+        if (polyB) return circlePolygonSeparation(a, b.getWorldVertices(), b.getWorldNormals());
+        double dx = b.position.x - a.position.x;
+        double dy = b.position.y - a.position.y;
+        return Math.sqrt(dx * dx + dy * dy) - a.getRadius() - b.getRadius();
+    }
+
+    // The same lower bound between body and a piece of static geometry
+    public static double separation(PhysicsBody body, StaticGeometry geometry, int piece) {
+        double[] v = geometry.getVertices(piece), n = geometry.getNormals(piece);
+        if (body.shape instanceof PolygonShape) return polygonSeparation(body.getWorldVertices(), body.getWorldNormals(), v, n);
+        return circlePolygonSeparation(body, v, n);
+    }
+
+    private static double polygonSeparation(double[] va, double[] na, double[] vb, double[] nb) {
+        return Math.max(faceSeparation(va, na, leastPenetrationFace(va, na, vb), vb),
+                        faceSeparation(vb, nb, leastPenetrationFace(vb, nb, va), va));
+    }
+
+    private static double circlePolygonSeparation(PhysicsBody circle, double[] v, double[] n) {
+        double r = circle.getRadius();
+        double cx = circle.position.x, cy = circle.position.y;
+        int count = v.length / 2;
+        double separation = Double.NEGATIVE_INFINITY;
+        int face = 0;
+        for (int i = 0; i < count; i++) {
+            double s = n[2 * i] * (cx - v[2 * i]) + n[2 * i + 1] * (cy - v[2 * i + 1]);
+            if (s > separation) {
+                separation = s;
+                face = i;
+            }
+        }
+        if (separation <= 0) return separation - r;
+        // Outside the face: the closest feature may be one of its vertices
+        int next = (face + 1) % count;
+        double v1x = v[2 * face], v1y = v[2 * face + 1];
+        double v2x = v[2 * next], v2y = v[2 * next + 1];
+        if ((cx - v1x) * (v2x - v1x) + (cy - v1y) * (v2y - v1y) <= 0) {
+            return Math.hypot(cx - v1x, cy - v1y) - r;
+        }
+        if ((cx - v2x) * (v1x - v2x) + (cy - v2y) * (v1y - v2y) <= 0) {
+            return Math.hypot(cx - v2x, cy - v2y) - r;
+        }
+        return separation - r;
+    }
+
+    private static boolean circleCircle(PhysicsBody a, PhysicsBody b, ContactManifold m) {
+        double dx = b.position.x - a.position.x;
+        double dy = b.position.y - a.position.y;
+        double ra = a.getRadius(), rb = b.getRadius();
+        double distSq = dx * dx + dy * dy;
+        if (distSq >= (ra + rb) * (ra + rb)) return false;
+        double dist = Math.sqrt(distSq);
+        double nx = dist == 0 ? 0 : dx / dist;
+        double ny = dist == 0 ? 1 : dy / dist;
+        m.normalX = nx;
+        m.normalY = ny;
+        m.addPoint(a.position.x + nx * ra, a.position.y + ny * ra, ra + rb - dist, 0);
+        return true;
+    }
+
+    // flip is true when the circle is body B of the manifold
+    private static boolean circlePolygon(PhysicsBody circle, double[] v, double[] n, ContactManifold m, boolean flip, double margin) {
+        double r = circle.getRadius();
+        double cx = circle.position.x, cy = circle.position.y;
+        int count = v.length / 2;
+
+        // Face of the polygon closest to the circle centre
+        double separation = Double.NEGATIVE_INFINITY;
+        int face = 0;
+        for (int i = 0; i < count; i++) {
+            double s = n[2 * i] * (cx - v[2 * i]) + n[2 * i + 1] * (cy - v[2 * i + 1]);
+            if (s > r + margin) return false;
+            if (s > separation) {
+                separation = s;
+                face = i;
+            }
+        }
+
+        int next = (face + 1) % count;
+        double v1x = v[2 * face], v1y = v[2 * face + 1];
+        double v2x = v[2 * next], v2y = v[2 * next + 1];
+        double nx, ny, depth;
+        // Faces are numbered from 0, vertices from count
+        int feature = face;
+        if (separation < 1e-9) {
+            // Centre inside the polygon
+            nx = n[2 * face];
+            ny = n[2 * face + 1];
+            depth = r - separation;
+        } else {
+            double dot1 = (cx - v1x) * (v2x - v1x) + (cy - v1y) * (v2y - v1y);
+            double dot2 = (cx - v2x) * (v1x - v2x) + (cy - v2y) * (v1y - v2y);
+            double px, py;
+            if (dot1 <= 0 || dot2 <= 0) {
+                // Closest feature is a vertex
+                px = dot1 <= 0 ? v1x : v2x;
+                py = dot1 <= 0 ? v1y : v2y;
+                feature = count + (dot1 <= 0 ? face : next);
+                double dx = cx - px, dy = cy - py;
+                double distSq = dx * dx + dy * dy;
+                if (distSq > (r + margin) * (r + margin)) return false;
+                double dist = Math.sqrt(distSq);
+                nx = dist == 0 ? n[2 * face] : dx / dist;
+                ny = dist == 0 ? n[2 * face + 1] : dy / dist;
+                depth = r - dist;
+            } else {
+                nx = n[2 * face];
+                ny = n[2 * face + 1];
+                depth = r - separation;
+            }
+        }
+
+        // (nx, ny) points from the polygon towards the circle
+        double sign = flip ? 1 : -1;
+        m.normalX = nx * sign;
+        m.normalY = ny * sign;
+        m.addPoint(cx - nx * r, cy - ny * r, depth, feature);
+        return true;
+    }
+
+    // Polygons as world-space vertex and normal arrays; a two-vertex polygon is a segment
+    private static boolean polygonPolygon(double[] va, double[] na, double[] vb, double[] nb, ContactManifold m, double margin) {
+        int faceA = leastPenetrationFace(va, na, vb);
+        double penA = faceSeparation(va, na, faceA, vb);
+        if (penA >= margin) return false;
+        int faceB = leastPenetrationFace(vb, nb, va);
+        double penB = faceSeparation(vb, nb, faceB, va);
+        if (penB >= margin) return false;
+
+        // Prefer A as the reference polygon unless B is clearly better, so the
+        // choice does not flicker between steps
+        boolean flip = !(penA >= penB * 0.95 + penA * 0.01);
+        double[] refV = flip ? vb : va, refN = flip ? nb : na;
+        double[] incV = flip ? va : vb, incN = flip ? na : nb;
+        int refFace = flip ? faceB : faceA;
+        int refCount = refV.length / 2, incCount = incV.length / 2;
+
+        double rnx = refN[2 * refFace], rny = refN[2 * refFace + 1];
+
+        // Incident face: the one most anti-parallel to the reference normal
+        int incFace = 0;
+        double minDot = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < incCount; i++) {
+            double d = rnx * incN[2 * i] + rny * incN[2 * i + 1];
+            if (d < minDot) {
+                minDot = d;
+                incFace = i;
+            }
+        }
+        int incNext = (incFace + 1) % incCount;
+        double[] cx = m.clipX, cy = m.clipY;
+        cx[0] = incV[2 * incFace]; cy[0] = incV[2 * incFace + 1];
+        cx[1] = incV[2 * incNext]; cy[1] = incV[2 * incNext + 1];
+
+        int refNext = (refFace + 1) % refCount;
+        double v1x = refV[2 * refFace], v1y = refV[2 * refFace + 1];
+        double v2x = refV[2 * refNext], v2y = refV[2 * refNext + 1];
+        double tx = v2x - v1x, ty = v2y - v1y;
+        double len = Math.sqrt(tx * tx + ty * ty);
+        tx /= len;
+        ty /= len;
+
+        // Clip the incident edge to the side planes of the reference face
+        if (clip(-tx, -ty, -(tx * v1x + ty * v1y), cx, cy) < 2) return false;
+        if (clip(tx, ty, tx * v2x + ty * v2y, cx, cy) < 2) return false;
+
+        // Keep the points behind the reference face, or within margin of it. A
+        // point is identified by the reference face, the incident edge, which
+        // polygon was the reference and which end of the edge it came from
+        double refC = rnx * v1x + rny * v1y;
+        int feature = (refFace * incCount + incFace) << 2 | (flip ? 2 : 0);
+        for (int i = 0; i < 2; i++) {
+            double separation = rnx * cx[i] + rny * cy[i] - refC;
+            if (separation <= margin) m.addPoint(cx[i], cy[i], -separation, feature | i);
+        }
+        if (m.pointCount == 0) return false;
+        m.normalX = flip ? -rnx : rnx;
+        m.normalY = flip ? -rny : rny;
+        return true;
+    }
+
+    // The face of polygon 1 with the largest separation from polygon 2. A
+    // positive separation means the face is a separating axis.
+    private static int leastPenetrationFace(double[] v1, double[] n1, double[] v2) {
+        double best = Double.NEGATIVE_INFINITY;
+        int bestFace = 0;
+        for (int i = 0; i < v1.length / 2; i++) {
+            double d = faceSeparation(v1, n1, i, v2);
+            if (d > best) {
+                best = d;
+                bestFace = i;
+            }
+        }
+        return bestFace;
+    }
+
+    // Distance from face i of polygon 1 to the deepest vertex of polygon 2
+    private static double faceSeparation(double[] v1, double[] n1, int i, double[] v2) {
+        double nx = n1[2 * i], ny = n1[2 * i + 1];
+        double support = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < v2.length / 2; j++) {
+            support = Math.min(support, nx * v2[2 * j] + ny * v2[2 * j + 1]);
+        }
+        return support - (nx * v1[2 * i] + ny * v1[2 * i + 1]);
+    }
+
+    // Clips the segment (x[0], y[0]) - (x[1], y[1]) to the half plane n.p <= c
+    // in place and returns the number of points left
+    private static int clip(double nx, double ny, double c, double[] x, double[] y) {
+        double d1 = nx * x[0] + ny * y[0] - c;
+        double d2 = nx * x[1] + ny * y[1] - c;
+        if (d1 <= 0 && d2 <= 0) return 2;
+        if (d1 > 0 && d2 > 0) return 0;
+        double t = d1 / (d1 - d2);
+        double ix = x[0] + t * (x[1] - x[0]);
+        double iy = y[0] + t * (y[1] - y[0]);
+        if (d1 > 0) {
+            x[0] = ix; y[0] = iy;
+        } else {
+            x[1] = ix; y[1] = iy;
+        }
+        return 2;
+    }
+}
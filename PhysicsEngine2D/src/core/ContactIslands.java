@@ -0,0 +1,125 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Groups bodies into islands: sets of dynamic bodies connected through
+// candidate contacts. Static bodies never join islands because the solver never
+// writes to them, so two piles resting on the same floor stay independent.
+// A sleeping body pulls its whole sleeping island in with it, since touching
+// it wakes all of them. Islands touch disjoint bodies and can be solved
+// concurrently; they are also the unit that falls asleep.
+public class ContactIslands {
+    private int[] parent = new int[0];
+    private int[] islandOfRoot = new int[0];
+    private int[] bodyIsland = new int[0];
+    private boolean[] ringVisited = new boolean[0];
+    private int[] pairIsland = new int[0];
+    private int[] pairStart = new int[1];
+    private int[] islandPairs = new int[0];
+    private int[] bodyStart = new int[1];
+    private int[] islandBodies = new int[0];
+    private int islandCount;
+
+    public void build(List<PhysicsBody> bodies, PairList pairs) {
+        int n = bodies.size();
+        int pairCount = pairs.size();
+        if (parent.length < n) {
+            parent = new int[n];
+            islandOfRoot = new int[n];
+            bodyIsland = new int[n];
+            ringVisited = new boolean[n];
+            islandBodies = new int[n];
+            // There are never more islands than bodies
+            pairStart = new int[n + 1];
+            bodyStart = new int[n + 1];
+        }
+        if (pairIsland.length < pairCount) {
+            int capacity = Math.max(pairCount, pairIsland.length * 2);
+            pairIsland = new int[capacity];
+            islandPairs = new int[capacity];
+        }
+        for (int i = 0; i < n; i++) parent[i] = i;
+        Arrays.fill(ringVisited, 0, n, false);
+
+        for (int k = 0; k < pairCount; k++) {
+            // Pairs with static geometry (a negative B) join nothing
+            if (pairs.getB(k) < 0) continue;
+            PhysicsBody a = bodies.get(pairs.getA(k)), b = bodies.get(pairs.getB(k));
+            if (a.isStatic || b.isStatic) continue;
+            union(a.index, b.index);
+            if (a.isSleeping) unionRing(a);
+            if (b.isSleeping) unionRing(b);
+        }
+
+        // Islands are numbered in order of their lowest body index
+        Arrays.fill(islandOfRoot, 0, n, -1);
+        islandCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (bodies.get(i).isStatic) {
+                bodyIsland[i] = -1;
+                continue;
+            }
+            int root = find(i);
+            if (islandOfRoot[root] < 0) islandOfRoot[root] = islandCount++;
+            bodyIsland[i] = islandOfRoot[root];
+        }
+        for (int k = 0; k < pairCount; k++) {
+            int a = pairs.getA(k), b = pairs.getB(k);
+            pairIsland[k] = bodyIsland[b >= 0 && bodies.get(a).isStatic ? b : a];
+        }
+
+        groupBy(pairIsland, pairCount, pairStart, islandPairs);
+        groupBy(bodyIsland, n, bodyStart, islandBodies);
+    }
+
+    // Stable counting sort of the indices [0, count) by their island, so each
+    // island keeps the broad phase (or body) order
+    private void groupBy(int[] islandOf, int count, int[] start, int[] out) {
+        Arrays.fill(start, 0, islandCount + 1, 0);
+        for (int k = 0; k < count; k++) {
+            if (islandOf[k] >= 0) start[islandOf[k] + 1]++;
+        }
+        for (int i = 0; i < islandCount; i++) start[i + 1] += start[i];
+        for (int k = 0; k < count; k++) {
+            if (islandOf[k] >= 0) out[start[islandOf[k]]++] = k;
+        }
+        for (int i = islandCount; i > 0; i--) start[i] = start[i - 1];
+        start[0] = 0;
+    }
+
+    private void unionRing(PhysicsBody sleeper) {
+        if (ringVisited[sleeper.index]) return;
+        PhysicsBody m = sleeper;
+        do {
+            ringVisited[m.index] = true;
+            union(sleeper.index, m.index);
+            m = m.nextInIsland;
+        } while (m != null && m != sleeper);
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a), rb = find(b);
+        if (ra < rb) parent[rb] = ra; else if (rb < ra) parent[ra] = rb;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    public int getIslandCount() { return islandCount; }
+
+    // Pair indices of island i are pairAt(islandStart(i)) .. pairAt(islandEnd(i) - 1)
+    public int islandStart(int island) { return pairStart[island]; }
+    public int islandEnd(int island) { return pairStart[island + 1]; }
+    public int pairAt(int position) { return islandPairs[position]; }
+
+    // Body indices of island i are bodyAt(bodyStart(i)) .. bodyAt(bodyEnd(i) - 1)
+    public int bodyStart(int island) { return bodyStart[island]; }
+    public int bodyEnd(int island) { return bodyStart[island + 1]; }
+    public int bodyAt(int position) { return islandBodies[position]; }
+}
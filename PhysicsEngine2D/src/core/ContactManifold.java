@@ -0,0 +1,60 @@
+package core;
+
+// Result of the narrow phase for one pair: a shared normal pointing from body
+// A to body B and up to two contact points with their penetration depths.
+// Instances are reused from step to step.
+public class ContactManifold {
+    public static final int MAX_POINTS = 2;
+
+    public PhysicsBody a, b;
+    public double normalX, normalY;
+    public int pointCount;
+    public final double[] pointX = new double[MAX_POINTS];
+    public final double[] pointY = new double[MAX_POINTS];
+    public final double[] depth = new double[MAX_POINTS];
+    // Identifies the features that produced each point, so a point can be
+    // matched with the same point of the previous step
+    public final int[] featureId = new int[MAX_POINTS];
+
+    // Solver state, see ContactSolver. The impulses are accumulated over the
+    // iterations of a step and carried over to the next one.
+    public final double[] normalImpulse = new double[MAX_POINTS];
+    public final double[] tangentImpulse = new double[MAX_POINTS];
+    long key;
+    boolean touching;
+    double friction, restitution;
+    final double[] rax = new double[MAX_POINTS], ray = new double[MAX_POINTS];
+    final double[] rbx = new double[MAX_POINTS], rby = new double[MAX_POINTS];
+    final double[] normalMass = new double[MAX_POINTS], tangentMass = new double[MAX_POINTS];
+    final double[] velocityBias = new double[MAX_POINTS];
+    // Normal mass matrix of a two point manifold and its inverse
+    boolean blockSolve;
+    double k11, k12, k22, invK11, invK12, invK22;
+    // Transforms of A and B when the points were found, so the position
+    // iterations can estimate how far the bodies have since moved apart
+    double ax0, ay0, aAngle0, bx0, by0, bAngle0;
+
+    // Scratch space for clipping the incident edge, kept here so the narrow
+    // phase does not allocate and stays safe to run on several threads
+    final double[] clipX = new double[2], clipY = new double[2];
+
+    public void set(PhysicsBody a, PhysicsBody b) {
+        this.a = a;
+        this.b = b;
+        this.pointCount = 0;
+    }
+
+    void addPoint(double x, double y, double d, int id) {
+        pointX[pointCount] = x;
+        pointY[pointCount] = y;
+        depth[pointCount] = d;
+        featureId[pointCount] = id;
+        pointCount++;
+    }
+
+    public double maxDepth() {
+        double max = 0;
+        for (int i = 0; i < pointCount; i++) max = Math.max(max, depth[i]);
+        return max;
+    }
+}
@@ -0,0 +1,453 @@
+package core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+// Sequential impulse contact solver. Each island is solved on its own:
+// the narrow phase fills the manifolds, the impulses of the previous step are
+// applied again (warm starting), then a number of velocity iterations refine
+// the accumulated impulses and a number of position iterations push apart
+// whatever still overlaps. Warm starting is what lets a stack come to rest
+// with only a few iterations, and a stack at rest can fall asleep.
+public class ContactSolver {
+    // Impacts slower than this (pixels per second) do not bounce, so resting
+    // contacts stay resting
+    public static final double RESTITUTION_THRESHOLD = 40.0;
+    // Fraction of the remaining overlap removed per position iteration, the
+    // overlap that is allowed to remain, and the largest correction per iteration
+    private static final double BAUMGARTE = 0.2;
+    private static final double LINEAR_SLOP = 0.5;
+    private static final double MAX_CORRECTION = 5.0;
+
+    private int velocityIterations = 8;
+    private int positionIterations = 3;
+    private boolean warmStarting = true;
+
+    // Impulses of the contacts of the last step, looked up by the key of the
+    // body pair in an open addressing table. Two caches are kept: the one
+    // being read while the islands are solved, and the one filled afterwards.
+    private Cache previous = new Cache(), next = new Cache();
+
+    public int getVelocityIterations() { return velocityIterations; }
+    public void setVelocityIterations(int velocityIterations) { this.velocityIterations = velocityIterations; }
+    public int getPositionIterations() { return positionIterations; }
+    public void setPositionIterations(int positionIterations) { this.positionIterations = positionIterations; }
+    public boolean isWarmStarting() { return warmStarting; }
+    public void setWarmStarting(boolean warmStarting) { this.warmStarting = warmStarting; }
+
+    // Forgets the impulses of the last step
+    public void clear() {
+        previous.clear();
+        next.clear();
+    }
+
+    // The impulses of the last step go into world checkpoints, so a restored
+    // world warm starts exactly like the one it was taken from
+    int impulseBytes() { return previous.bytes(); }
+    void writeImpulses(ByteBuffer out) { previous.write(out); }
+    void readImpulses(ByteBuffer in) {
+        next.clear();
+        previous.read(in);
+    }
+
+    // Finds the contacts of one island and solves their velocities. Only
+    // touches the manifolds and the dynamic bodies of the island, so islands
+    // can be solved concurrently.
+    // A pair whose B index is negative is body A against piece ~B of geometry.
+    void solveVelocities(List<PhysicsBody> bodies, PairList pairs, StaticGeometry geometry,
+                         ContactIslands islands, ContactManifold[] manifolds, int island, double dt) {
+        int start = islands.islandStart(island), end = islands.islandEnd(island);
+        for (int p = start; p < end; p++) {
+            int k = islands.pairAt(p);
+            PhysicsBody a = bodies.get(pairs.getA(k));
+            int indexB = pairs.getB(k);
+            ContactManifold m = manifolds[k];
+            if (indexB < 0) {
+                // Static pieces can be thin, so they are met where the body
+                // could reach them this step rather than once it overlaps. A
+                // body moving less than the slop per step gets plain contacts,
+                // so resting contacts are not disturbed.
+                double reach = (a.velocity.magnitude() + Math.abs(a.angularVelocity) * a.getRadius()) * dt;
+                if (reach < LINEAR_SLOP) reach = 0;
+                m.touching = Collision.collide(a, geometry, ~indexB, m, reach);
+                // Body ids are never negative, so the top bit of the low half
+                // tells these keys apart from body pairs
+                m.key = (long) a.id << 32 | 0x80000000L | ~indexB;
+            } else {
+                PhysicsBody b = bodies.get(indexB);
+                m.touching = !(BroadPhase.isInactive(a) && BroadPhase.isInactive(b)) && Collision.collide(a, b, m);
+                m.key = (long) a.id << 32 | (b.id & 0xffffffffL);
+            }
+            if (!m.touching) continue;
+            // Static bodies are shared between islands, so only dynamic ones are touched
+            if (!m.a.isStatic) m.a.wakeUp();
+            if (!m.b.isStatic) m.b.wakeUp();
+            prepare(m, dt);
+        }
+        for (int p = start; p < end; p++) {
+            ContactManifold m = manifolds[islands.pairAt(p)];
+            if (m.touching) warmStart(m);
+        }
+        for (int i = 0; i < velocityIterations; i++) {
+            for (int p = start; p < end; p++) {
+                ContactManifold m = manifolds[islands.pairAt(p)];
+                if (m.touching) solveVelocity(m);
+            }
+        }
+    }
+
+    // Runs after the bodies have moved with the solved velocities
+    void solvePositions(ContactIslands islands, ContactManifold[] manifolds, int island) {
+        int start = islands.islandStart(island), end = islands.islandEnd(island);
+        for (int i = 0; i < positionIterations; i++) {
+            for (int p = start; p < end; p++) {
+                ContactManifold m = manifolds[islands.pairAt(p)];
+                if (m.touching) solvePosition(m);
+            }
+        }
+    }
+
+    // Remembers the impulses of the touching manifolds for the next step
+    void storeImpulses(ContactManifold[] manifolds, int count) {
+        next.clear();
+        for (int k = 0; k < count; k++) {
+            if (manifolds[k].touching) next.put(manifolds[k]);
+        }
+        Cache c = previous;
+        previous = next;
+        next = c;
+    }
+
+    private static double invMass(PhysicsBody b) { return b.isStatic ? 0 : 1 / b.mass; }
+    private static double invInertia(PhysicsBody b) { return b.isStatic ? 0 : 1 / b.momentOfInertia; }
+
+    private void prepare(ContactManifold m, double dt) {
+        PhysicsBody a = m.a, b = m.b;
+        m.friction = Math.sqrt(a.friction * b.friction);
+        m.restitution = Math.min(a.restitution, b.restitution);
+        m.ax0 = a.position.x; m.ay0 = a.position.y; m.aAngle0 = a.angle;
+        m.bx0 = b.position.x; m.by0 = b.position.y; m.bAngle0 = b.angle;
+        double invMassA = invMass(a), invMassB = invMass(b);
+        double invInertiaA = invInertia(a), invInertiaB = invInertia(b);
+        double nx = m.normalX, ny = m.normalY;
+        double tx = ny, ty = -nx;
+        int cached = warmStarting ? previous.find(m.key) : -1;
+
+        for (int c = 0; c < m.pointCount; c++) {
+            double rax = m.pointX[c] - a.position.x, ray = m.pointY[c] - a.position.y;
+            double rbx = m.pointX[c] - b.position.x, rby = m.pointY[c] - b.position.y;
+            m.rax[c] = rax; m.ray[c] = ray;
+            m.rbx[c] = rbx; m.rby[c] = rby;
+
+            double raCrossN = rax * ny - ray * nx, rbCrossN = rbx * ny - rby * nx;
+            m.normalMass[c] = 1 / (invMassA + invMassB + raCrossN * raCrossN * invInertiaA + rbCrossN * rbCrossN * invInertiaB);
+            double raCrossT = rax * ty - ray * tx, rbCrossT = rbx * ty - rby * tx;
+            m.tangentMass[c] = 1 / (invMassA + invMassB + raCrossT * raCrossT * invInertiaA + rbCrossT * rbCrossT * invInertiaB);
+
+            // Bounce off the approach speed seen before any impulse of this step.
+            // A point that is still apart (negative depth) only bounces if it
+            // would close its gap this step; otherwise it may close the gap
+            // but no more.
+            double rvx = (b.velocity.x - b.angularVelocity * rby) - (a.velocity.x - a.angularVelocity * ray);
+            double rvy = (b.velocity.y + b.angularVelocity * rbx) - (a.velocity.y + a.angularVelocity * rax);
+            double vn = rvx * nx + rvy * ny;
+            double gap = Math.max(-m.depth[c], 0);
+            m.velocityBias[c] = vn < -RESTITUTION_THRESHOLD && -vn * dt >= gap ? -m.restitution * vn : -gap / dt;
+
+            m.normalImpulse[c] = 0;
+            m.tangentImpulse[c] = 0;
+            if (cached >= 0) previous.restore(cached, m, c);
+        }
+
+        // Two points are solved together as a 2x2 problem when the system is
+        // well conditioned; solving them one after the other lets a resting
+        // box rock from one corner to the other
+        m.blockSolve = false;
+        if (m.pointCount == 2) {
+            double rn1A = m.rax[0] * ny - m.ray[0] * nx, rn1B = m.rbx[0] * ny - m.rby[0] * nx;
+            double rn2A = m.rax[1] * ny - m.ray[1] * nx, rn2B = m.rbx[1] * ny - m.rby[1] * nx;
+            double k11 = invMassA + invMassB + invInertiaA * rn1A * rn1A + invInertiaB * rn1B * rn1B;
+            double k22 = invMassA + invMassB + invInertiaA * rn2A * rn2A + invInertiaB * rn2B * rn2B;
+            double k12 = invMassA + invMassB + invInertiaA * rn1A * rn2A + invInertiaB * rn1B * rn2B;
+            double det = k11 * k22 - k12 * k12;
+            if (k11 * k11 < 1000 * det) {
+                m.blockSolve = true;
+                m.k11 = k11; m.k12 = k12; m.k22 = k22;
+                m.invK11 = k22 / det; m.invK12 = -k12 / det; m.invK22 = k11 / det;
+            }
+        }
+    }
+
+    private static void warmStart(ContactManifold m) {
+        double nx = m.normalX, ny = m.normalY;
+        for (int c = 0; c < m.pointCount; c++) {
+            double px = nx * m.normalImpulse[c] + ny * m.tangentImpulse[c];
+            double py = ny * m.normalImpulse[c] - nx * m.tangentImpulse[c];
+            applyImpulse(m, c, px, py);
+        }
+    }
+
+    private static void solveVelocity(ContactManifold m) {
+        PhysicsBody a = m.a, b = m.b;
+        double nx = m.normalX, ny = m.normalY;
+        double tx = ny, ty = -nx;
+
+        // Friction first, limited by the normal impulse accumulated so far
+        for (int c = 0; c < m.pointCount; c++) {
+            double rvx = (b.velocity.x - b.angularVelocity * m.rby[c]) - (a.velocity.x - a.angularVelocity * m.ray[c]);
+            double rvy = (b.velocity.y + b.angularVelocity * m.rbx[c]) - (a.velocity.y + a.angularVelocity * m.rax[c]);
+            double lambda = -m.tangentMass[c] * (rvx * tx + rvy * ty);
+            double maxFriction = m.friction * m.normalImpulse[c];
+            double old = m.tangentImpulse[c];
+            m.tangentImpulse[c] = Math.max(-maxFriction, Math.min(old + lambda, maxFriction));
+            lambda = m.tangentImpulse[c] - old;
+            applyImpulse(m, c, tx * lambda, ty * lambda);
+        }
+
+        if (m.blockSolve) {
+            solveNormalBlock(m);
+            return;
+        }
+
+        // The accumulated normal impulse may shrink but never pull
+        for (int c = 0; c < m.pointCount; c++) {
+            double rvx = (b.velocity.x - b.angularVelocity * m.rby[c]) - (a.velocity.x - a.angularVelocity * m.ray[c]);
+            double rvy = (b.velocity.y + b.angularVelocity * m.rbx[c]) - (a.velocity.y + a.angularVelocity * m.rax[c]);
+            double lambda = -m.normalMass[c] * (rvx * nx + rvy * ny - m.velocityBias[c]);
+            double old = m.normalImpulse[c];
+            m.normalImpulse[c] = Math.max(old + lambda, 0);
+            lambda = m.normalImpulse[c] - old;
+            applyImpulse(m, c, nx * lambda, ny * lambda);
+        }
+    }
+
+    // A single impulse for a contact found outside the iterations, such as a
+    // bullet impact found by ContinuousCollision: the approach speed at each
+    // point is removed, or reflected if it is fast enough to bounce. No friction.
+    static void solveImpact(ContactManifold m) {
+        PhysicsBody a = m.a, b = m.b;
+        double invMassA = invMass(a), invMassB = invMass(b);
+        double invInertiaA = invInertia(a), invInertiaB = invInertia(b);
+        double nx = m.normalX, ny = m.normalY;
+        double restitution = Math.min(a.restitution, b.restitution);
+        for (int c = 0; c < m.pointCount; c++) {
+            m.rax[c] = m.pointX[c] - a.position.x; m.ray[c] = m.pointY[c] - a.position.y;
+            m.rbx[c] = m.pointX[c] - b.position.x; m.rby[c] = m.pointY[c] - b.position.y;
+            double vn = normalVelocity(m, c);
+            if (vn >= 0) continue;
+            double raCrossN = m.rax[c] * ny - m.ray[c] * nx, rbCrossN = m.rbx[c] * ny - m.rby[c] * nx;
+            double normalMass = 1 / (invMassA + invMassB + raCrossN * raCrossN * invInertiaA + rbCrossN * rbCrossN * invInertiaB);
+            double e = vn < -RESTITUTION_THRESHOLD ? restitution : 0;
+            double impulse = -(1 + e) * vn * normalMass;
+            applyImpulse(m, c, nx * impulse, ny * impulse);
+        }
+    }
+
+    // Finds the accumulated impulses x >= 0 with relative normal velocities
+    // vn = K x + b >= 0 and x . vn = 0, by trying which points are in contact:
+    // both, only the first, only the second or neither
+    private static void solveNormalBlock(ContactManifold m) {
+        double nx = m.normalX, ny = m.normalY;
+        double vn1 = normalVelocity(m, 0), vn2 = normalVelocity(m, 1);
+        double a1 = m.normalImpulse[0], a2 = m.normalImpulse[1];
+        double b1 = vn1 - m.velocityBias[0] - (m.k11 * a1 + m.k12 * a2);
+        double b2 = vn2 - m.velocityBias[1] - (m.k12 * a1 + m.k22 * a2);
+
+        double x1 = -(m.invK11 * b1 + m.invK12 * b2);
+        double x2 = -(m.invK12 * b1 + m.invK22 * b2);
+        if (x1 < 0 || x2 < 0) {
+            x1 = -m.normalMass[0] * b1;
+            x2 = 0;
+            if (x1 < 0 || m.k12 * x1 + b2 < 0) {
+                x1 = 0;
+                x2 = -m.normalMass[1] * b2;
+                if (x2 < 0 || m.k12 * x2 + b1 < 0) {
+                    x2 = 0;
+                    if (b1 < 0 || b2 < 0) return;
+                }
+            }
+        }
+        double d1 = x1 - a1, d2 = x2 - a2;
+        m.normalImpulse[0] = x1;
+        m.normalImpulse[1] = x2;
+        applyImpulse(m, 0, nx * d1, ny * d1);
+        applyImpulse(m, 1, nx * d2, ny * d2);
+    }
+
+    private static double normalVelocity(ContactManifold m, int c) {
+        PhysicsBody a = m.a, b = m.b;
+        double rvx = (b.velocity.x - b.angularVelocity * m.rby[c]) - (a.velocity.x - a.angularVelocity * m.ray[c]);
+        double rvy = (b.velocity.y + b.angularVelocity * m.rbx[c]) - (a.velocity.y + a.angularVelocity * m.rax[c]);
+        return rvx * m.normalX + rvy * m.normalY;
+    }
+
+    private static void applyImpulse(ContactManifold m, int c, double px, double py) {
+        PhysicsBody a = m.a, b = m.b;
+        if (!a.isStatic) {
+            double invMassA = 1 / a.mass;
+            a.velocity.addLocal(-px * invMassA, -py * invMassA);
+            a.angularVelocity -= (m.rax[c] * py - m.ray[c] * px) / a.momentOfInertia;
+        }
+        if (!b.isStatic) {
+            double invMassB = 1 / b.mass;
+            b.velocity.addLocal(px * invMassB, py * invMassB);
+            b.angularVelocity += (m.rbx[c] * py - m.rby[c] * px) / b.momentOfInertia;
+        }
+    }
+
+    // The separation of each point is estimated from the depth found by the
+    // narrow phase and how far the bodies have moved and turned since, which
+    // saves running the narrow phase again on every iteration
+    private static void solvePosition(ContactManifold m) {
+        PhysicsBody a = m.a, b = m.b;
+        double nx = m.normalX, ny = m.normalY;
+        double dax = a.position.x - m.ax0, day = a.position.y - m.ay0, daAngle = a.angle - m.aAngle0;
+        double dbx = b.position.x - m.bx0, dby = b.position.y - m.by0, dbAngle = b.angle - m.bAngle0;
+        for (int c = 0; c < m.pointCount; c++) {
+            double moveAx = dax - daAngle * m.ray[c], moveAy = day + daAngle * m.rax[c];
+            double moveBx = dbx - dbAngle * m.rby[c], moveBy = dby + dbAngle * m.rbx[c];
+            double separation = -m.depth[c] + (moveBx - moveAx) * nx + (moveBy - moveAy) * ny;
+            double correction = Math.max(-MAX_CORRECTION, Math.min(BAUMGARTE * (separation + LINEAR_SLOP), 0));
+            if (correction == 0) continue;
+            double impulse = -m.normalMass[c] * correction;
+            double px = nx * impulse, py = ny * impulse;
+            if (!a.isStatic) {
+                double invMassA = 1 / a.mass;
+                double turn = (m.rax[c] * py - m.ray[c] * px) / a.momentOfInertia;
+                a.position.addLocal(-px * invMassA, -py * invMassA);
+                a.angle -= turn;
+                dax -= px * invMassA; day -= py * invMassA; daAngle -= turn;
+            }
+            if (!b.isStatic) {
+                double invMassB = 1 / b.mass;
+                double turn = (m.rbx[c] * py - m.rby[c] * px) / b.momentOfInertia;
+                b.position.addLocal(px * invMassB, py * invMassB);
+                b.angle += turn;
+                dbx += px * invMassB; dby += py * invMassB; dbAngle += turn;
+            }
+        }
+    }
+
+    // Accumulated impulses of one step, keyed by body pair. Points are matched
+    // by feature id; a point without a match starts from zero.
+    private static final class Cache {
+        private long[] tableKeys = new long[0];
+        private int[] tableSlots = new int[0];
+        private int mask;
+        private int count;
+        private int[] pointCount = new int[0];
+        private int[] featureId = new int[0];
+        private double[] normalImpulse = new double[0], tangentImpulse = new double[0];
+
+        void clear() {
+            Arrays.fill(tableSlots, -1);
+            count = 0;
+        }
+
+        void put(ContactManifold m) {
+            if (count == pointCount.length) grow();
+            if (2 * (count + 1) > tableSlots.length) rehash();
+            int slot = count++;
+            pointCount[slot] = m.pointCount;
+            for (int c = 0; c < m.pointCount; c++) {
+                int i = slot * ContactManifold.MAX_POINTS + c;
+                featureId[i] = m.featureId[c];
+                normalImpulse[i] = m.normalImpulse[c];
+                tangentImpulse[i] = m.tangentImpulse[c];
+            }
+            insert(m.key, slot);
+        }
+
+        int bytes() {
+            return 4 + count * (8 + 4 + ContactManifold.MAX_POINTS * 20);
+        }
+
+        void write(ByteBuffer out) {
+            out.putInt(count);
+            for (int h = 0; h < tableSlots.length; h++) {
+                int slot = tableSlots[h];
+                if (slot < 0) continue;
+                out.putLong(tableKeys[h]);
+                out.putInt(pointCount[slot]);
+                for (int i = slot * ContactManifold.MAX_POINTS; i < (slot + 1) * ContactManifold.MAX_POINTS; i++) {
+                    out.putInt(featureId[i]);
+                    out.putDouble(normalImpulse[i]);
+                    out.putDouble(tangentImpulse[i]);
+                }
+            }
+        }
+
+        void read(ByteBuffer in) {
+            clear();
+            int entries = in.getInt();
+            for (int e = 0; e < entries; e++) {
+                if (count == pointCount.length) grow();
+                if (2 * (count + 1) > tableSlots.length) rehash();
+                int slot = count++;
+                long key = in.getLong();
+                pointCount[slot] = in.getInt();
+                for (int i = slot * ContactManifold.MAX_POINTS; i < (slot + 1) * ContactManifold.MAX_POINTS; i++) {
+                    featureId[i] = in.getInt();
+                    normalImpulse[i] = in.getDouble();
+                    tangentImpulse[i] = in.getDouble();
+                }
+                insert(key, slot);
+            }
+        }
+
+        int find(long key) {
+            if (count == 0) return -1;
+            for (int h = hash(key) & mask; ; h = (h + 1) & mask) {
+                int slot = tableSlots[h];
+                if (slot < 0) return -1;
+                if (tableKeys[h] == key) return slot;
+            }
+        }
+
+        void restore(int slot, ContactManifold m, int c) {
+            for (int j = 0; j < pointCount[slot]; j++) {
+                int i = slot * ContactManifold.MAX_POINTS + j;
+                if (featureId[i] == m.featureId[c]) {
+                    m.normalImpulse[c] = normalImpulse[i];
+                    m.tangentImpulse[c] = tangentImpulse[i];
+                    return;
+                }
+            }
+        }
+
+        private void insert(long key, int slot) {
+            int h = hash(key) & mask;
+            while (tableSlots[h] >= 0) h = (h + 1) & mask;
+            tableKeys[h] = key;
+            tableSlots[h] = slot;
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, pointCount.length * 2);
+            pointCount = Arrays.copyOf(pointCount, capacity);
+            featureId = Arrays.copyOf(featureId, capacity * ContactManifold.MAX_POINTS);
+            normalImpulse = Arrays.copyOf(normalImpulse, capacity * ContactManifold.MAX_POINTS);
+            tangentImpulse = Arrays.copyOf(tangentImpulse, capacity * ContactManifold.MAX_POINTS);
+        }
+
+        // Doubles the table and reinserts the slots stored so far
+        private void rehash() {
+            long[] oldKeys = tableKeys;
+            int[] oldSlots = tableSlots;
+            int size = Math.max(32, oldSlots.length * 2);
+            tableKeys = new long[size];
+            tableSlots = new int[size];
+            Arrays.fill(tableSlots, -1);
+            mask = size - 1;
+            for (int h = 0; h < oldSlots.length; h++) {
+                if (oldSlots[h] >= 0) insert(oldKeys[h], oldSlots[h]);
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
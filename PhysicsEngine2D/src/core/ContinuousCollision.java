@@ -0,0 +1,123 @@
+package core;
+
+// Continuous collision for bodies flagged as bullets. Instead of jumping to
+// the end of the step, a bullet is advanced to the first body it would touch
+// on the way (its time of impact), the impact is resolved, and the bullet
+// carries on with what is left of the step. Both bodies and static geometry
+// are swept against, as found by their trees around the box the bullet
+// sweeps. Only bullets pay for this; the rest of the world keeps its normal
+// step.
+//
+// The time of impact is found by conservative advancement: the bullet moves
+// forward by its separation from the other body divided by the fastest it
+// can close that gap, which can never skip past the first contact.
+class ContinuousCollision {
+    // Impacts resolved per bullet per step; whatever time is left after that is dropped
+    static final int MAX_SUBSTEPS = 4;
+    private static final int MAX_ITERATIONS = 20;
+    // Overlap the bullet is allowed to end up with at its time of impact, so
+    // the narrow phase reports the contact
+    private static final double TARGET_OVERLAP = 0.25;
+
+    private final ContactManifold manifold = new ContactManifold();
+    private final NodeStack stack = new NodeStack();
+
+    // State of the current sweep, in fields so the visitors are allocated
+    // only once
+    private PhysicsBody bullet;
+    private StaticGeometry geometry;
+    private double remaining;
+    private double toi;
+    private PhysicsBody hitBody;
+    private int hitPiece;
+    private final DynamicAabbTreeBroadPhase.LeafVisitor bodyVisitor = other -> {
+        if (other == bullet || !sweepTouches(bullet, other, remaining)) return true;
+        double t = timeOfImpact(bullet, other, null, 0, toi);
+        if (t < toi) {
+            toi = t;
+            hitBody = other;
+        }
+        return true;
+    };
+    private final StaticGeometry.PieceVisitor pieceVisitor = piece -> {
+        double t = timeOfImpact(bullet, null, geometry, piece, toi);
+        if (t < toi) {
+            toi = t;
+            hitBody = null;
+            hitPiece = piece;
+        }
+    };
+
+    // Moves bullet from its current transform by its velocity over dt. The
+    // other bodies are taken where they are, i.e. at the end of the step, as
+    // tree has them; the bullet's leaf is moved along afterwards, so the
+    // bullets swept after it find it where it ended up.
+    void advance(PhysicsBody bullet, DynamicAabbTreeBroadPhase tree, StaticGeometry geometry, double dt) {
+        this.bullet = bullet;
+        this.geometry = geometry;
+        remaining = dt;
+        for (int sub = 0; sub < MAX_SUBSTEPS && remaining > 0; sub++) {
+            hitBody = null;
+            hitPiece = -1;
+            toi = remaining;
+            double r = bullet.getRadius();
+            double endX = bullet.position.x + bullet.velocity.x * remaining;
+            double endY = bullet.position.y + bullet.velocity.y * remaining;
+            double x1 = Math.min(bullet.position.x, endX) - r, y1 = Math.min(bullet.position.y, endY) - r;
+            double x2 = Math.max(bullet.position.x, endX) + r, y2 = Math.max(bullet.position.y, endY) + r;
+            tree.query(x1, y1, x2, y2, bodyVisitor, stack);
+            geometry.query(x1, y1, x2, y2, pieceVisitor, stack);
+
+            bullet.integratePosition(toi);
+            remaining -= toi;
+            if (hitBody == null && hitPiece < 0) break;
+            boolean touching = hitBody != null
+                    ? Collision.collide(bullet, hitBody, manifold)
+                    : Collision.collide(bullet, geometry, hitPiece, manifold, 0);
+            if (touching) {
+                if (!manifold.b.isStatic) manifold.b.wakeUp();
+                ContactSolver.solveImpact(manifold);
+            }
+        }
+        tree.move(bullet);
+        this.bullet = null;
+        this.geometry = null;
+        hitBody = null;
+    }
+
+    // Whether the bounding circle of other is within reach of the bullet's
+    // bounding circle swept over time
+    private static boolean sweepTouches(PhysicsBody bullet, PhysicsBody other, double time) {
+        double dx = bullet.velocity.x * time, dy = bullet.velocity.y * time;
+        double ox = other.position.x - bullet.position.x, oy = other.position.y - bullet.position.y;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, (ox * dx + oy * dy) / lengthSq));
+        double cx = ox - dx * t, cy = oy - dy * t;
+        double reach = bullet.getRadius() + other.getRadius();
+        return cx * cx + cy * cy <= reach * reach;
+    }
+
+    // Time in [0, limit) at which bullet first overlaps other, or limit if it
+    // does not within that time. Bodies already overlapping at the start are
+    // left to the contact solver. other is null when sweeping against a piece.
+    private static double timeOfImpact(PhysicsBody bullet, PhysicsBody other, StaticGeometry geometry, int piece, double limit) {
+        double x0 = bullet.position.x, y0 = bullet.position.y, angle0 = bullet.angle;
+        double maxSpeed = bullet.velocity.magnitude() + Math.abs(bullet.angularVelocity) * bullet.getRadius();
+        double t = 0;
+        double result = limit;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double separation = other != null ? Collision.separation(bullet, other) : Collision.separation(bullet, geometry, piece);
+            if (separation < 0) {
+                if (i > 0) result = t;
+                break;
+            }
+            t += (separation + TARGET_OVERLAP) / maxSpeed;
+            if (t >= limit) break;
+            bullet.position.set(x0 + bullet.velocity.x * t, y0 + bullet.velocity.y * t);
+            bullet.angle = angle0 + bullet.angularVelocity * t;
+        }
+        bullet.position.set(x0, y0);
+        bullet.angle = angle0;
+        return result;
+    }
+}
@@ -0,0 +1,437 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Incremental bounding volume hierarchy. Every body has a leaf holding a
+// fattened copy of its bounds: grown by a margin and stretched along its
+// velocity, so the leaf only has to move once the body has left it. A leaf is
+// inserted next to the sibling that grows the tree's perimeter least, and
+// rotations on the way back up keep the tree balanced. Unlike a uniform grid
+// this copes with tiny and huge bodies in the same scene.
+//
+// Static and sleeping bodies keep their leaves untouched; each step only the
+// awake bodies are checked against their fat boxes and query the tree. When
+// most bodies are new, as in the first step or after a bulk
+// PhysicsWorld.addBodies(), the tree is instead built again from scratch,
+// which is faster than inserting them one by one and gives a better tree.
+public class DynamicAabbTreeBroadPhase implements BroadPhase {
+    // Fat boxes are grown by this fraction of the body's radius, but at least
+    // MIN_MARGIN pixels, and stretched by the distance it moves in PREDICTION_TIME
+    private static final double MARGIN_FRACTION = 0.25;
+    private static final double MIN_MARGIN = 2.0;
+    private static final double PREDICTION_TIME = 1.0 / 30;
+    private static final int NULL = -1;
+
+    // Nodes: box (minX, minY, maxX, maxY), links, height (0 for leaves) and the
+    // body of leaves. Free nodes are chained through parent.
+    private double[] box = new double[64];
+    private int[] parent = new int[16], child1 = new int[16], child2 = new int[16], height = new int[16];
+    private PhysicsBody[] leafBody = new PhysicsBody[16];
+    private int used;
+    private int freeList = NULL;
+    private int root = NULL;
+    private int leaves;
+    private int[] stack = new int[64];
+    // Leaves being bulk loaded by rebuild()
+    private int[] buildOrder = new int[0];
+
+    interface LeafVisitor {
+        // Return false to end the query
+        boolean visit(PhysicsBody body);
+    }
+
+    interface RayVisitor {
+        // Returns the fraction to clip the ray to, 0 ending the raycast
+        double visit(PhysicsBody body, double maxFraction);
+    }
+
+    @Override
+    public void collectPairs(List<PhysicsBody> bodies, PairList pairs) {
+        update(bodies);
+        int n = bodies.size();
+        for (int i = 0; i < n; i++) {
+            PhysicsBody a = bodies.get(i);
+            if (BroadPhase.isInactive(a)) continue;
+            collectPairs(a, pairs);
+        }
+    }
+
+    // Gives new bodies a leaf and moves the leaves awake bodies have left
+    void update(List<PhysicsBody> bodies) {
+        int added = bodies.size() - leaves;
+        if (added > 1 && added > leaves) {
+            rebuild(bodies);
+            return;
+        }
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            if (!hasLeaf(b)) {
+                b.proxy = allocate();
+                leafBody[b.proxy] = b;
+                setFatBox(b.proxy, b);
+                insertLeaf(b.proxy);
+                leaves++;
+            } else if (!b.isSleeping) {
+                move(b);
+            }
+        }
+    }
+
+    // Moves the leaf of body b if b has left it
+    void move(PhysicsBody b) {
+        if (containsBody(b.proxy, b)) return;
+        removeLeaf(b.proxy);
+        setFatBox(b.proxy, b);
+        insertLeaf(b.proxy);
+    }
+
+    // Adds a pair for every body whose bounds overlap those of the awake body
+    // a. Pairs of two awake bodies are reported by the one with the lower index.
+    private void collectPairs(PhysicsBody a, PairList pairs) {
+        double x1 = a.getMinX(), y1 = a.getMinY();
+        double x2 = a.getMaxX(), y2 = a.getMaxY();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!overlaps(node, x1, y1, x2, y2)) continue;
+            if (child1[node] != NULL) {
+                if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+                continue;
+            }
+            PhysicsBody b = leafBody[node];
+            if (b == a || (!BroadPhase.isInactive(b) && b.index < a.index)) continue;
+            if (b.getMinX() > x2 || b.getMaxX() < x1 || b.getMinY() > y2 || b.getMaxY() < y1) continue;
+            if (a.index < b.index) pairs.add(a.index, b.index); else pairs.add(b.index, a.index);
+        }
+    }
+
+    // Calls visitor for every body whose fat box overlaps the given box. Only
+    // reads the tree, so threads with their own stacks can query at once.
+    void query(double x1, double y1, double x2, double y2, LeafVisitor visitor, NodeStack stack) {
+        if (root == NULL) return;
+        stack.clear();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (!overlaps(node, x1, y1, x2, y2)) continue;
+            if (child1[node] == NULL) {
+                if (!visitor.visit(leafBody[node])) return;
+            } else {
+                stack.push(child1[node]);
+                stack.push(child2[node]);
+            }
+        }
+    }
+
+    // Calls visitor for every body whose fat box the segment from (x, y) to
+    // (x + dx * maxFraction, y + dy * maxFraction) crosses, shortening the
+    // segment to whatever the visitor returns
+    void raycast(double x, double y, double dx, double dy, double maxFraction, RayVisitor visitor, NodeStack stack) {
+        if (root == NULL) return;
+        stack.clear();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (!WorldQuery.rayHitsBox(box, 4 * node, x, y, dx, dy, maxFraction)) continue;
+            if (child1[node] == NULL) {
+                maxFraction = visitor.visit(leafBody[node], maxFraction);
+                if (maxFraction <= 0) return;
+            } else {
+                stack.push(child1[node]);
+                stack.push(child2[node]);
+            }
+        }
+    }
+
+    @Override
+    public void remove(PhysicsBody body) {
+        if (!hasLeaf(body)) return;
+        removeLeaf(body.proxy);
+        free(body.proxy);
+        body.proxy = NULL;
+        leaves--;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(leafBody, 0, used, null);
+        used = 0;
+        freeList = NULL;
+        root = NULL;
+        leaves = 0;
+    }
+
+    // Height of the tree, 0 when it holds a single leaf
+    public int getHeight() {
+        return root == NULL ? 0 : height[root];
+    }
+
+    // The proxy of a body may be left over from another tree or a cleared one
+    private boolean hasLeaf(PhysicsBody b) {
+        return b.proxy >= 0 && b.proxy < used && leafBody[b.proxy] == b;
+    }
+
+    private boolean containsBody(int node, PhysicsBody b) {
+        int i = 4 * node;
+        return box[i] <= b.getMinX() && box[i + 1] <= b.getMinY()
+                && box[i + 2] >= b.getMaxX() && box[i + 3] >= b.getMaxY();
+    }
+
+    private boolean overlaps(int node, double x1, double y1, double x2, double y2) {
+        int i = 4 * node;
+        return box[i] <= x2 && box[i + 2] >= x1 && box[i + 1] <= y2 && box[i + 3] >= y1;
+    }
+
+    private void setFatBox(int node, PhysicsBody b) {
+        double r = b.getRadius();
+        double margin = Math.max(MIN_MARGIN, MARGIN_FRACTION * r);
+        double dx = b.isStatic ? 0 : b.velocity.x * PREDICTION_TIME;
+        double dy = b.isStatic ? 0 : b.velocity.y * PREDICTION_TIME;
+        int i = 4 * node;
+        box[i] = b.getMinX() - margin + Math.min(dx, 0);
+        box[i + 1] = b.getMinY() - margin + Math.min(dy, 0);
+        box[i + 2] = b.getMaxX() + margin + Math.max(dx, 0);
+        box[i + 3] = b.getMaxY() + margin + Math.max(dy, 0);
+    }
+
+    private int allocate() {
+        int node;
+        if (freeList != NULL) {
+            node = freeList;
+            freeList = parent[node];
+        } else {
+            if (used == parent.length) {
+                int capacity = used * 2;
+                box = Arrays.copyOf(box, 4 * capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                child2 = Arrays.copyOf(child2, capacity);
+                height = Arrays.copyOf(height, capacity);
+                leafBody = Arrays.copyOf(leafBody, capacity);
+            }
+            node = used++;
+        }
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private void free(int node) {
+        leafBody[node] = null;
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+    }
+
+    // Top-down bulk load of a leaf for every body, splitting at the median of
+    // the leaf centres along the longer axis like StaticGeometry does
+    private void rebuild(List<PhysicsBody> bodies) {
+        clear();
+        int n = bodies.size();
+        if (buildOrder.length < n) buildOrder = new int[n];
+        for (int i = 0; i < n; i++) {
+            PhysicsBody b = bodies.get(i);
+            b.proxy = allocate();
+            leafBody[b.proxy] = b;
+            setFatBox(b.proxy, b);
+            buildOrder[i] = b.proxy;
+        }
+        leaves = n;
+        if (n > 0) root = build(0, n);
+    }
+
+    private int build(int from, int to) {
+        if (to - from == 1) return buildOrder[from];
+        double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+        for (int k = from; k < to; k++) {
+            int i = 4 * buildOrder[k];
+            x1 = Math.min(x1, box[i]);
+            y1 = Math.min(y1, box[i + 1]);
+            x2 = Math.max(x2, box[i + 2]);
+            y2 = Math.max(y2, box[i + 3]);
+        }
+        int axis = x2 - x1 >= y2 - y1 ? 0 : 1;
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, axis);
+        int c1 = build(from, mid), c2 = build(mid, to);
+        int node = allocate();
+        child1[node] = c1;
+        child2[node] = c2;
+        parent[c1] = node;
+        parent[c2] = node;
+        union(node, c1, c2);
+        height[node] = 1 + Math.max(height[c1], height[c2]);
+        return node;
+    }
+
+    // Partially sorts buildOrder[lo..hi] so buildOrder[k] is the leaf with
+    // the k-th smallest centre along axis
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = centre(buildOrder[(lo + hi) >>> 1], axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centre(buildOrder[i], axis) < pivot) i++;
+                while (centre(buildOrder[j], axis) > pivot) j--;
+                if (i <= j) {
+                    int t = buildOrder[i];
+                    buildOrder[i++] = buildOrder[j];
+                    buildOrder[j--] = t;
+                }
+            }
+            if (k <= j) hi = j; else if (k >= i) lo = i; else return;
+        }
+    }
+
+    private double centre(int node, int axis) {
+        return box[4 * node + axis] + box[4 * node + 2 + axis];
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Walk down to the sibling that adds the least perimeter to the tree:
+        // stopping at a node costs the grown node plus the growth of all its
+        // ancestors, descending costs that growth plus the grown child
+        int node = root;
+        while (child1[node] != NULL) {
+            double perimeter = perimeter(node);
+            double combined = unionPerimeter(node, leaf);
+            double cost = 2 * combined;
+            double inheritance = 2 * (combined - perimeter);
+            double cost1 = descendCost(child1[node], leaf) + inheritance;
+            double cost2 = descendCost(child2[node], leaf) + inheritance;
+            if (cost < cost1 && cost < cost2) break;
+            node = cost1 < cost2 ? child1[node] : child2[node];
+        }
+
+        int sibling = node;
+        int oldParent = parent[sibling];
+        int newParent = allocate();
+        parent[newParent] = oldParent;
+        union(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (child1[oldParent] == sibling) {
+            child1[oldParent] = newParent;
+        } else {
+            child2[oldParent] = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refitAncestors(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = child1[p] == leaf ? child2[p] : child1[p];
+        parent[leaf] = NULL;
+        free(p);
+        if (grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+            return;
+        }
+        if (child1[grandParent] == p) child1[grandParent] = sibling; else child2[grandParent] = sibling;
+        parent[sibling] = grandParent;
+        refitAncestors(grandParent);
+    }
+
+    // Refits node and everything above it, rotating each to a better shape on the way
+    private void refitAncestors(int node) {
+        while (node != NULL) {
+            int c1 = child1[node], c2 = child2[node];
+            height[node] = 1 + Math.max(height[c1], height[c2]);
+            union(node, c1, c2);
+            rotate(node);
+            node = parent[node];
+        }
+    }
+
+    // Swaps a child of a with a child of its sibling if that shrinks the
+    // children's boxes; a's own box is unchanged. Height based (AVL) rotations
+    // keep the tree shallow but make its boxes overlap more, and overlapping
+    // boxes are what queries pay for.
+    private void rotate(int a) {
+        int b = child1[a], c = child2[a];
+        if (height[a] < 2) return;
+        double best = 0;
+        int bestX = NULL, bestY = NULL;
+        // Swapping b with a child of c leaves c holding b and c's other child
+        if (child1[c] != NULL) {
+            double base = perimeter(c);
+            double gain = base - unionPerimeter(b, child2[c]);
+            if (gain > best) { best = gain; bestX = b; bestY = child1[c]; }
+            gain = base - unionPerimeter(b, child1[c]);
+            if (gain > best) { best = gain; bestX = b; bestY = child2[c]; }
+        }
+        if (child1[b] != NULL) {
+            double base = perimeter(b);
+            double gain = base - unionPerimeter(c, child2[b]);
+            if (gain > best) { best = gain; bestX = c; bestY = child1[b]; }
+            gain = base - unionPerimeter(c, child1[b]);
+            if (gain > best) { best = gain; bestX = c; bestY = child2[b]; }
+        }
+        if (bestX != NULL) swap(a, bestX, bestY);
+    }
+
+    // Swaps x, a child of a, with y, a child of x's sibling
+    private void swap(int a, int x, int y) {
+        int s = child1[a] == x ? child2[a] : child1[a];
+        if (child1[a] == x) child1[a] = y; else child2[a] = y;
+        if (child1[s] == y) child1[s] = x; else child2[s] = x;
+        parent[y] = a;
+        parent[x] = s;
+        union(s, child1[s], child2[s]);
+        height[s] = 1 + Math.max(height[child1[s]], height[child2[s]]);
+        height[a] = 1 + Math.max(height[child1[a]], height[child2[a]]);
+    }
+
+    private double perimeter(int node) {
+        int i = 4 * node;
+        return 2 * (box[i + 2] - box[i] + box[i + 3] - box[i + 1]);
+    }
+
+    // Perimeter of the box around nodes a and b
+    private double unionPerimeter(int a, int b) {
+        int i = 4 * a, j = 4 * b;
+        double w = Math.max(box[i + 2], box[j + 2]) - Math.min(box[i], box[j]);
+        double h = Math.max(box[i + 3], box[j + 3]) - Math.min(box[i + 1], box[j + 1]);
+        return 2 * (w + h);
+    }
+
+    // Cost of placing leaf below child: the grown child, less what the child
+    // already costs if it is an inner node that stays
+    private double descendCost(int child, int leaf) {
+        double cost = unionPerimeter(child, leaf);
+        return child1[child] == NULL ? cost : cost - perimeter(child);
+    }
+
+    private void union(int node, int a, int b) {
+        int i = 4 * node, ia = 4 * a, ib = 4 * b;
+        box[i] = Math.min(box[ia], box[ib]);
+        box[i + 1] = Math.min(box[ia + 1], box[ib + 1]);
+        box[i + 2] = Math.max(box[ia + 2], box[ib + 2]);
+        box[i + 3] = Math.max(box[ia + 3], box[ib + 3]);
+    }
+}
@@ -0,0 +1,19 @@
+package core;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Something besides gravity that pushes bodies, added with
+// PhysicsWorld.addForceField(). Every step, after gravity and before
+// velocities are integrated, the world has each field add its forces to the
+// awake dynamic bodies with PhysicsBody.applyForce. Fields are not part of
+// checkpoints or stateHash(), and a world with fields can neither be recorded
+// by a WorldRecorder nor split into a ShardedWorld.
+public interface ForceField {
+    // bodies are all the world's bodies; executor is the world's, or null to
+    // apply on the calling thread
+    void apply(List<PhysicsBody> bodies, double dt, ForkJoinPool executor);
+
+    // A field that is done is dropped by the world after it was applied
+    default boolean isDone() { return false; }
+}
@@ -0,0 +1,115 @@
+package core;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Every body pulls every other towards it, with G * m1 * m2 / (d^2 +
+// softening^2), for orbits and clusters. Bodies with mass pull, static and
+// sleeping ones included; awake dynamic bodies are pulled.
+//
+// Summing over every pair is O(n^2), so the pulls are summed over a
+// BarnesHutTree built every step: a cell seen from further than its side
+// divided by theta, which does not hold the body being pulled, pulls as one
+// body of its mass at its centre of mass. theta trades accuracy for speed:
+// at 0.5 the pulls are off by less than half a percent on average, and 0
+// sums over every pair. The tree is built and the pulls summed on the
+// world's executor, each body summing its own pull, so the result is the
+// same on any number of threads.
+public class MutualAttraction implements ForceField {
+    private static final int PARALLEL_GRAIN = 64;
+
+    private double gravitationalConstant;
+    private double softening = 1;
+    private double theta = 0.5;
+    private final BarnesHutTree tree = new BarnesHutTree();
+    // Pull per unit of G and mass of the sorted bodies
+    private double[] pullX = new double[0], pullY = new double[0];
+
+    // State of the step being taken, in fields for the range pass
+    private List<PhysicsBody> stepBodies;
+    private double thetaSquared, softeningSquared;
+    private final ParallelRange.Body pullPass = this::pull;
+
+    public MutualAttraction(double gravitationalConstant) {
+        this.gravitationalConstant = gravitationalConstant;
+    }
+
+    public double getGravitationalConstant() { return gravitationalConstant; }
+    public void setGravitationalConstant(double gravitationalConstant) { this.gravitationalConstant = gravitationalConstant; }
+    // Keeps bodies passing close to each other from being flung apart
+    public double getSoftening() { return softening; }
+    public void setSoftening(double softening) { this.softening = softening; }
+    // The opening angle, see above
+    public double getTheta() { return theta; }
+    public void setTheta(double theta) {
+        if (theta < 0) throw new IllegalArgumentException("Negative opening angle");
+        this.theta = theta;
+    }
+
+    @Override
+    public void apply(List<PhysicsBody> bodies, double dt, ForkJoinPool executor) {
+        tree.clear();
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            if (b.mass > 0 && b.mass < Double.POSITIVE_INFINITY) tree.add(i, b.position.x, b.position.y, b.mass);
+        }
+        int n = tree.count;
+        if (n < 2) return;
+        tree.build(executor);
+        if (pullX.length < n) {
+            pullX = new double[tree.x.length];
+            pullY = new double[tree.x.length];
+        }
+        stepBodies = bodies;
+        thetaSquared = theta * theta;
+        softeningSquared = softening * softening;
+        if (executor == null) {
+            pull(0, n);
+        } else {
+            executor.invoke(new ParallelRange(pullPass, 0, n, PARALLEL_GRAIN));
+        }
+        stepBodies = null;
+    }
+
+    private void pull(int from, int to) {
+        BarnesHutTree t = tree;
+        for (int k = from; k < to; k++) {
+            PhysicsBody b = stepBodies.get(t.body[k]);
+            if (b.isStatic || b.isSleeping) continue;
+            pullX[k] = 0;
+            pullY[k] = 0;
+            sum(t.root, k, t.x[k], t.y[k]);
+            double scale = gravitationalConstant * t.mass[k];
+            b.applyForce(pullX[k] * scale, pullY[k] * scale);
+        }
+    }
+
+    // Adds the pull of tree cell or leaf ref on sorted body k, at (px, py)
+    private void sum(int ref, int k, double px, double py) {
+        BarnesHutTree t = tree;
+        if (ref < 0) {
+            for (int j = ~ref; j < t.leafEnd[~ref]; j++) {
+                if (j != k) add(k, t.x[j] - px, t.y[j] - py, t.mass[j]);
+            }
+            return;
+        }
+        double dx = t.centerX[ref] - px, dy = t.centerY[ref] - py;
+        double size = t.cellSize[ref];
+        if ((k < t.cellFrom[ref] || k >= t.cellTo[ref]) && size * size < thetaSquared * (dx * dx + dy * dy)) {
+            add(k, dx, dy, t.cellMass[ref]);
+            return;
+        }
+        for (int c = 0; c < t.childCount[ref]; c++) {
+            sum(t.children[4 * ref + c], k, px, py);
+        }
+    }
+
+    private void add(int k, double dx, double dy, double m) {
+        double d2 = dx * dx + dy * dy + softeningSquared;
+        if (d2 == 0) return;
+        double inverse = 1 / Math.sqrt(d2);
+        double scale = m * inverse * inverse * inverse;
+        pullX[k] += dx * scale;
+        pullY[k] += dy * scale;
+    }
+}
@@ -0,0 +1,19 @@
+package core;
+
+import java.util.Arrays;
+
+// Nodes still to visit while walking an AABB tree. Queries that may run on
+// several threads at once each bring their own.
+final class NodeStack {
+    private int[] nodes = new int[64];
+    private int top;
+
+    void push(int node) {
+        if (top == nodes.length) nodes = Arrays.copyOf(nodes, top * 2);
+        nodes[top++] = node;
+    }
+
+    int pop() { return nodes[--top]; }
+    boolean isEmpty() { return top == 0; }
+    void clear() { top = 0; }
+}
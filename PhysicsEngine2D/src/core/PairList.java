@@ -0,0 +1,25 @@
+package core;
+
+import java.util.Arrays;
+
+// A growable list of body index pairs, reused from step to step so the broad
+// phase does not allocate once it has warmed up. PhysicsWorld also stores
+// contacts with static geometry here, as a body index and ~piece.
+public class PairList {
+    private int[] data = new int[64];
+    private int size;
+
+    public void add(int a, int b) {
+        if (size * 2 == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size * 2] = a;
+        data[size * 2 + 1] = b;
+        size++;
+    }
+
+    public int getA(int i) { return data[i * 2]; }
+    public int getB(int i) { return data[i * 2 + 1]; }
+    public int size() { return size; }
+    public void clear() { size = 0; }
+}
@@ -0,0 +1,33 @@
+package core;
+
+import java.util.concurrent.RecursiveAction;
+
+// Splits [from, to) in halves until a chunk is at most grain elements long
+// and runs the chunks on the ForkJoinPool that invoked it.
+class ParallelRange extends RecursiveAction {
+    interface Body {
+        void run(int from, int to);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Body body;
+    private final int from, to, grain;
+
+    ParallelRange(Body body, int from, int to, int grain) {
+        this.body = body;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            body.run(from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new ParallelRange(body, from, mid, grain), new ParallelRange(body, mid, to, grain));
+    }
+}
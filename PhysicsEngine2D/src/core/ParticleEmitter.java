@@ -0,0 +1,28 @@
+package core;
+
+// Sprays particles of one radius into a ParticleSystem at a steady rate, in a
+// cone around direction. Fields can be changed between steps, e.g. to move
+// the emitter along with a body.
+public class ParticleEmitter {
+    public double x, y;
+    public double radius;
+    // Particles per second, and the seconds each one lives
+    public double rate;
+    public double lifetime;
+    // Launch angle in radians (0 is +x, y points down), the width of the cone
+    // around it and the range of launch speeds
+    public double direction = Math.PI / 2;
+    public double spread = 0.5;
+    public double minSpeed = 50, maxSpeed = 150;
+    public boolean enabled = true;
+    // Fraction of a particle owed from earlier steps
+    double pending;
+
+    public ParticleEmitter(double x, double y, double radius, double rate, double lifetime) {
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+        this.rate = rate;
+        this.lifetime = lifetime;
+    }
+}
@@ -0,0 +1,523 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Light bodies for debris, sparks and granular flows: circles that never
+// rotate, kept in parallel primitive arrays instead of PhysicsBody objects.
+// They come from emitters or spawn() and are stepped by PhysicsWorld after
+// its bodies:
+//   1. emitters spawn, and every particle ages, falls and moves
+//   2. expired particles are dropped and the rest sorted by grid cell, so
+//      neighbours sit next to each other in memory
+//   3. iterations push overlapping particles apart, and bodies, static
+//      geometry and the world bounds push particles out of themselves
+//   4. a particle's velocity becomes how far it moved over the step
+// Bodies and geometry move particles but particles never move them.
+//
+// Solving positions and taking velocities from them keeps piles at rest
+// with a few iterations, where impulses would need many to pass a pile's
+// weight down to the floor. Nothing bounces, and a push leaves a particle
+// moving at no more than maxSeparationSpeed along it, so overlaps the
+// iterations leave, e.g. in a packed pile or among particles spawned on one
+// spot, open slowly rather than fling the particles apart. Bodies still push
+// particles along, a step at a time.
+//
+// Like ContactSolver, the iterations go through the particles one by one,
+// each seeing the changes of the ones before it. A particle only reads the
+// particles in the grid rows next to its own, so rows three apart are solved
+// at the same time on the world's executor, and the result is the same on
+// any number of threads.
+//
+// Particles are not part of checkpoints, world logs or stateHash(), and they
+// draw from their own random numbers so the world's stay as they were.
+public class ParticleSystem {
+    private static final int PARALLEL_GRAIN = 4096;
+    private static final int ROW_GRAIN = 4;
+
+    private int count;
+    private int maxParticles = 1 << 20;
+    // Particle state with the positions at the start of the step, and a
+    // second set sorting writes into before the two are swapped
+    private double[] x = new double[0], y = new double[0], vx = new double[0], vy = new double[0];
+    private double[] startX = new double[0], startY = new double[0], radius = new double[0], life = new double[0];
+    private double[] x2 = new double[0], y2 = new double[0], vx2 = new double[0], vy2 = new double[0];
+    private double[] startX2 = new double[0], startY2 = new double[0], radius2 = new double[0], life2 = new double[0];
+    private double maxRadius;
+
+    // Grid of cells at least 2 * maxRadius wide over the box the particles
+    // are in, rebuilt every step. Sorted particles [cellStart[c],
+    // cellStart[c + 1]) are in cell c = row * columns + column, so the cells
+    // of a row from left to right are one range of particles.
+    private int[] cell = new int[0], order = new int[0];
+    private int[] cellStart = new int[2];
+    private int columns, rows;
+    private double minX, minY, maxX, maxY, inverseCellSize;
+
+    private final List<ParticleEmitter> emitters = new ArrayList<>();
+    private long randomState = 0x5DEECE66DL;
+    private int iterations = 3;
+    private double maxSeparationSpeed = 20;
+    private double friction = 0.3;
+    private double damping = 0.999;
+    private double gravityScale = 1;
+
+    // State of the step being taken, in fields for the range passes
+    private double stepDt, stepGx, stepGy;
+    private boolean bounded;
+    private double boundMinX, boundMinY, boundMaxX, boundMaxY;
+    private int rowPhase;
+    private final ParallelRange.Body integratePass = (from, to) -> integrate(stepDt, stepGx, stepGy, from, to);
+    private final ParallelRange.Body finishPass = (from, to) -> finish(stepDt, from, to);
+    private final ParallelRange.Body cellPass = this::computeCells;
+    private final ParallelRange.Body gatherPass = this::gather;
+    private final ParallelRange.Body rowPass = (from, to) -> solveRows(rowPhase, from, to);
+
+    public int getCount() { return count; }
+    public double getX(int i) { return x[i]; }
+    public double getY(int i) { return y[i]; }
+    public double getVelocityX(int i) { return vx[i]; }
+    public double getVelocityY(int i) { return vy[i]; }
+    public double getRadius(int i) { return radius[i]; }
+    // Seconds left to live
+    public double getLife(int i) { return life[i]; }
+
+    // Particles past this many are not spawned
+    public int getMaxParticles() { return maxParticles; }
+    public void setMaxParticles(int maxParticles) { this.maxParticles = maxParticles; }
+    // More iterations keep deep piles from sinking into themselves
+    public int getIterations() { return iterations; }
+    public void setIterations(int iterations) { this.iterations = iterations; }
+    public double getMaxSeparationSpeed() { return maxSeparationSpeed; }
+    public void setMaxSeparationSpeed(double maxSeparationSpeed) { this.maxSeparationSpeed = maxSeparationSpeed; }
+    // Against bodies and geometry
+    public double getFriction() { return friction; }
+    public void setFriction(double friction) { this.friction = friction; }
+    // Velocity kept per step, like PhysicsBody.linearDamping
+    public double getDamping() { return damping; }
+    public void setDamping(double damping) { this.damping = damping; }
+    // 0 for particles that float, like smoke
+    public double getGravityScale() { return gravityScale; }
+    public void setGravityScale(double gravityScale) { this.gravityScale = gravityScale; }
+    public void setSeed(long seed) { randomState = seed; }
+
+    public List<ParticleEmitter> getEmitters() { return emitters; }
+    public void addEmitter(ParticleEmitter emitter) { emitters.add(emitter); }
+    public void removeEmitter(ParticleEmitter emitter) { emitters.remove(emitter); }
+
+    // Adds one particle, e.g. for a burst of debris. A lifetime of
+    // Double.POSITIVE_INFINITY keeps it forever. False at maxParticles.
+    public boolean spawn(double px, double py, double pvx, double pvy, double r, double lifetime) {
+        if (count >= maxParticles) return false;
+        ensureCapacity(count + 1);
+        x[count] = px;
+        y[count] = py;
+        vx[count] = pvx;
+        vy[count] = pvy;
+        radius[count] = r;
+        life[count] = lifetime;
+        maxRadius = Math.max(maxRadius, r);
+        count++;
+        return true;
+    }
+
+    // Removes every particle and emitter
+    public void clear() {
+        count = 0;
+        maxRadius = 0;
+        emitters.clear();
+    }
+
+    void step(double dt, double gx, double gy, List<PhysicsBody> bodies, StaticGeometry geometry, ForkJoinPool executor) {
+        emit(dt);
+        if (count == 0 || dt <= 0) return;
+        stepDt = dt;
+        stepGx = gx * gravityScale;
+        stepGy = gy * gravityScale;
+        bounded = geometry.hasBounds();
+        boundMinX = geometry.getMinX();
+        boundMinY = geometry.getMinY();
+        boundMaxX = geometry.getMaxX();
+        boundMaxY = geometry.getMaxY();
+        run(integratePass, executor);
+        sort(executor);
+        // Bodies and geometry take part in every iteration, or nothing would
+        // hold up a pile resting on them until the end of the step
+        for (int k = 0; k < iterations; k++) {
+            solve(executor);
+            collideBodies(bodies);
+            collideGeometry(geometry);
+        }
+        run(finishPass, executor);
+    }
+
+    private void run(ParallelRange.Body pass, ForkJoinPool executor) {
+        if (executor == null || count <= PARALLEL_GRAIN) {
+            pass.run(0, count);
+        } else {
+            executor.invoke(new ParallelRange(pass, 0, count, PARALLEL_GRAIN));
+        }
+    }
+
+    // One iteration over every particle, in three passes over every third row
+    private void solve(ForkJoinPool executor) {
+        for (int phase = 0; phase < 3; phase++) {
+            int n = (rows - phase + 2) / 3;
+            if (executor == null || count <= PARALLEL_GRAIN) {
+                solveRows(phase, 0, n);
+            } else {
+                rowPhase = phase;
+                executor.invoke(new ParallelRange(rowPass, 0, n, ROW_GRAIN));
+            }
+        }
+    }
+
+    private void emit(double dt) {
+        for (int e = 0; e < emitters.size(); e++) {
+            ParticleEmitter emitter = emitters.get(e);
+            if (!emitter.enabled) continue;
+            emitter.pending += emitter.rate * dt;
+            for (; emitter.pending >= 1; emitter.pending--) {
+                double angle = emitter.direction + (nextRandom() - 0.5) * emitter.spread;
+                double speed = emitter.minSpeed + nextRandom() * (emitter.maxSpeed - emitter.minSpeed);
+                if (!spawn(emitter.x, emitter.y, Math.cos(angle) * speed, Math.sin(angle) * speed, emitter.radius, emitter.lifetime)) {
+                    // At maxParticles nothing is owed for later
+                    emitter.pending = 0;
+                    break;
+                }
+            }
+        }
+    }
+
+    // SplitMix64, like PhysicsWorld.nextRandom()
+    private double nextRandom() {
+        long z = randomState += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    private void integrate(double dt, double gx, double gy, int from, int to) {
+        for (int i = from; i < to; i++) {
+            life[i] -= dt;
+            vx[i] = (vx[i] + gx * dt) * damping;
+            vy[i] = (vy[i] + gy * dt) * damping;
+            startX[i] = x[i];
+            startY[i] = y[i];
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+        }
+    }
+
+    // Keeps the particles in the world bounds a last time, so nothing pushes
+    // them out after, and sets their velocities from how far they moved
+    private void finish(double dt, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bounded) keepInBounds(i);
+            // What the contacts added to the velocity the particle moved at,
+            // limited along its direction to maxSeparationSpeed
+            double cx = (x[i] - startX[i]) / dt - vx[i], cy = (y[i] - startY[i]) / dt - vy[i];
+            double c = Math.sqrt(cx * cx + cy * cy);
+            double nvx = vx[i] + cx, nvy = vy[i] + cy;
+            if (c > 0) {
+                double excess = (nvx * cx + nvy * cy) / c - maxSeparationSpeed;
+                if (excess > 0) {
+                    nvx -= excess * cx / c;
+                    nvy -= excess * cy / c;
+                }
+            }
+            vx[i] = nvx;
+            vy[i] = nvy;
+        }
+    }
+
+    private void keepInBounds(int i) {
+        double r = radius[i];
+        if (x[i] - r < boundMinX) resolve(i, 1, 0, boundMinX - x[i] + r, 0, 0);
+        if (x[i] + r > boundMaxX) resolve(i, -1, 0, x[i] + r - boundMaxX, 0, 0);
+        if (y[i] - r < boundMinY) resolve(i, 0, 1, boundMinY - y[i] + r, 0, 0);
+        if (y[i] + r > boundMaxY) resolve(i, 0, -1, y[i] + r - boundMaxY, 0, 0);
+    }
+
+    // Drops expired particles and sorts the rest by cell with a counting
+    // sort into the second set of arrays
+    private void sort(ForkJoinPool executor) {
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (life[i] <= 0) continue;
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (minX > maxX) {
+            count = 0;
+            return;
+        }
+        // Particles spread thin get larger cells, keeping the grid within a
+        // few cells per particle. Small counts still get a million cells,
+        // since a few particles may well be far apart and each in a pile.
+        double cellSize = Math.max(2 * maxRadius, 1e-3);
+        long limit = Math.max(4L * count, 1 << 20);
+        while (true) {
+            columns = (int) Math.min((maxX - minX) / cellSize + 1, limit);
+            rows = (int) Math.min((maxY - minY) / cellSize + 1, limit);
+            if ((long) columns * rows <= limit) break;
+            cellSize *= 1.5;
+        }
+        inverseCellSize = 1 / cellSize;
+        int cells = columns * rows;
+        if (cellStart.length < cells + 2) cellStart = new int[cells + 2];
+        run(cellPass, executor);
+
+        // Counted one slot further along, so that after the prefix sum
+        // cellStart[c + 1] is where cell c begins, and once the particles are
+        // placed it is where c ends, i.e. where c + 1 begins
+        Arrays.fill(cellStart, 0, cells + 2, 0);
+        for (int i = 0; i < count; i++) {
+            if (cell[i] >= 0) cellStart[cell[i] + 2]++;
+        }
+        for (int c = 2; c < cells + 2; c++) cellStart[c] += cellStart[c - 1];
+        for (int i = 0; i < count; i++) {
+            if (cell[i] >= 0) order[cellStart[cell[i] + 1]++] = i;
+        }
+        count = cellStart[cells];
+        run(gatherPass, executor);
+        int[] sorted = order; order = cell; cell = sorted;
+
+        double[] t = x; x = x2; x2 = t;
+        t = y; y = y2; y2 = t;
+        t = vx; vx = vx2; vx2 = t;
+        t = vy; vy = vy2; vy2 = t;
+        t = startX; startX = startX2; startX2 = t;
+        t = startY; startY = startY2; startY2 = t;
+        t = radius; radius = radius2; radius2 = t;
+        t = life; life = life2; life2 = t;
+    }
+
+    // -1 for expired particles
+    private void computeCells(int from, int to) {
+        for (int i = from; i < to; i++) {
+            cell[i] = life[i] > 0 ? row(y[i]) * columns + column(x[i]) : -1;
+        }
+    }
+
+    // Also puts the cells in sorted order, in place of order
+    private void gather(int from, int to) {
+        for (int k = from; k < to; k++) {
+            int i = order[k];
+            x2[k] = x[i];
+            y2[k] = y[i];
+            vx2[k] = vx[i];
+            vy2[k] = vy[i];
+            startX2[k] = startX[i];
+            startY2[k] = startY[i];
+            radius2[k] = radius[i];
+            life2[k] = life[i];
+            order[k] = cell[i];
+        }
+    }
+
+    // Coordinates outside the grid give the nearest cell
+    private int column(double v) {
+        return Math.max(0, Math.min((int) ((v - minX) * inverseCellSize), columns - 1));
+    }
+
+    private int row(double v) {
+        return Math.max(0, Math.min((int) ((v - minY) * inverseCellSize), rows - 1));
+    }
+
+    // Solves the particles of rows phase, phase + 3, ... numbered [from, to)
+    // among those rows
+    private void solveRows(int phase, int from, int to) {
+        for (int k = from; k < to; k++) {
+            int row = 3 * k + phase;
+            for (int i = cellStart[row * columns], end = cellStart[(row + 1) * columns]; i < end; i++) {
+                solve(i, row, cell[i] - row * columns);
+            }
+        }
+    }
+
+    // Moves particle i by its share of each overlap with another particle
+    private void solve(int i, int row, int column) {
+        double px = x[i], py = y[i], r = radius[i];
+        int left = Math.max(column - 1, 0), right = Math.min(column + 1, columns - 1);
+        for (int n = Math.max(row - 1, 0), last = Math.min(row + 1, rows - 1); n <= last; n++) {
+            // The three cells of the row are one range
+            for (int j = cellStart[n * columns + left], end = cellStart[n * columns + right + 1]; j < end; j++) {
+                if (j == i) continue;
+                double ex = x[j] - px, ey = y[j] - py;
+                double reach = r + radius[j];
+                double d2 = ex * ex + ey * ey;
+                if (d2 >= reach * reach) continue;
+                double d = Math.sqrt(d2);
+                double push = (reach - d) * share(r, radius[j]);
+                if (d > 0) {
+                    px -= ex / d * push;
+                    py -= ey / d * push;
+                } else {
+                    // Particles on the same spot, e.g. fresh from an
+                    // emitter, are split along x by their order
+                    px += j > i ? -push : push;
+                }
+            }
+        }
+        x[i] = px;
+        y[i] = py;
+        if (bounded) keepInBounds(i);
+    }
+
+    // Particle i's share of a contact with a particle of radius rj
+    private static double share(double ri, double rj) {
+        return rj * rj / (ri * ri + rj * rj);
+    }
+
+    // One body at a time, each visiting only the cells around its bounds
+    private void collideBodies(List<PhysicsBody> bodies) {
+        for (int k = 0; k < bodies.size(); k++) {
+            PhysicsBody body = bodies.get(k);
+            if (body.shape instanceof PolygonShape) {
+                collideBox(body.getMinX(), body.getMinY(), body.getMaxX(), body.getMaxY(),
+                        body.getWorldVertices(), body.getWorldNormals(), body);
+            } else {
+                collideBox(body.getMinX(), body.getMinY(), body.getMaxX(), body.getMaxY(), null, null, body);
+            }
+        }
+    }
+
+    // The pieces other than the bounds, which keepInBounds() handles
+    private void collideGeometry(StaticGeometry geometry) {
+        for (int piece = StaticGeometry.BOUND_PIECES; piece < geometry.getPieceCount(); piece++) {
+            double[] v = geometry.getVertices(piece);
+            double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+            double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < v.length; k += 2) {
+                x1 = Math.min(x1, v[k]);
+                y1 = Math.min(y1, v[k + 1]);
+                x2 = Math.max(x2, v[k]);
+                y2 = Math.max(y2, v[k + 1]);
+            }
+            collideBox(x1, y1, x2, y2, v, geometry.getNormals(piece), null);
+        }
+    }
+
+    // Collides the particles that can touch a shape with the given bounds:
+    // a polygon with vertices, or else the circle of body
+    private void collideBox(double x1, double y1, double x2, double y2, double[] vertices, double[] normals, PhysicsBody body) {
+        x1 -= maxRadius;
+        y1 -= maxRadius;
+        x2 += maxRadius;
+        y2 += maxRadius;
+        if (x2 < minX || x1 > maxX || y2 < minY || y1 > maxY) return;
+        int left = column(x1), right = column(x2);
+        for (int n = row(y1), last = row(y2); n <= last; n++) {
+            for (int i = cellStart[n * columns + left], end = cellStart[n * columns + right + 1]; i < end; i++) {
+                if (vertices != null) {
+                    collidePolygon(i, vertices, normals, body);
+                } else {
+                    collideCircle(i, body);
+                }
+            }
+        }
+    }
+
+    private void collideCircle(int i, PhysicsBody body) {
+        double ex = x[i] - body.position.x, ey = y[i] - body.position.y;
+        double reach = radius[i] + body.getRadius();
+        double d2 = ex * ex + ey * ey;
+        if (d2 >= reach * reach || d2 == 0) return;
+        double d = Math.sqrt(d2);
+        resolve(i, ex / d, ey / d, reach - d, body);
+    }
+
+    // The face the particle is furthest out of, then that face's edge or one
+    // of its corners, as in the circle-polygon case of Collision. Segments
+    // are polygons of two vertices, so this handles them too.
+    private void collidePolygon(int i, double[] v, double[] n, PhysicsBody body) {
+        double px = x[i], py = y[i], r = radius[i];
+        int vertices = v.length / 2;
+        double separation = Double.NEGATIVE_INFINITY;
+        int face = 0;
+        for (int f = 0; f < vertices; f++) {
+            double s = n[2 * f] * (px - v[2 * f]) + n[2 * f + 1] * (py - v[2 * f + 1]);
+            if (s > r) return;
+            if (s > separation) {
+                separation = s;
+                face = f;
+            }
+        }
+        if (separation <= 0) {
+            resolve(i, n[2 * face], n[2 * face + 1], r - separation, body);
+            return;
+        }
+        int next = (face + 1) % vertices;
+        double ax = v[2 * face], ay = v[2 * face + 1];
+        double ex = v[2 * next] - ax, ey = v[2 * next + 1] - ay;
+        double t = Math.max(0, Math.min(1, ((px - ax) * ex + (py - ay) * ey) / (ex * ex + ey * ey)));
+        double dx = px - ax - ex * t, dy = py - ay - ey * t;
+        double d2 = dx * dx + dy * dy;
+        if (d2 >= r * r) return;
+        double d = Math.sqrt(d2);
+        if (d == 0) {
+            resolve(i, n[2 * face], n[2 * face + 1], r, body);
+        } else {
+            resolve(i, dx / d, dy / d, r - d, body);
+        }
+    }
+
+    private void resolve(int i, double normalX, double normalY, double depth, PhysicsBody body) {
+        if (body == null || body.isStatic || body.isSleeping) {
+            resolve(i, normalX, normalY, depth, 0, 0);
+            return;
+        }
+        // How far the body's surface moved over the step where the particle
+        // touches it
+        double rx = x[i] - body.position.x, ry = y[i] - body.position.y;
+        resolve(i, normalX, normalY, depth,
+                (body.velocity.x - body.angularVelocity * ry) * stepDt, (body.velocity.y + body.angularVelocity * rx) * stepDt);
+    }
+
+    // Moves particle i depth along the normal, and takes back as much of its
+    // slide along a surface that moved (surfaceDx, surfaceDy) this step as
+    // Coulomb friction allows
+    private void resolve(int i, double normalX, double normalY, double depth, double surfaceDx, double surfaceDy) {
+        x[i] += normalX * depth;
+        y[i] += normalY * depth;
+        double mx = x[i] - startX[i] - surfaceDx, my = y[i] - startY[i] - surfaceDy;
+        double along = mx * normalX + my * normalY;
+        double tx = mx - along * normalX, ty = my - along * normalY;
+        double slide = Math.sqrt(tx * tx + ty * ty);
+        if (slide > 0) {
+            double k = Math.min(slide, friction * depth) / slide;
+            x[i] -= tx * k;
+            y[i] -= ty * k;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (x.length >= capacity) return;
+        int n = Math.max(capacity, Math.max(16, Math.min(x.length * 2, maxParticles)));
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        vx = Arrays.copyOf(vx, n);
+        vy = Arrays.copyOf(vy, n);
+        radius = Arrays.copyOf(radius, n);
+        life = Arrays.copyOf(life, n);
+        x2 = new double[n];
+        y2 = new double[n];
+        vx2 = new double[n];
+        vy2 = new double[n];
+        startX = new double[n];
+        startY = new double[n];
+        startX2 = new double[n];
+        startY2 = new double[n];
+        radius2 = new double[n];
+        life2 = new double[n];
+        cell = new int[n];
+        order = new int[n];
+    }
+}
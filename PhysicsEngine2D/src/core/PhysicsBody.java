@@ -9,25 +9,76 @@ public class PhysicsBody {
 
     public double angle;
     public double angularVelocity;
+    // Transform at the start of the last fixed step, for render interpolation
+    public Vector2D previousPosition;
+    public double previousAngle;
     public double torque;
     public double momentOfInertia;
     
     public double linearDamping;
     public double angularDamping;
     public boolean isSleeping;
+    // Fast or small bodies that must not pass through others between steps;
+    // PhysicsWorld sweeps them with continuous collision detection
+    public boolean isBullet;
+    // Seconds this body has been below the sleep thresholds
+    public double sleepTime;
+
+    // Bodies that fell asleep together form a ring so they wake together
+    PhysicsBody nextInIsland;
+    // Position in PhysicsWorld.getBodies(), kept by the world
+    int index = -1;
+    // Never reused while the world lives, so persistent contacts can be keyed by it
+    int id = -1;
+    // Leaf of the body in a DynamicAabbTreeBroadPhase
+    int proxy = -1;
+
+    // The transform as of the position and angle it was last computed for:
+    // the rotation, the world bounding box and, for polygons, world-space
+    // vertices and normals as x, y pairs. PhysicsWorld brings every body's up
+    // to date once per step, after the bodies have moved; a body moved by
+    // hand gets it recomputed when next asked. The rotation is only
+    // recomputed when the angle has changed. WorldQuery reads the rotation
+    // and box directly, without recomputing them.
+    double cos = 1, sin = 0;
+    double minX, minY, maxX, maxY;
+    private double[] worldVertices, worldNormals;
+    private double cachedX = Double.NaN, cachedY = Double.NaN, cachedAngle = Double.NaN, rotationAngle = 0;
     
     public PhysicsBody(Vector2D position, Shape shape, double mass, boolean isStatic) {
         this.position = position;
+        this.velocity = new Vector2D(0, 0);
+        this.force = new Vector2D(0, 0);
+        this.previousPosition = new Vector2D(position.x, position.y);
+        init(shape, mass, isStatic);
+    }
+
+    // Puts a recycled body back into the state of a new one at (x, y), see BodyPool
+    void reset(double x, double y, Shape shape, double mass, boolean isStatic) {
+        position.set(x, y);
+        velocity.setZero();
+        force.setZero();
+        previousPosition.set(x, y);
+        isBullet = false;
+        sleepTime = 0;
+        nextInIsland = null;
+        index = -1;
+        id = -1;
+        proxy = -1;
+        invalidateWorldGeometry();
+        init(shape, mass, isStatic);
+    }
+
+    private void init(Shape shape, double mass, boolean isStatic) {
         this.shape = shape;
         this.mass = mass;
         this.isStatic = isStatic;
-        this.velocity = new Vector2D(0, 0);
-        this.force = new Vector2D(0, 0);
         this.restitution = 0.8;
         this.friction = 0.2;
 
         this.angle = 0;
         this.angularVelocity = 0;
+        this.previousAngle = 0;
         this.torque = 0;
    
         this.linearDamping = 0.995;
@@ -35,26 +86,130 @@ public class PhysicsBody {
         
         this.isSleeping = false;
         
-        if (isStatic) {
-            this.momentOfInertia = Double.POSITIVE_INFINITY;
-        } else {
-            if (shape instanceof CircleShape) {
-                this.momentOfInertia = 0.5 * mass * Math.pow(shape.getBoundingRadius(), 2);
-            } else if (shape instanceof RectangleShape) {
-                double r = shape.getBoundingRadius(); 
-                double w = Math.sqrt(2) * r;
-                double h = Math.sqrt(2) * r;
-                this.momentOfInertia = (1.0/12.0) * mass * (w*w + h*h);
-            } else {
-                this.momentOfInertia = mass * Math.pow(shape.getBoundingRadius(), 2);
-            }
-        }
+        this.momentOfInertia = isStatic ? Double.POSITIVE_INFINITY : mass * shape.getUnitInertia();
     }
     
+    // Waking a sleeping body wakes the whole island it fell asleep with
     public void wakeUp() {
-        if (isSleeping) {
-            isSleeping = false;
+        if (!isSleeping) return;
+        PhysicsBody b = this;
+        do {
+            PhysicsBody next = b.nextInIsland;
+            b.isSleeping = false;
+            b.sleepTime = 0;
+            b.nextInIsland = null;
+            b = next;
+        } while (b != null && b != this);
+    }
+
+    public void savePreviousTransform() {
+        previousPosition.set(position);
+        previousAngle = angle;
+    }
+
+    // Blends the previous and current transform; alpha 0 is the previous step,
+    // 1 the current one
+    public Vector2D interpolatePosition(double alpha, Vector2D out) {
+        return out.set(previousPosition.x + (position.x - previousPosition.x) * alpha,
+                       previousPosition.y + (position.y - previousPosition.y) * alpha);
+    }
+
+    public double interpolateAngle(double alpha) {
+        return previousAngle + (angle - previousAngle) * alpha;
+    }
+
+    public double[] getWorldVertices() {
+        updateTransform();
+        return worldVertices;
+    }
+
+    public double[] getWorldNormals() {
+        updateTransform();
+        return worldNormals;
+    }
+
+    // Cosine and sine of angle
+    public double getCos() {
+        updateTransform();
+        return cos;
+    }
+
+    public double getSin() {
+        updateTransform();
+        return sin;
+    }
+
+    // World bounding box: the rotated polygon's, or the circle's
+    public double getMinX() {
+        updateTransform();
+        return minX;
+    }
+
+    public double getMinY() {
+        updateTransform();
+        return minY;
+    }
+
+    public double getMaxX() {
+        updateTransform();
+        return maxX;
+    }
+
+    public double getMaxY() {
+        updateTransform();
+        return maxY;
+    }
+
+    void updateTransform() {
+        if (position.x == cachedX && position.y == cachedY && angle == cachedAngle) return;
+        if (angle != rotationAngle) {
+            cos = Math.cos(angle);
+            sin = Math.sin(angle);
+            rotationAngle = angle;
         }
+        if (!(shape instanceof PolygonShape)) {
+            double r = shape.getBoundingRadius();
+            minX = position.x - r;
+            minY = position.y - r;
+            maxX = position.x + r;
+            maxY = position.y + r;
+        } else {
+            PolygonShape polygon = (PolygonShape) shape;
+            Vector2D[] vertices = polygon.getVertices();
+            Vector2D[] normals = polygon.getNormals();
+            if (worldVertices == null || worldVertices.length != vertices.length * 2) {
+                worldVertices = new double[vertices.length * 2];
+                worldNormals = new double[vertices.length * 2];
+            }
+            minX = minY = Double.POSITIVE_INFINITY;
+            maxX = maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < vertices.length; i++) {
+                Vector2D v = vertices[i], n = normals[i];
+                double x = position.x + v.x * cos - v.y * sin;
+                double y = position.y + v.x * sin + v.y * cos;
+                worldVertices[2 * i] = x;
+                worldVertices[2 * i + 1] = y;
+                worldNormals[2 * i] = n.x * cos - n.y * sin;
+                worldNormals[2 * i + 1] = n.x * sin + n.y * cos;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        cachedX = position.x;
+        cachedY = position.y;
+        cachedAngle = angle;
+    }
+
+    // For when the shape was swapped without the body moving
+    void invalidateWorldGeometry() {
+        cachedX = Double.NaN;
+    }
+
+    // Unique within the world, or within a sim.ShardedWorld across its shards
+    public int getId() {
+        return id;
     }
 
     public double getRadius() {
@@ -62,7 +217,11 @@ public class PhysicsBody {
     }
 
     public void applyForce(Vector2D f) {
-        force = force.add(f);
+        force.addLocal(f);
+    }
+
+    public void applyForce(double fx, double fy) {
+        force.addLocal(fx, fy);
     }
 
     public void applyTorque(double t) {
@@ -70,21 +229,31 @@ public class PhysicsBody {
     }
 
     public void update(double dt) {
+        integrateVelocity(dt);
+        integratePosition(dt);
+    }
+
+    // The two halves of update(). PhysicsWorld runs the contact solver between
+    // them, so contacts see the velocities gravity is about to move bodies with.
+    public void integrateVelocity(double dt) {
         if (isStatic || isSleeping) return;
 
-        Vector2D acceleration = force.scale(1 / mass);
-        velocity = velocity.add(acceleration.scale(dt));
+        // All updates happen in place so stepping does not allocate
+        velocity.addScaledLocal(force, dt / mass);
         
         double angularAcceleration = torque / momentOfInertia;
         angularVelocity += angularAcceleration * dt;
         
-        velocity = velocity.scale(linearDamping);
+        velocity.scaleLocal(linearDamping);
         angularVelocity *= angularDamping;
-        
-        position = position.add(velocity.scale(dt));
-        angle += angularVelocity * dt;
 
-        force = new Vector2D(0, 0);
+        force.setZero();
         torque = 0;
     }
+
+    public void integratePosition(double dt) {
+        if (isStatic || isSleeping) return;
+        position.addScaledLocal(velocity, dt);
+        angle += angularVelocity * dt;
+    }
 }
\ No newline at end of file
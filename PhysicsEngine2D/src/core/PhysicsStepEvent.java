@@ -0,0 +1,30 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One PhysicsWorld.update while stats are enabled and a flight recording
+// has the event turned on, e.g. with
+//   java -XX:StartFlightRecording:filename=steps.jfr,+physics.Step#enabled=true ...
+@Name("physics.Step")
+@Label("Physics Step")
+@Category("Physics")
+@Description("One PhysicsWorld.update with its phase times and counters")
+@StackTrace(false)
+class PhysicsStepEvent extends jdk.jfr.Event {
+    @Label("Broad Phase and Solve") @Timespan(Timespan.NANOSECONDS) long collisionNanos;
+    @Label("Integrate and Position Solve") @Timespan(Timespan.NANOSECONDS) long positionNanos;
+    @Label("Candidate Pairs") int candidatePairs;
+    @Label("Contacts") int contacts;
+    @Label("Islands") int islands;
+    @Label("Awake Bodies") int awakeBodies;
+    @Label("Sleeping Bodies") int sleepingBodies;
+    @Label("Particles") @Timespan(Timespan.NANOSECONDS) long particleNanos;
+    @Label("Particle Count") int particles;
+    @Label("Allocated") @DataAmount long allocatedBytes;
+}
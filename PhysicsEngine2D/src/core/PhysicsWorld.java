@@ -1,47 +1,454 @@
 package core;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class PhysicsWorld {
-    private final List<PhysicsBody> bodies = new ArrayList<>();
+    private final ArrayList<PhysicsBody> bodies = new ArrayList<>();
     private final Vector2D gravity = new Vector2D(0, 500);
-    private double idleTimer = 0; // Use a world-level idle timer for sleeping
+    // An island falls asleep once all its bodies have been below these speeds
+    // for TIME_TO_SLEEP seconds
+    private static final double SLEEP_LINEAR_SPEED = 1.0;
+    private static final double SLEEP_ANGULAR_SPEED = 0.1;
+    private static final double TIME_TO_SLEEP = 1.0;
+    private BroadPhase broadPhase;
+    private final PairList pairs = new PairList();
+    private static final int PARALLEL_GRAIN = 512;
+    private ForkJoinPool executor;
+    private final ContactIslands islands = new ContactIslands();
+    private ContactManifold[] manifolds = new ContactManifold[0];
+    private final ContactSolver solver = new ContactSolver();
+    private final StaticGeometry staticGeometry = new StaticGeometry();
+    private final ParticleSystem particles = new ParticleSystem();
+    // Applied after gravity, in the order they were added
+    private final List<ForceField> forceFields = new ArrayList<>();
+    private int nextBodyId;
+    private final ContinuousCollision continuous = new ContinuousCollision();
+    // Bullets of the current step and the transforms they started it with
+    private final List<PhysicsBody> bullets = new ArrayList<>();
+    private double[] bulletStart = new double[0];
+    // State of the world's random numbers, see nextRandom()
+    private long randomState;
+    // Receives the inputs and step hashes of the world while attached
+    private WorldRecorder recorder;
+    private final WorldStats stats = new WorldStats();
+    private boolean statsEnabled;
+    // Spatial queries. They use the broad phase's tree when it has one, or
+    // else a tree of their own, brought up to date by the first query after
+    // a step. Each thread queries with its own WorldQuery.
+    private DynamicAabbTreeBroadPhase queryTree;
+    private volatile boolean queryTreeStale = true;
+    private volatile int queryStaticVersion = -1;
+    private final ThreadLocal<WorldQuery> queries = ThreadLocal.withInitial(WorldQuery::new);
+    private static final int RAYCAST_GRAIN = 64;
 
-    public void addBody(PhysicsBody body) { bodies.add(body); }
+    // Fixed-step driver state, see step()
+    private double fixedTimeStep = 1.0 / 60.0;
+    private int maxSubSteps = 5;
+    private double accumulator = 0;
+
+    public PhysicsWorld() {
+        this(new SweepAndPruneBroadPhase());
+    }
+
+    public PhysicsWorld(BroadPhase broadPhase) {
+        setBroadPhase(broadPhase);
+    }
+
+    public void addBody(PhysicsBody body) {
+        body.index = bodies.size();
+        body.id = nextBodyId++;
+        bodies.add(body);
+        queryTreeStale = true;
+        if (recorder != null) recorder.bodyAdded(this, body);
+    }
+
+    // Adds a body that keeps the id it already has, e.g. one moved in from
+    // another world by the shards of a sim.ShardedWorld. Ids addBody() gives
+    // out later start past it.
+    public void adoptBody(PhysicsBody body) {
+        body.index = bodies.size();
+        nextBodyId = Math.max(nextBodyId, body.id + 1);
+        bodies.add(body);
+        queryTreeStale = true;
+        if (recorder != null) recorder.bodyAdded(this, body);
+    }
+
+    // Adds all of newBodies, growing the body list once. The broad phase takes
+    // them in with its next step: the tree rebuilds itself when most bodies
+    // are new and sweep and prune merges the new bodies into its order.
+    public void addBodies(List<? extends PhysicsBody> newBodies) {
+        bodies.ensureCapacity(bodies.size() + newBodies.size());
+        for (int i = 0; i < newBodies.size(); i++) addBody(newBodies.get(i));
+    }
+
+    // Takes body out in constant time by moving the last body into its slot,
+    // so the index of that body changes. A sleeping body first wakes its
+    // island, as whatever rested on it has to fall. Afterwards the body can
+    // go to a BodyPool. Not to be called while the world is being stepped.
+    public void removeBody(PhysicsBody body) {
+        int i = body.index;
+        if (i < 0 || i >= bodies.size() || bodies.get(i) != body) {
+            throw new IllegalArgumentException("Body is not in this world");
+        }
+        if (recorder != null) recorder.bodyRemoved(this, body);
+        body.wakeUp();
+        PhysicsBody last = bodies.remove(bodies.size() - 1);
+        if (last != body) {
+            bodies.set(i, last);
+            last.index = i;
+        }
+        body.index = -1;
+        broadPhase.remove(body);
+        if (queryTree != null && queryTree != broadPhase) queryTree.remove(body);
+        queryTreeStale = true;
+    }
     public List<PhysicsBody> getBodies() { return bodies; }
 
+    // Iteration counts and warm starting of the contact solver
+    public ContactSolver getSolver() { return solver; }
+
+    public BroadPhase getBroadPhase() { return broadPhase; }
+    public void setBroadPhase(BroadPhase broadPhase) {
+        this.broadPhase = broadPhase;
+        broadPhase.clear();
+        queryTree = broadPhase instanceof DynamicAabbTreeBroadPhase ? (DynamicAabbTreeBroadPhase) broadPhase : null;
+        queryTreeStale = true;
+    }
+
+    // Runs the per-body phases and the island solver on this pool; null steps
+    // everything on the calling thread
+    public ForkJoinPool getExecutor() { return executor; }
+    public void setExecutor(ForkJoinPool executor) { this.executor = executor; }
+
+    // Walls, terrain and other geometry that never moves
+    public StaticGeometry getStaticGeometry() { return staticGeometry; }
+    public ParticleSystem getParticles() { return particles; }
+
+    // The acceleration every dynamic body falls with, (0, 500) to begin with.
+    // Change it with setGravity(), which is recorded.
+    public Vector2D getGravity() { return gravity; }
+    public void setGravity(double x, double y) {
+        gravity.set(x, y);
+        if (recorder != null) recorder.gravityChanged(this);
+    }
+
+    // A field can be any code, so a world log cannot replay it: a world with
+    // fields cannot be recorded, nor fields added while it is
+    public List<ForceField> getForceFields() { return forceFields; }
+    public void addForceField(ForceField field) {
+        if (recorder != null) throw new IllegalStateException("Cannot add force fields to a world being recorded");
+        forceFields.add(field);
+    }
+    public void removeForceField(ForceField field) { forceFields.remove(field); }
+
+    // Keeps bodies inside the box; the walls behave like static geometry.
+    // The bottom of the box is the floor bodies stand up on.
+    public void setBounds(double minX, double minY, double maxX, double maxY) {
+        if (staticGeometry.setBounds(minX, minY, maxX, maxY) && recorder != null) {
+            recorder.boundsChanged(this);
+        }
+    }
+
+    public void clearBounds() {
+        if (!staticGeometry.hasBounds()) return;
+        staticGeometry.clearBounds();
+        if (recorder != null) recorder.boundsChanged(this);
+    }
+
+    // Starts the world's random numbers over from seed
+    public void setSeed(long seed) { randomState = seed; }
+
+    // Uniform in [0, 1). Anything that should replay the same way, like the
+    // spin given to spawned bodies, draws from here rather than Math.random().
+    // SplitMix64, so the whole state is one long that checkpoints carry.
+    public double nextRandom() {
+        long z = randomState += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    // Cheap fingerprint of the bodies' transforms, velocities and sleep
+    // states; two runs that agree on it step for step have not diverged
+    public long stateHash() {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            h = (h ^ Double.doubleToLongBits(b.position.x)) * 0x100000001b3L;
+            h = (h ^ Double.doubleToLongBits(b.position.y)) * 0x100000001b3L;
+            h = (h ^ Double.doubleToLongBits(b.angle)) * 0x100000001b3L;
+            h = (h ^ Double.doubleToLongBits(b.velocity.x)) * 0x100000001b3L;
+            h = (h ^ Double.doubleToLongBits(b.velocity.y)) * 0x100000001b3L;
+            h = (h ^ Double.doubleToLongBits(b.angularVelocity)) * 0x100000001b3L;
+            h = (h ^ (b.isSleeping ? 1 : 0)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // Phase times and counters of the last step; only kept up to date while
+    // stats are enabled
+    public WorldStats getStats() { return stats; }
+    public boolean isStatsEnabled() { return statsEnabled; }
+    public void setStatsEnabled(boolean statsEnabled) { this.statsEnabled = statsEnabled; }
+
+    // Streams the world's inputs and step hashes to recorder, starting with
+    // the current state; null stops recording. See WorldRecorder.
+    public WorldRecorder getRecorder() { return recorder; }
+    public void setRecorder(WorldRecorder recorder) {
+        if (recorder != null && !forceFields.isEmpty()) throw new IllegalStateException("Cannot record a world with force fields");
+        this.recorder = recorder;
+        if (recorder != null) recorder.started(this);
+    }
+
+    public double getFixedTimeStep() { return fixedTimeStep; }
+    public void setFixedTimeStep(double fixedTimeStep) { this.fixedTimeStep = fixedTimeStep; }
+    public int getMaxSubSteps() { return maxSubSteps; }
+    public void setMaxSubSteps(int maxSubSteps) { this.maxSubSteps = maxSubSteps; }
+
+    // Advances the world by real elapsed time in fixed steps of fixedTimeStep.
+    // Leftover time is carried to the next call. When more than maxSubSteps
+    // steps are owed, the backlog is dropped so a slow frame cannot cause an
+    // ever-growing number of steps. Returns the number of steps taken.
+    public int step(double elapsed) {
+        accumulator += elapsed;
+        int steps = 0;
+        while (accumulator >= fixedTimeStep && steps < maxSubSteps) {
+            for (int i = 0; i < bodies.size(); i++) {
+                bodies.get(i).savePreviousTransform();
+            }
+            update(fixedTimeStep);
+            accumulator -= fixedTimeStep;
+            steps++;
+        }
+        if (accumulator >= fixedTimeStep) {
+            accumulator %= fixedTimeStep;
+        }
+        return steps;
+    }
+
+    // Steps inside bounds of (0, 0) - (width, height), e.g. the size of a panel
+    public int step(double elapsed, int width, int height) {
+        setBounds(0, 0, width, height);
+        return step(elapsed);
+    }
+
+    // How far the renderer is between the previous and the current step, in [0, 1)
+    public double getInterpolationAlpha() {
+        return accumulator / fixedTimeStep;
+    }
+
     public void update(double dt, int width, int height) {
+        setBounds(0, 0, width, height);
+        update(dt);
+    }
+
+    public void update(double dt) {
+        queryTreeStale = true;
+        WorldStats s = statsEnabled ? stats : null;
+        if (s != null) s.beginStep();
+
         // 1. Apply forces
-        for (PhysicsBody b : bodies) {
+        applyGravity();
+        applyForceFields(dt);
+        if (s != null) s.endPhase(WorldStats.GRAVITY);
+
+        // 2. Update velocities
+        integrateVelocities(dt);
+        if (s != null) s.endPhase(WorldStats.VELOCITIES);
+
+        // 3. Find object-vs-object contacts and solve their velocities
+        handleCollisions(dt);
+        if (s != null) s.endPhase(WorldStats.COLLISIONS);
+
+        // 4. Update positions, then push apart what still overlaps
+        integratePositions(dt);
+        if (s != null) s.endPhase(WorldStats.POSITIONS);
+
+        // 5. Handle the "standing up" logic on the floor
+        handleBoundaries();
+        if (s != null) s.endPhase(WorldStats.BOUNDARIES);
+
+        // 6. Handle sleeping, one island at a time
+        updateSleeping(dt);
+        if (s != null) s.endPhase(WorldStats.SLEEPING);
+
+        // 7. Move the particles, which the bodies push but never the reverse
+        updateParticles(dt);
+        if (s != null) {
+            s.endPhase(WorldStats.PARTICLES);
+            s.endStep(this, pairs, manifolds, islands);
+        }
+
+        if (recorder != null) recorder.stepped(this, dt);
+    }
+
+    // The phases of update() are public so benchmarks and tools can run and
+    // time them one by one. They must still be called in the order above.
+
+    public void applyGravity() {
+        int n = bodies.size();
+        if (executor == null) {
+            applyGravity(0, n);
+        } else {
+            parallelFor(n, this::applyGravity);
+        }
+    }
+
+    // Drops the fields that are done afterwards
+    public void applyForceFields(double dt) {
+        for (int i = 0; i < forceFields.size(); i++) {
+            forceFields.get(i).apply(bodies, dt, executor);
+        }
+        for (int i = forceFields.size() - 1; i >= 0; i--) {
+            if (forceFields.get(i).isDone()) forceFields.remove(i);
+        }
+    }
+
+    public void integrateVelocities(double dt) {
+        int n = bodies.size();
+        if (executor == null) {
+            integrateVelocities(dt, 0, n);
+        } else {
+            parallelFor(n, (from, to) -> integrateVelocities(dt, from, to));
+        }
+    }
+
+    // Relies on the contacts found by the last handleCollisions()
+    public void integratePositions(double dt) {
+        int n = bodies.size();
+        saveBulletStarts();
+        if (executor == null) {
+            integratePositions(dt, 0, n);
+        } else {
+            parallelFor(n, (from, to) -> integratePositions(dt, from, to));
+        }
+        advanceBullets(dt);
+        if (executor == null) {
+            for (int island = 0; island < islands.getIslandCount(); island++) {
+                solver.solvePositions(islands, manifolds, island);
+            }
+        } else {
+            executor.invoke(new ParallelRange((from, to) -> {
+                for (int island = from; island < to; island++) {
+                    solver.solvePositions(islands, manifolds, island);
+                }
+            }, 0, islands.getIslandCount(), 16));
+        }
+        // The bodies are where they stay until the next step, so every
+        // phase from here to the next step's narrow phase can use these
+        if (executor == null) {
+            updateTransforms(0, n);
+        } else {
+            parallelFor(n, this::updateTransforms);
+        }
+    }
+
+    // The walls themselves are static geometry handled by the contact solver;
+    // this phase is left with the "standing up" logic for bodies on the floor
+    public void handleBoundaries() {
+        if (!staticGeometry.hasBounds()) return;
+        int n = bodies.size();
+        double floor = staticGeometry.getMaxY();
+        if (executor == null) {
+            handleBoundaries(floor, 0, n);
+        } else {
+            parallelFor(n, (from, to) -> handleBoundaries(floor, from, to));
+        }
+    }
+
+    // Relies on the islands built by the last handleCollisions()
+    public void updateSleeping(double dt) {
+        int n = bodies.size();
+        if (executor == null) {
+            updateSleepTimes(dt, 0, n);
+        } else {
+            parallelFor(n, (from, to) -> updateSleepTimes(dt, from, to));
+        }
+        for (int island = 0; island < islands.getIslandCount(); island++) {
+            trySleepIsland(island);
+        }
+    }
+
+    public void updateParticles(double dt) {
+        particles.step(dt, gravity.x, gravity.y, bodies, staticGeometry, executor);
+    }
+
+    private void parallelFor(int n, ParallelRange.Body body) {
+        executor.invoke(new ParallelRange(body, 0, n, PARALLEL_GRAIN));
+    }
+
+    private void applyGravity(int from, int to) {
+        for (int i = from; i < to; i++) {
+            PhysicsBody b = bodies.get(i);
             if (!b.isStatic && !b.isSleeping) {
-                b.applyForce(gravity.scale(b.mass));
+                b.applyForce(gravity.x * b.mass, gravity.y * b.mass);
             }
         }
-        
-        // 2. Update positions and velocities
-        for (PhysicsBody b : bodies) {
-            b.update(dt);
+    }
+
+    // Bullets are integrated with everything else and then swept again from
+    // where they started, which keeps the integrators free of special cases
+    private void saveBulletStarts() {
+        bullets.clear();
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            if (b.isBullet && !b.isStatic && !b.isSleeping) bullets.add(b);
+        }
+        if (bulletStart.length < bullets.size() * 3) {
+            bulletStart = new double[Math.max(bullets.size() * 3, bulletStart.length * 2)];
+        }
+        for (int i = 0; i < bullets.size(); i++) {
+            PhysicsBody b = bullets.get(i);
+            bulletStart[3 * i] = b.position.x;
+            bulletStart[3 * i + 1] = b.position.y;
+            bulletStart[3 * i + 2] = b.angle;
         }
+    }
 
-        // 3. Handle object-vs-object collisions
-        handleCollisions();
+    // Bullets are few, so they are swept one after the other, each against the
+    // bodies and pieces the query trees find along its way. The body tree is
+    // brought up to where the bodies have just moved to.
+    private void advanceBullets(double dt) {
+        if (bullets.isEmpty()) return;
+        DynamicAabbTreeBroadPhase tree = prepareQueries();
+        for (int i = 0; i < bullets.size(); i++) {
+            PhysicsBody b = bullets.get(i);
+            b.position.set(bulletStart[3 * i], bulletStart[3 * i + 1]);
+            b.angle = bulletStart[3 * i + 2];
+            continuous.advance(b, tree, staticGeometry, dt);
+        }
+        // The position solver still moves bodies this step
+        queryTreeStale = true;
+    }
 
-        // 4. Handle boundary collisions and the "standing up" logic
-        for (PhysicsBody b : bodies) {
+    private void integrateVelocities(double dt, int from, int to) {
+        for (int i = from; i < to; i++) {
+            bodies.get(i).integrateVelocity(dt);
+        }
+    }
+
+    private void integratePositions(double dt, int from, int to) {
+        for (int i = from; i < to; i++) {
+            bodies.get(i).integratePosition(dt);
+        }
+    }
+
+    private void updateTransforms(int from, int to) {
+        for (int i = from; i < to; i++) {
+            bodies.get(i).updateTransform();
+        }
+    }
+
+    private void handleBoundaries(double floor, int from, int to) {
+        for (int i = from; i < to; i++) {
+            PhysicsBody b = bodies.get(i);
             if (b.isStatic || b.isSleeping) continue;
 
             double radius = b.getRadius();
-            // Walls and ceiling
-            if (b.position.x + radius > width) { b.position.x = width - radius; b.velocity.x *= -b.restitution; b.wakeUp(); }
-            if (b.position.x - radius < 0) { b.position.x = radius; b.velocity.x *= -b.restitution; b.wakeUp(); }
-            if (b.position.y - radius < 0) { b.position.y = radius; b.velocity.y *= -b.restitution; b.wakeUp(); }
-            
-            // Floor collision
-            if (b.position.y + radius > height) {
-                b.position.y = height - radius;
-                b.velocity.y *= -b.restitution;
-                b.wakeUp();
-                
+            // Resting on (or within its bounding radius of) the floor
+            if (b.position.y + radius > floor) {
                 // --- THE SELF-RIGHTING AND STABILITY LOGIC IS ONLY HERE ---
                 // If the body is on the ground and moving slowly, we intervene.
                 double speed = b.velocity.magnitude();
@@ -49,13 +456,12 @@ public class PhysicsWorld {
                     // It's settling on the ground.
                     
                     // a) Apply torque to make it stand up on its base
-                    Vector2D supportCenter = b.shape.getSupportCenter(b.angle); 
-                    Vector2D leverArm = supportCenter.scale(-1);
-                    double cosA = Math.cos(b.angle); double sinA = Math.sin(b.angle);
-                    double rotatedLeverX = leverArm.x * cosA - leverArm.y * sinA;
-                    double rotatedLeverY = leverArm.x * sinA + leverArm.y * cosA;
-                    Vector2D worldLeverArm = new Vector2D(rotatedLeverX, rotatedLeverY);
-                    double gravityTorque = worldLeverArm.cross(new Vector2D(0, 1));
+                    double cosA = b.getCos(), sinA = b.getSin();
+                    Vector2D supportCenter = b.shape.getSupportCenter(cosA, sinA);
+                    // The lever arm is -supportCenter rotated into world space; crossing
+                    // it with the down vector (0, 1) leaves just its x component
+                    double rotatedLeverX = -supportCenter.x * cosA + supportCenter.y * sinA;
+                    double gravityTorque = rotatedLeverX;
                     b.applyTorque(gravityTorque * b.mass * 250);
 
                     // b) Apply strong damping to stop it from wobbling
@@ -64,36 +470,182 @@ public class PhysicsWorld {
                 }
             }
         }
+    }
 
-        // 5. Handle sleeping
-        boolean allSleeping = true;
-        for (PhysicsBody b : bodies) {
-            if (b.isStatic) continue;
+    private void updateSleepTimes(double dt, int from, int to) {
+        for (int i = from; i < to; i++) {
+            PhysicsBody b = bodies.get(i);
+            if (b.isStatic || b.isSleeping) continue;
             // A body is considered "active" if it's moving more than a tiny amount
-            if (b.velocity.magnitude() > 1.0 || Math.abs(b.angularVelocity) > 0.1) {
-                allSleeping = false;
-                break;
+            if (b.velocity.magnitude() > SLEEP_LINEAR_SPEED || Math.abs(b.angularVelocity) > SLEEP_ANGULAR_SPEED) {
+                b.sleepTime = 0;
+            } else {
+                b.sleepTime += dt;
             }
         }
+    }
 
-        if (allSleeping) {
-            idleTimer += dt;
-            if (idleTimer > 1.0) { // If everything has been still for 1 second
-                for (PhysicsBody b : bodies) {
-                    b.isSleeping = true;
-                    b.velocity = new Vector2D(0, 0); // Force to a perfect stop
-                    b.angularVelocity = 0;
-                }
+    private void trySleepIsland(int island) {
+        int start = islands.bodyStart(island), end = islands.bodyEnd(island);
+        boolean anyAwake = false;
+        for (int p = start; p < end; p++) {
+            PhysicsBody b = bodies.get(islands.bodyAt(p));
+            if (b.isSleeping) continue;
+            if (b.sleepTime < TIME_TO_SLEEP) return;
+            anyAwake = true;
+        }
+        if (!anyAwake) return;
+
+        // The island holds complete rings of any bodies already asleep in it,
+        // so it can simply be relinked as one ring
+        PhysicsBody first = bodies.get(islands.bodyAt(start));
+        PhysicsBody prev = first;
+        for (int p = start; p < end; p++) {
+            PhysicsBody b = bodies.get(islands.bodyAt(p));
+            b.isSleeping = true;
+            b.velocity.setZero(); // Force to a perfect stop
+            b.angularVelocity = 0;
+            prev.nextInIsland = b;
+            prev = b;
+        }
+        prev.nextInIsland = first;
+    }
+
+    // dt is the step the solved velocities are about to be integrated over;
+    // contacts with static geometry look that far ahead
+    public void handleCollisions(double dt) {
+        pairs.clear();
+        broadPhase.collectPairs(bodies, pairs);
+        staticGeometry.collectPairs(bodies, pairs, dt);
+        // The solver works island by island even on one thread, so stepping
+        // with or without an executor gives the same result
+        islands.build(bodies, pairs);
+        ensureManifolds(pairs.size());
+        if (executor == null) {
+            for (int island = 0; island < islands.getIslandCount(); island++) {
+                solver.solveVelocities(bodies, pairs, staticGeometry, islands, manifolds, island, dt);
             }
         } else {
-            idleTimer = 0; // Reset timer if anything is moving
+            // Static bodies are shared between islands: make sure their cached
+            // world vertices are built here, not raced for by the workers
+            for (int i = 0; i < bodies.size(); i++) {
+                PhysicsBody b = bodies.get(i);
+                if (b.isStatic) b.getWorldVertices();
+            }
+            executor.invoke(new ParallelRange((from, to) -> {
+                for (int island = from; island < to; island++) {
+                    solver.solveVelocities(bodies, pairs, staticGeometry, islands, manifolds, island, dt);
+                }
+            }, 0, islands.getIslandCount(), 16));
         }
+        solver.storeImpulses(manifolds, pairs.size());
+    }
+
+    private void ensureManifolds(int count) {
+        if (manifolds.length >= count) return;
+        int old = manifolds.length;
+        manifolds = Arrays.copyOf(manifolds, Math.max(count, old * 2));
+        for (int i = old; i < manifolds.length; i++) manifolds[i] = new ContactManifold();
+    }
+
+    // Fixed-step and id state for WorldCheckpoint
+    int getNextBodyId() { return nextBodyId; }
+    double getAccumulator() { return accumulator; }
+    long getRandomState() { return randomState; }
+
+    // Called by WorldCheckpoint once it has replaced the bodies: nothing the
+    // broad phase or the queries kept about the old ones can be trusted
+    void restored(int nextBodyId, double accumulator, long randomState) {
+        this.nextBodyId = nextBodyId;
+        this.accumulator = accumulator;
+        this.randomState = randomState;
+        pairs.clear();
+        broadPhase.clear();
+        if (queryTree != null) queryTree.clear();
+        queryTreeStale = true;
+    }
+
+    // Removes every body, particle and emitter; static geometry, bounds and
+    // force fields stay
+    public void reset() {
+        for (int i = 0; i < bodies.size(); i++) bodies.get(i).index = -1;
+        bodies.clear();
+        particles.clear();
+        accumulator = 0;
+        pairs.clear();
+        broadPhase.clear();
+        if (queryTree != null) queryTree.clear();
+        queryTreeStale = true;
+        solver.clear();
+        if (recorder != null) recorder.wasReset(this);
+    }
+
+    // Spatial queries see the bodies where the last step left them, plus any
+    // added since. They can run on several threads at once, but not while the
+    // world is being stepped or changed.
+
+    // Calls callback for every body whose bounding box overlaps the given box
+    public void queryAABB(double x1, double y1, double x2, double y2, QueryCallback callback) {
+        queries.get().queryAABB(prepareQueries(), x1, y1, x2, y2, callback);
     }
 
-    // Unchanged from the last correct version
-    private void handleCollisions() {
-        // ... (This method can stay exactly as it was in the last version with the typo fixed)
-        for (int i = 0; i < bodies.size(); i++) { for (int j = i + 1; j < bodies.size(); j++) { PhysicsBody a = bodies.get(i); PhysicsBody b = bodies.get(j); if ((a.isStatic || a.isSleeping) && (b.isStatic || b.isSleeping)) continue; Vector2D delta = b.position.subtract(a.position); double dist = delta.magnitude(); double minDist = a.getRadius() + b.getRadius(); if (dist < minDist) { a.wakeUp(); b.wakeUp(); Vector2D normal = delta.normalize(); double penetration = minDist - dist; final double correctionPercentage = 0.8; double invMassA = a.isStatic ? 0 : 1 / a.mass; double invMassB = b.isStatic ? 0 : 1 / b.mass; double totalInvMass = invMassA + invMassB; if (totalInvMass > 0) { Vector2D correction = normal.scale(penetration * correctionPercentage / totalInvMass); if (!a.isStatic) a.position = a.position.subtract(correction.scale(invMassA)); if (!b.isStatic) b.position = b.position.add(correction.scale(invMassB)); } Vector2D r_a = normal.scale(a.getRadius()); Vector2D r_b = normal.scale(-b.getRadius()); Vector2D v_a_contact = a.velocity.add(new Vector2D(-a.angularVelocity * r_a.y, a.angularVelocity * r_a.x)); Vector2D v_b_contact = b.velocity.add(new Vector2D(-b.angularVelocity * r_b.y, b.angularVelocity * r_b.x)); Vector2D relativeVelocity = v_b_contact.subtract(v_a_contact); double relativeVelocityNormal = relativeVelocity.dot(normal); if (relativeVelocityNormal > 0) continue; double restitution = Math.min(a.restitution, b.restitution); double r_a_cross_n = r_a.cross(normal); double r_b_cross_n = r_b.cross(normal); double invInertiaA = a.isStatic ? 0 : 1 / a.momentOfInertia; double invInertiaB = b.isStatic ? 0 : 1 / b.momentOfInertia; double impulseDenominator = totalInvMass + (r_a_cross_n * r_a_cross_n) * invInertiaA + (r_b_cross_n * r_b_cross_n) * invInertiaB; double impulseScalar = -(1 + restitution) * relativeVelocityNormal / impulseDenominator; Vector2D impulseVec = normal.scale(impulseScalar); if (!a.isStatic) { a.velocity = a.velocity.subtract(impulseVec.scale(invMassA)); a.angularVelocity -= r_a.cross(impulseVec) * invInertiaA; } if (!b.isStatic) { b.velocity = b.velocity.add(impulseVec.scale(invMassB)); b.angularVelocity += r_b.cross(impulseVec) * invInertiaB; } v_a_contact = a.velocity.add(new Vector2D(-a.angularVelocity * r_a.y, a.angularVelocity * r_a.x)); v_b_contact = b.velocity.add(new Vector2D(-b.angularVelocity * r_b.y, b.angularVelocity * r_b.x)); relativeVelocity = v_b_contact.subtract(v_a_contact); Vector2D tangent = relativeVelocity.subtract(normal.scale(relativeVelocity.dot(normal))); if (tangent.magnitude() < 1e-6) continue; tangent = tangent.normalize(); double r_a_cross_t = r_a.cross(tangent); double r_b_cross_t = r_b.cross(tangent); double impulseDenominatorT = totalInvMass + (r_a_cross_t * r_a_cross_t) * invInertiaA + (r_b_cross_t * r_b_cross_t) * invInertiaB; double tangentImpulseScalar = -relativeVelocity.dot(tangent) / impulseDenominatorT; double friction = Math.sqrt(a.friction * b.friction); Vector2D frictionImpulse; if (Math.abs(tangentImpulseScalar) > impulseScalar * friction) { frictionImpulse = tangent.scale(-impulseScalar * friction); } else { frictionImpulse = tangent.scale(tangentImpulseScalar); } if (!a.isStatic) { a.velocity = a.velocity.add(frictionImpulse.scale(invMassA)); a.angularVelocity += r_a.cross(frictionImpulse) * invInertiaA; } if (!b.isStatic) { b.velocity = b.velocity.subtract(frictionImpulse.scale(invMassB)); b.angularVelocity -= r_b.cross(frictionImpulse) * invInertiaB; } } } }
+    // Calls callback for every body whose shape contains the point
+    public void queryPoint(double x, double y, QueryCallback callback) {
+        queries.get().queryPoint(prepareQueries(), x, y, callback);
+    }
+
+    // Calls callback for every body whose shape overlaps the circle
+    public void queryCircle(double x, double y, double radius, QueryCallback callback) {
+        queries.get().queryCircle(prepareQueries(), x, y, radius, callback);
+    }
+
+    // Casts a ray from (x1, y1) to (x2, y2) at bodies and static geometry,
+    // including the world bounds. Rays starting inside a shape do not hit it.
+    public void raycast(double x1, double y1, double x2, double y2, RaycastCallback callback) {
+        queries.get().raycast(prepareQueries(), staticGeometry, x1, y1, x2, y2, callback);
+    }
+
+    // Stores the first hit along the ray in result; false if nothing was hit
+    public boolean raycastClosest(double x1, double y1, double x2, double y2, RaycastHit result) {
+        return queries.get().raycastClosest(prepareQueries(), staticGeometry, x1, y1, x2, y2, result);
+    }
+
+    // raycastClosest() for count rays at once: ray i runs from (rays[4i],
+    // rays[4i + 1]) to (rays[4i + 2], rays[4i + 3]) and its first hit goes to
+    // results[i]. Large batches are split over the executor when one is set.
+    public void raycastClosest(double[] rays, RaycastHit[] results, int count) {
+        DynamicAabbTreeBroadPhase tree = prepareQueries();
+        if (executor == null || count <= RAYCAST_GRAIN) {
+            raycastClosest(tree, rays, results, 0, count);
+        } else {
+            executor.invoke(new ParallelRange((from, to) -> raycastClosest(tree, rays, results, from, to), 0, count, RAYCAST_GRAIN));
+        }
+    }
+
+    private void raycastClosest(DynamicAabbTreeBroadPhase tree, double[] rays, RaycastHit[] results, int from, int to) {
+        WorldQuery query = queries.get();
+        for (int i = from; i < to; i++) {
+            query.raycastClosest(tree, staticGeometry, rays[4 * i], rays[4 * i + 1], rays[4 * i + 2], rays[4 * i + 3], results[i]);
+        }
+    }
+
+    // Brings the query tree and every body's cached transform up to date once
+    // after each step, and has the static tree built, so queries running at
+    // the same time only read them
+    private DynamicAabbTreeBroadPhase prepareQueries() {
+        if (queryTreeStale || queryStaticVersion != staticGeometry.getVersion()) {
+            synchronized (this) {
+                if (queryTreeStale || queryStaticVersion != staticGeometry.getVersion()) {
+                    // The tree skips sleeping bodies, which may have been moved by hand
+                    updateTransforms(0, bodies.size());
+                    if (queryTree == null) queryTree = new DynamicAabbTreeBroadPhase();
+                    queryTree.update(bodies);
+                    staticGeometry.prepareQueries();
+                    queryStaticVersion = staticGeometry.getVersion();
+                    queryTreeStale = false;
+                }
+            }
+        }
+        return queryTree;
     }
-    public void reset() { bodies.clear(); }
 }
\ No newline at end of file
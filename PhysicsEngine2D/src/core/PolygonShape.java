@@ -0,0 +1,52 @@
+package core;
+
+// A convex polygon in body space, used by the SAT narrow phase in Collision.
+public interface PolygonShape extends Shape {
+    Vector2D[] getVertices();
+
+    // Outward unit normal of the edge from vertex i to vertex i + 1
+    Vector2D[] getNormals();
+
+    // Outward edge normals for a convex polygon of either winding
+    static Vector2D[] computeNormals(Vector2D[] vertices) {
+        double cx = 0, cy = 0;
+        for (Vector2D v : vertices) {
+            cx += v.x / vertices.length;
+            cy += v.y / vertices.length;
+        }
+        Vector2D[] normals = new Vector2D[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            Vector2D v1 = vertices[i];
+            Vector2D v2 = vertices[(i + 1) % vertices.length];
+            Vector2D n = new Vector2D(v2.y - v1.y, v1.x - v2.x).normalizeLocal();
+            double midX = (v1.x + v2.x) / 2 - cx, midY = (v1.y + v2.y) / 2 - cy;
+            if (n.x * midX + n.y * midY < 0) n.scaleLocal(-1);
+            normals[i] = n;
+        }
+        return normals;
+    }
+
+    // Area, centroid x and y, and inertia about the origin per unit of mass,
+    // summed over the triangles the edges make with the origin
+    static double[] computeMassData(Vector2D[] vertices) {
+        double area = 0, cx = 0, cy = 0, inertia = 0;
+        for (int i = 0; i < vertices.length; i++) {
+            Vector2D v1 = vertices[i];
+            Vector2D v2 = vertices[(i + 1) % vertices.length];
+            double cross = v1.x * v2.y - v1.y * v2.x;
+            area += cross / 2;
+            cx += cross / 6 * (v1.x + v2.x);
+            cy += cross / 6 * (v1.y + v2.y);
+            inertia += cross / 12 * (v1.x * v1.x + v1.x * v2.x + v2.x * v2.x + v1.y * v1.y + v1.y * v2.y + v2.y * v2.y);
+        }
+        // The signs cancel between the sums and area for either winding
+        return new double[] { Math.abs(area), cx / area, cy / area, inertia / area };
+    }
+
+    // Distance from the origin to the farthest vertex
+    static double computeBoundingRadius(Vector2D[] vertices) {
+        double max = 0;
+        for (Vector2D v : vertices) max = Math.max(max, v.magnitude());
+        return max;
+    }
+}
@@ -0,0 +1,7 @@
+package core;
+
+// Receives the bodies found by a PhysicsWorld area or point query
+public interface QueryCallback {
+    // Return false to end the query early
+    boolean reportBody(PhysicsBody body);
+}
@@ -0,0 +1,107 @@
+package core;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Pulls bodies towards a point, or with a negative strength pushes them away
+// from it: a planet, a magnet or the blast of an explosion. strength is the
+// acceleration the field gives, shaped by distance as falloff says, and only
+// bodies whose centres are within radius feel it. Fields can be changed
+// between steps.
+public class RadialForceField implements ForceField {
+    private static final int PARALLEL_GRAIN = 512;
+
+    public enum Falloff {
+        // strength everywhere within radius
+        CONSTANT,
+        // strength at the centre, down to nothing at radius
+        LINEAR,
+        // strength / (distance^2 + softening^2), as around a point mass
+        // whose strength is G * mass
+        INVERSE_SQUARE
+    }
+
+    public double x, y;
+    public double strength;
+    public double radius = Double.POSITIVE_INFINITY;
+    public Falloff falloff;
+    // Keeps INVERSE_SQUARE from flinging bodies that pass through the centre
+    public double softening = 1;
+    // Seconds left to push for; the world drops the field after that
+    public double duration = Double.POSITIVE_INFINITY;
+    // Wakes sleeping bodies within radius, which are otherwise left alone
+    public boolean wakesBodies;
+
+    // State of the step being taken, in fields for the range pass
+    private List<PhysicsBody> stepBodies;
+    private final ParallelRange.Body applyPass = this::apply;
+
+    public RadialForceField(double x, double y, double strength, Falloff falloff) {
+        this.x = x;
+        this.y = y;
+        this.strength = strength;
+        this.falloff = falloff;
+    }
+
+    // A point mass everything falls towards, strength being G * mass
+    public static RadialForceField attractor(double x, double y, double strength) {
+        return new RadialForceField(x, y, strength, Falloff.INVERSE_SQUARE);
+    }
+
+    // A push out of (x, y) for duration seconds, strongest at the centre,
+    // that wakes the bodies it reaches
+    public static RadialForceField explosion(double x, double y, double radius, double strength, double duration) {
+        RadialForceField field = new RadialForceField(x, y, -strength, Falloff.LINEAR);
+        field.radius = radius;
+        field.duration = duration;
+        field.wakesBodies = true;
+        return field;
+    }
+
+    @Override
+    public void apply(List<PhysicsBody> bodies, double dt, ForkJoinPool executor) {
+        if (duration <= 0) return;
+        // Waking a body wakes its island, which other ranges may be reading
+        if (wakesBodies) {
+            for (int i = 0; i < bodies.size(); i++) {
+                PhysicsBody b = bodies.get(i);
+                if (b.isSleeping && distanceSquared(b) <= radius * radius) b.wakeUp();
+            }
+        }
+        stepBodies = bodies;
+        if (executor == null) {
+            apply(0, bodies.size());
+        } else {
+            executor.invoke(new ParallelRange(applyPass, 0, bodies.size(), PARALLEL_GRAIN));
+        }
+        stepBodies = null;
+        duration -= dt;
+    }
+
+    @Override
+    public boolean isDone() { return duration <= 0; }
+
+    private double distanceSquared(PhysicsBody b) {
+        double dx = x - b.position.x, dy = y - b.position.y;
+        return dx * dx + dy * dy;
+    }
+
+    private void apply(int from, int to) {
+        for (int i = from; i < to; i++) {
+            PhysicsBody b = stepBodies.get(i);
+            if (b.isStatic || b.isSleeping) continue;
+            double dx = x - b.position.x, dy = y - b.position.y;
+            double d2 = dx * dx + dy * dy;
+            if (d2 > radius * radius || d2 == 0) continue;
+            double d = Math.sqrt(d2);
+            double a;
+            switch (falloff) {
+                case LINEAR: a = strength * (1 - d / radius); break;
+                case INVERSE_SQUARE: a = strength / (d2 + softening * softening); break;
+                default: a = strength; break;
+            }
+            double scale = a * b.mass / d;
+            b.applyForce(dx * scale, dy * scale);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package core;
+
+// Receives the hits of PhysicsWorld.raycast, in no particular order
+public interface RaycastCallback {
+    // hit is reused for the next hit, so copy out what should be kept. Returns
+    // the fraction to clip the ray to: hit.fraction to only look for closer
+    // hits, 1 to see every hit, 0 to stop, or a negative value to ignore
+    // this hit.
+    double reportHit(RaycastHit hit);
+}
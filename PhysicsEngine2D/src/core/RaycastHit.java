@@ -0,0 +1,34 @@
+package core;
+
+// Where a ray from (x1, y1) to (x2, y2) hit a body or a piece of static
+// geometry: the point, the surface normal there and how far along the ray
+// it is, 0 being the start and 1 the end
+public class RaycastHit {
+    // The body hit, or null for static geometry
+    public PhysicsBody body;
+    // The static piece hit, or -1 for a body
+    public int piece = -1;
+    public double x, y;
+    public double normalX, normalY;
+    public double fraction;
+
+    public boolean hasHit() {
+        return body != null || piece >= 0;
+    }
+
+    public void clear() {
+        body = null;
+        piece = -1;
+        fraction = 1;
+    }
+
+    public void set(RaycastHit other) {
+        body = other.body;
+        piece = other.piece;
+        x = other.x;
+        y = other.y;
+        normalX = other.normalX;
+        normalY = other.normalY;
+        fraction = other.fraction;
+    }
+}
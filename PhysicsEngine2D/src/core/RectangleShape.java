@@ -1,11 +1,18 @@
 package core;
-import java.awt.*;
 
-public class RectangleShape implements Shape {
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RectangleShape implements PolygonShape {
     private final double width, height;
     private final Vector2D[] vertices;
+    private final Vector2D[] normals;
     private final Vector2D[] faceCenters;
     private final Vector2D[] faceNormals;
+    private final Vector2D centroid;
+    private final double area, unitInertia;
+    // By width, then height
+    private static final Map<Double, Map<Double, RectangleShape>> SHARED = new ConcurrentHashMap<>();
 
     public RectangleShape(double width, double height) {
         this.width = width;
@@ -16,29 +23,38 @@ public class RectangleShape implements Shape {
         this.vertices = new Vector2D[] { new Vector2D(-w2, -h2), new Vector2D(w2, -h2), new Vector2D(w2, h2), new Vector2D(-w2, h2) };
         this.faceCenters = new Vector2D[] { new Vector2D(0, h2), new Vector2D(-w2, 0), new Vector2D(0, -h2), new Vector2D(w2, 0) };
         this.faceNormals = new Vector2D[] { new Vector2D(0, 1), new Vector2D(-1, 0), new Vector2D(0, -1), new Vector2D(1, 0) };
+        this.normals = PolygonShape.computeNormals(vertices);
+        double[] mass = PolygonShape.computeMassData(vertices);
+        this.area = mass[0];
+        this.centroid = new Vector2D(mass[1], mass[2]);
+        this.unitInertia = mass[3];
     }
 
-    @Override public void draw(Graphics2D g, Vector2D pos, double angle) { 
-        Graphics2D g2d = (Graphics2D) g.create();
-        g2d.translate(pos.x, pos.y);
-        g2d.rotate(angle);
-        g2d.fillRect((int)(-width / 2), (int)(-height / 2), (int)width, (int)height);
-        g2d.dispose();
+    // Shared instance for the size, like CircleShape.of(). Its vertices and
+    // normals are seen by every body using it and must not be modified.
+    public static RectangleShape of(double width, double height) {
+        return SHARED.computeIfAbsent(width, w -> new ConcurrentHashMap<>())
+                .computeIfAbsent(height, h -> new RectangleShape(width, height));
     }
+
+    public double getWidth() { return width; }
+    public double getHeight() { return height; }
+    @Override public Vector2D[] getVertices() { return vertices; }
+    @Override public Vector2D[] getNormals() { return normals; }
     @Override public double getBoundingRadius() { return Math.sqrt(width * width + height * height) / 2; }
+    @Override public double getArea() { return area; }
+    @Override public Vector2D getCentroid() { return centroid; }
+    @Override public double getUnitInertia() { return unitInertia; }
 
     @Override
-    public Vector2D getSupportCenter(double angle) {
+    public Vector2D getSupportCenter(double cos, double sin) {
         double maxDot = Double.NEGATIVE_INFINITY;
         Vector2D supportCenter = null;
-        Vector2D worldDown = new Vector2D(0, 1);
 
         for (int i = 0; i < faceNormals.length; i++) {
             Vector2D normal = faceNormals[i];
-            double rotatedX = normal.x * Math.cos(-angle) - normal.y * Math.sin(-angle);
-            double rotatedY = normal.x * Math.sin(-angle) + normal.y * Math.cos(-angle);
-            Vector2D worldNormal = new Vector2D(rotatedX, rotatedY);
-            double dot = worldNormal.dot(worldDown);
+            // The normal turned by -angle, dotted with world down (0, 1)
+            double dot = -normal.x * sin + normal.y * cos;
             if (dot > maxDot) {
                 maxDot = dot;
                 supportCenter = faceCenters[i];
@@ -1,8 +1,18 @@
 package core;
-import java.awt.Graphics2D;
 
+// Pure geometry; drawing lives in gui.ShapeRenderer so core does not depend on AWT
 public interface Shape {
-    void draw(Graphics2D g, Vector2D position, double angle);
     double getBoundingRadius();
-    Vector2D getSupportCenter(double angle);
+
+    // The body-space point a body of this shape stands on when turned by the
+    // angle with this cosine and sine, e.g. from PhysicsBody.getCos()
+    Vector2D getSupportCenter(double cos, double sin);
+
+    // Mass data, computed once when the shape is made. Bodies turn about
+    // their position, which is the shape's origin, so the inertia is about
+    // the origin rather than the centroid; a body's is mass * unit inertia.
+    double getArea();
+    // Shared by every body using the shape and must not be modified
+    Vector2D getCentroid();
+    double getUnitInertia();
 }
\ No newline at end of file
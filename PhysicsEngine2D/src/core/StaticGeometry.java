@@ -0,0 +1,375 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Level geometry that never moves: segments, segment chains and convex
+// polygons, given in world space. The pieces live in their own AABB tree,
+// bulk loaded the first time it is queried after pieces were added, instead
+// of in the broad phase. Each step only the awake dynamic bodies query it, so
+// a large level adds no static-vs-static pairs and no per-step upkeep.
+//
+// The world bounds are four more pieces: thick boxes just outside the
+// bounds, kept out of the tree so resizing them is cheap.
+//
+// Every piece is stored as a convex polygon (x, y vertex pairs and outward
+// edge normals); a segment is a polygon of two vertices whose two "edges" face
+// opposite ways, so the polygon narrow phase handles both.
+public class StaticGeometry {
+    // Pieces 0 to 3 are the world bounds
+    static final int BOUND_PIECES = 4;
+    // Leaves of the tree hold up to this many pieces
+    private static final int LEAF_SIZE = 4;
+
+    private double[][] vertices = new double[16][];
+    private double[][] normals = new double[16][];
+    // minX, minY, maxX, maxY of each piece
+    private double[] box = new double[64];
+    private int count = BOUND_PIECES;
+    private boolean boundsEnabled;
+    private double minX, minY, maxX, maxY;
+
+    // Tree nodes: bounds, children (-1 for leaves) and, for leaves, a range of order[]
+    private double[] nodeBox = new double[0];
+    private int[] nodeLeft = new int[0], nodeRight = new int[0];
+    private int[] nodeStart = new int[0], nodeSize = new int[0];
+    private int nodes;
+    private int[] order = new int[0];
+    private boolean dirty;
+    private final NodeStack stack = new NodeStack();
+    private int version;
+    // Target of collectPairs(), kept in fields so the visitor is allocated once
+    private PairList pairTarget;
+    private int pairBody;
+    private final PieceVisitor pairVisitor = piece -> pairTarget.add(pairBody, ~piece);
+
+    // Stands in for all pieces as body B of their contact manifolds. Its
+    // friction and restitution are those of the geometry.
+    final PhysicsBody body = new PhysicsBody(new Vector2D(0, 0), new CircleShape(0), 1, true);
+
+    interface PieceVisitor {
+        void visit(int piece);
+    }
+
+    interface RayVisitor {
+        // Returns the fraction to clip the ray to, 0 ending the raycast
+        double visit(int piece, double maxFraction);
+    }
+
+    public StaticGeometry() {
+        body.restitution = 1.0;
+        body.friction = 0.5;
+        for (int i = 0; i < BOUND_PIECES; i++) {
+            vertices[i] = new double[8];
+            normals[i] = new double[8];
+        }
+    }
+
+    public double getFriction() { return body.friction; }
+    public void setFriction(double friction) { body.friction = friction; }
+    // Contacts take the lower restitution of the two sides, so 1 leaves it to the bodies
+    public double getRestitution() { return body.restitution; }
+    public void setRestitution(double restitution) { body.restitution = restitution; }
+
+    public int addSegment(double x1, double y1, double x2, double y2) {
+        double nx = y2 - y1, ny = x1 - x2;
+        double length = Math.sqrt(nx * nx + ny * ny);
+        // A point has no normal to push bodies out along
+        if (length == 0) throw new IllegalArgumentException("Segment of zero length");
+        nx /= length;
+        ny /= length;
+        return add(new double[] { x1, y1, x2, y2 }, new double[] { nx, ny, -nx, -ny });
+    }
+
+    // Segments through consecutive points; repeat the first point to close a loop
+    public void addChain(Vector2D... points) {
+        // Checked up front so a bad chain adds nothing
+        for (int i = 0; i + 1 < points.length; i++) {
+            if (points[i].x == points[i + 1].x && points[i].y == points[i + 1].y) {
+                throw new IllegalArgumentException("Chain repeats point " + i);
+            }
+        }
+        for (int i = 0; i + 1 < points.length; i++) {
+            addSegment(points[i].x, points[i].y, points[i + 1].x, points[i + 1].y);
+        }
+    }
+
+    // A convex polygon of either winding
+    public int addPolygon(Vector2D... points) {
+        if (points.length < 3) throw new IllegalArgumentException("Polygon of " + points.length + " points");
+        double[] v = new double[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            v[2 * i] = points[i].x;
+            v[2 * i + 1] = points[i].y;
+        }
+        for (int i = 0; i < points.length; i++) {
+            int j = (i + 1) % points.length;
+            if (v[2 * i] == v[2 * j] && v[2 * i + 1] == v[2 * j + 1]) {
+                throw new IllegalArgumentException("Polygon repeats point " + i);
+            }
+        }
+        double[] n = new double[v.length];
+        computeNormals(v, n);
+        return add(v, n);
+    }
+
+    // Number of pieces, including the four bound pieces
+    public int getPieceCount() { return count; }
+    // World-space vertices of a piece as x, y pairs. Never modified once added.
+    public double[] getVertices(int piece) { return vertices[piece]; }
+    double[] getNormals(int piece) { return normals[piece]; }
+    public boolean isBound(int piece) { return piece < BOUND_PIECES; }
+    // Bumped whenever a piece is added, so renderers know to pick them up
+    public int getVersion() { return version; }
+
+    private int add(double[] v, double[] n) {
+        if (count == vertices.length) {
+            vertices = Arrays.copyOf(vertices, count * 2);
+            normals = Arrays.copyOf(normals, count * 2);
+            box = Arrays.copyOf(box, count * 8);
+        }
+        vertices[count] = v;
+        normals[count] = n;
+        updateBox(count);
+        dirty = true;
+        version++;
+        return count++;
+    }
+
+    // Returns false if the bounds were already these
+    boolean setBounds(double minX, double minY, double maxX, double maxY) {
+        if (boundsEnabled && minX == this.minX && minY == this.minY && maxX == this.maxX && maxY == this.maxY) return false;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        boundsEnabled = true;
+        double t = Math.max(maxX - minX, maxY - minY);
+        setBox(0, minX - t, maxY, maxX + t, maxY + t); // floor
+        setBox(1, minX - t, minY - t, maxX + t, minY); // ceiling
+        setBox(2, minX - t, minY - t, minX, maxY + t); // left wall
+        setBox(3, maxX, minY - t, maxX + t, maxY + t); // right wall
+        return true;
+    }
+
+    void clearBounds() {
+        boundsEnabled = false;
+    }
+
+    // The box of PhysicsWorld.setBounds(), if any
+    public boolean hasBounds() { return boundsEnabled; }
+    public double getMinX() { return minX; }
+    public double getMinY() { return minY; }
+    public double getMaxX() { return maxX; }
+    public double getMaxY() { return maxY; }
+
+    private void setBox(int piece, double x1, double y1, double x2, double y2) {
+        double[] v = vertices[piece];
+        v[0] = x1; v[1] = y1;
+        v[2] = x2; v[3] = y1;
+        v[4] = x2; v[5] = y2;
+        v[6] = x1; v[7] = y2;
+        computeNormals(v, normals[piece]);
+        updateBox(piece);
+    }
+
+    private void updateBox(int piece) {
+        double[] v = vertices[piece];
+        double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < v.length; i += 2) {
+            x1 = Math.min(x1, v[i]);
+            y1 = Math.min(y1, v[i + 1]);
+            x2 = Math.max(x2, v[i]);
+            y2 = Math.max(y2, v[i + 1]);
+        }
+        box[4 * piece] = x1;
+        box[4 * piece + 1] = y1;
+        box[4 * piece + 2] = x2;
+        box[4 * piece + 3] = y2;
+    }
+
+    // Outward edge normals, using the centroid to tell outside from inside
+    private static void computeNormals(double[] v, double[] n) {
+        int count = v.length / 2;
+        double cx = 0, cy = 0;
+        for (int i = 0; i < count; i++) {
+            cx += v[2 * i] / count;
+            cy += v[2 * i + 1] / count;
+        }
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            double nx = v[2 * j + 1] - v[2 * i + 1], ny = v[2 * i] - v[2 * j];
+            double length = Math.sqrt(nx * nx + ny * ny);
+            nx /= length;
+            ny /= length;
+            double midX = (v[2 * i] + v[2 * j]) / 2 - cx, midY = (v[2 * i + 1] + v[2 * j + 1]) / 2 - cy;
+            if (nx * midX + ny * midY < 0) {
+                nx = -nx;
+                ny = -ny;
+            }
+            n[2 * i] = nx;
+            n[2 * i + 1] = ny;
+        }
+    }
+
+    // Adds a pair (i, ~piece) for every awake dynamic body i whose bounding
+    // box, swept by its velocity over dt, overlaps the box of a piece
+    void collectPairs(List<PhysicsBody> bodies, PairList pairs, double dt) {
+        pairTarget = pairs;
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            if (BroadPhase.isInactive(b)) continue;
+            double r = b.getRadius();
+            double x = b.position.x, y = b.position.y;
+            double endX = x + b.velocity.x * dt, endY = y + b.velocity.y * dt;
+            pairBody = i;
+            query(Math.min(x, endX) - r, Math.min(y, endY) - r, Math.max(x, endX) + r, Math.max(y, endY) + r, pairVisitor);
+        }
+        pairTarget = null;
+    }
+
+    // Calls visitor for every piece whose box overlaps the given box. Not
+    // safe to call from several threads at once.
+    void query(double x1, double y1, double x2, double y2, PieceVisitor visitor) {
+        query(x1, y1, x2, y2, visitor, stack);
+    }
+
+    // Same as above on the caller's stack. Only reads the tree once
+    // prepareQueries() has built it, so threads with their own stacks can
+    // query at once.
+    void query(double x1, double y1, double x2, double y2, PieceVisitor visitor, NodeStack stack) {
+        if (boundsEnabled) {
+            for (int piece = 0; piece < BOUND_PIECES; piece++) {
+                if (overlaps(box, 4 * piece, x1, y1, x2, y2)) visitor.visit(piece);
+            }
+        }
+        if (dirty) build();
+        if (nodes == 0) return;
+        stack.clear();
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (!overlaps(nodeBox, 4 * node, x1, y1, x2, y2)) continue;
+            if (nodeLeft[node] < 0) {
+                for (int k = nodeStart[node]; k < nodeStart[node] + nodeSize[node]; k++) {
+                    int piece = order[k];
+                    if (overlaps(box, 4 * piece, x1, y1, x2, y2)) visitor.visit(piece);
+                }
+            } else {
+                stack.push(nodeLeft[node]);
+                stack.push(nodeRight[node]);
+            }
+        }
+    }
+
+    // Calls visitor for every piece whose box the segment from (x, y) to
+    // (x + dx * maxFraction, y + dy * maxFraction) crosses, shortening the
+    // segment to whatever the visitor returns
+    void raycast(double x, double y, double dx, double dy, double maxFraction, RayVisitor visitor, NodeStack stack) {
+        if (boundsEnabled) {
+            for (int piece = 0; piece < BOUND_PIECES; piece++) {
+                if (!WorldQuery.rayHitsBox(box, 4 * piece, x, y, dx, dy, maxFraction)) continue;
+                maxFraction = visitor.visit(piece, maxFraction);
+                if (maxFraction <= 0) return;
+            }
+        }
+        if (dirty) build();
+        if (nodes == 0) return;
+        stack.clear();
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (!WorldQuery.rayHitsBox(nodeBox, 4 * node, x, y, dx, dy, maxFraction)) continue;
+            if (nodeLeft[node] < 0) {
+                for (int k = nodeStart[node]; k < nodeStart[node] + nodeSize[node]; k++) {
+                    int piece = order[k];
+                    if (!WorldQuery.rayHitsBox(box, 4 * piece, x, y, dx, dy, maxFraction)) continue;
+                    maxFraction = visitor.visit(piece, maxFraction);
+                    if (maxFraction <= 0) return;
+                }
+            } else {
+                stack.push(nodeLeft[node]);
+                stack.push(nodeRight[node]);
+            }
+        }
+    }
+
+    // Builds the tree if pieces were added, so later queries only read it
+    void prepareQueries() {
+        if (dirty) build();
+    }
+
+    private static boolean overlaps(double[] b, int i, double x1, double y1, double x2, double y2) {
+        return b[i] <= x2 && b[i + 2] >= x1 && b[i + 1] <= y2 && b[i + 3] >= y1;
+    }
+
+    // Top-down bulk load: each node splits its pieces at the median of their
+    // box centres along its longer axis, so the tree is balanced
+    private void build() {
+        int pieces = count - BOUND_PIECES;
+        order = new int[pieces];
+        for (int i = 0; i < pieces; i++) order[i] = BOUND_PIECES + i;
+        int maxNodes = Math.max(1, 2 * pieces);
+        nodeBox = new double[4 * maxNodes];
+        nodeLeft = new int[maxNodes];
+        nodeRight = new int[maxNodes];
+        nodeStart = new int[maxNodes];
+        nodeSize = new int[maxNodes];
+        nodes = 0;
+        if (pieces > 0) buildNode(0, pieces);
+        dirty = false;
+    }
+
+    private int buildNode(int from, int to) {
+        int node = nodes++;
+        double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+        for (int k = from; k < to; k++) {
+            int p = 4 * order[k];
+            x1 = Math.min(x1, box[p]);
+            y1 = Math.min(y1, box[p + 1]);
+            x2 = Math.max(x2, box[p + 2]);
+            y2 = Math.max(y2, box[p + 3]);
+        }
+        nodeBox[4 * node] = x1;
+        nodeBox[4 * node + 1] = y1;
+        nodeBox[4 * node + 2] = x2;
+        nodeBox[4 * node + 3] = y2;
+        if (to - from <= LEAF_SIZE) {
+            nodeLeft[node] = nodeRight[node] = -1;
+            nodeStart[node] = from;
+            nodeSize[node] = to - from;
+            return node;
+        }
+        int axis = x2 - x1 >= y2 - y1 ? 0 : 1;
+        int mid = (from + to) >>> 1;
+        select(from, to - 1, mid, axis);
+        nodeLeft[node] = buildNode(from, mid);
+        nodeRight[node] = buildNode(mid, to);
+        return node;
+    }
+
+    // Partially sorts order[lo..hi] so order[k] is the piece with the k-th
+    // smallest box centre along axis
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = centre(order[(lo + hi) >>> 1], axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centre(order[i], axis) < pivot) i++;
+                while (centre(order[j], axis) > pivot) j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if (k <= j) hi = j; else if (k >= i) lo = i; else return;
+        }
+    }
+
+    private double centre(int piece, int axis) {
+        return box[4 * piece + axis] + box[4 * piece + 2 + axis];
+    }
+}
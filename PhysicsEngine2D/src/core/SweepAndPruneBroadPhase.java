@@ -0,0 +1,104 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Sorts bodies along the x axis and only compares bodies whose x intervals
+// overlap. The order from the previous step is kept, so the insertion sort is
+// close to linear while bodies move coherently.
+public class SweepAndPruneBroadPhase implements BroadPhase {
+    private int[] order = new int[0];
+    // Scratch for merging
+    private int[] merged = new int[0];
+    private double[] minX = new double[0];
+    private double[] maxX = new double[0];
+    private int count = -1;
+
+    @Override
+    public void collectPairs(List<PhysicsBody> bodies, PairList pairs) {
+        int n = bodies.size();
+        // order[sorted..n) holds the bodies added since the last step
+        int sorted = n;
+        if (n != count) {
+            // Bodies were added or removed. The order of the ones still there
+            // is kept and the new ones are sorted and merged into it, so bodies
+            // spawning into a large world do not send it back to an unsorted start.
+            int old = Math.max(count, 0);
+            if (order.length < n) {
+                order = Arrays.copyOf(order, n);
+                merged = new int[n];
+                minX = new double[n];
+                maxX = new double[n];
+            }
+            sorted = 0;
+            for (int i = 0; i < old; i++) {
+                if (order[i] < n) order[sorted++] = order[i];
+            }
+            for (int i = old; i < n; i++) order[i] = i;
+            count = n;
+        }
+
+        for (int i = 0; i < n; i++) {
+            PhysicsBody b = bodies.get(i);
+            minX[i] = b.getMinX();
+            maxX[i] = b.getMaxX();
+        }
+
+        // Insertion sort on the cached order
+        for (int i = 1; i < sorted; i++) {
+            int idx = order[i];
+            double key = minX[idx];
+            int j = i - 1;
+            while (j >= 0 && minX[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = idx;
+        }
+        if (sorted < n) {
+            mergeSort(sorted, n);
+            merge(0, sorted, n);
+        }
+
+        // Sweep
+        for (int i = 0; i < n; i++) {
+            int ia = order[i];
+            PhysicsBody a = bodies.get(ia);
+            double aMaxX = maxX[ia];
+            double aMinY = a.getMinY(), aMaxY = a.getMaxY();
+            for (int j = i + 1; j < n; j++) {
+                int ib = order[j];
+                if (minX[ib] > aMaxX) break;
+                PhysicsBody b = bodies.get(ib);
+                if (BroadPhase.isInactive(a) && BroadPhase.isInactive(b)) continue;
+                if (b.getMinY() > aMaxY || b.getMaxY() < aMinY) continue;
+                if (ia < ib) pairs.add(ia, ib); else pairs.add(ib, ia);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        count = -1;
+    }
+
+    private void mergeSort(int from, int to) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        merge(from, mid, to);
+    }
+
+    // Merges the sorted runs order[from..mid) and order[mid..to)
+    private void merge(int from, int mid, int to) {
+        if (from == mid || minX[order[mid - 1]] <= minX[order[mid]]) return;
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            merged[k++] = minX[order[j]] < minX[order[i]] ? order[j++] : order[i++];
+        }
+        while (i < mid) merged[k++] = order[i++];
+        while (j < to) merged[k++] = order[j++];
+        System.arraycopy(merged, from, order, from, to - from);
+    }
+}
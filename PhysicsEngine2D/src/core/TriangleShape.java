@@ -1,10 +1,16 @@
 package core;
 
-import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class TriangleShape implements Shape {
+public class TriangleShape implements PolygonShape {
     private final int size;
     private final Vector2D[] vertices; 
+    private final Vector2D[] normals;
+    private final double boundingRadius;
+    private final Vector2D centroid;
+    private final double area, unitInertia;
+    private static final Map<Integer, TriangleShape> SHARED = new ConcurrentHashMap<>();
 
     public TriangleShape(int size) {
         this.size = size;
@@ -13,41 +19,62 @@ public class TriangleShape implements Shape {
             new Vector2D(-size / 2.0, size / 2.0), 
             new Vector2D(size / 2.0, size / 2.0)  
         };
+        this.normals = PolygonShape.computeNormals(vertices);
+        // The base corners are further from the origin than size / 2
+        this.boundingRadius = PolygonShape.computeBoundingRadius(vertices);
+        double[] mass = PolygonShape.computeMassData(vertices);
+        this.area = mass[0];
+        this.centroid = new Vector2D(mass[1], mass[2]);
+        this.unitInertia = mass[3];
+    }
+
+    // Shared instance for the size, like CircleShape.of()
+    public static TriangleShape of(int size) {
+        return SHARED.computeIfAbsent(size, TriangleShape::new);
+    }
+
+    public int getSize() {
+        return size;
     }
 
     @Override
-    public void draw(Graphics2D g, Vector2D position, double angle) {
-        int p1x = (int) vertices[0].x;
-        int p1y = (int) vertices[0].y;
-        int p2x = (int) vertices[1].x;
-        int p2y = (int) vertices[1].y;
-        int p3x = (int) vertices[2].x;
-        int p3y = (int) vertices[2].y;
-        
-        int[] xPoints = { p1x, p2x, p3x };
-        int[] yPoints = { p1y, p2y, p3y };
-
-        Polygon poly = new Polygon(xPoints, yPoints, 3);
-
-        Graphics2D g2d = (Graphics2D) g.create();
-        g2d.translate(position.x, position.y);
-        g2d.rotate(angle);
-        g2d.fillPolygon(poly);
-        g2d.dispose();
+    public Vector2D[] getVertices() {
+        return vertices;
+    }
+
+    @Override
+    public Vector2D[] getNormals() {
+        return normals;
     }
 
     @Override
     public double getBoundingRadius() {
-        return size / 2.0;
+        return boundingRadius;
+    }
+
+    @Override
+    public double getArea() {
+        return area;
+    }
+
+    // Below the origin, a third of the way from the base to the apex
+    @Override
+    public Vector2D getCentroid() {
+        return centroid;
+    }
+
+    @Override
+    public double getUnitInertia() {
+        return unitInertia;
     }
 
     @Override
-    public Vector2D getSupportCenter(double angle) {
+    public Vector2D getSupportCenter(double cos, double sin) {
         Vector2D lowestVertex = null;
         double max_y = Double.NEGATIVE_INFINITY;
 
         for (Vector2D v : vertices) {
-            double rotated_y = v.x * Math.sin(angle) + v.y * Math.cos(angle);
+            double rotated_y = v.x * sin + v.y * cos;
             
             if (rotated_y > max_y) {
                 max_y = rotated_y;
@@ -0,0 +1,39 @@
+package core;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// The same acceleration for every body, like a second gravity, e.g. wind or
+// the pull of a tilted table. Fields can be changed between steps.
+public class UniformForceField implements ForceField {
+    private static final int PARALLEL_GRAIN = 512;
+
+    public double x, y;
+
+    // State of the step being taken, in fields for the range pass
+    private List<PhysicsBody> stepBodies;
+    private final ParallelRange.Body applyPass = this::apply;
+
+    public UniformForceField(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public void apply(List<PhysicsBody> bodies, double dt, ForkJoinPool executor) {
+        stepBodies = bodies;
+        if (executor == null) {
+            apply(0, bodies.size());
+        } else {
+            executor.invoke(new ParallelRange(applyPass, 0, bodies.size(), PARALLEL_GRAIN));
+        }
+        stepBodies = null;
+    }
+
+    private void apply(int from, int to) {
+        for (int i = from; i < to; i++) {
+            PhysicsBody b = stepBodies.get(i);
+            if (!b.isStatic && !b.isSleeping) b.applyForce(x * b.mass, y * b.mass);
+        }
+    }
+}
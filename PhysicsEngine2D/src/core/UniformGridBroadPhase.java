@@ -0,0 +1,121 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Spatial hash grid. Every body is inserted into each cell its bounds touch and
+// only bodies sharing a cell are compared. Cells are hashed into buckets with a
+// counting sort, so nothing is allocated once the arrays have grown.
+public class UniformGridBroadPhase implements BroadPhase {
+    private double cellSize;
+
+    private double[] minX = new double[0], minY = new double[0];
+    private double[] maxX = new double[0], maxY = new double[0];
+
+    // One entry per (body, cell) overlap
+    private int[] entryBody = new int[0];
+    private int[] entryCellX = new int[0], entryCellY = new int[0];
+    private int[] entryBucket = new int[0];
+    private int[] sorted = new int[0];
+    private int[] bucketStart = new int[0];
+
+    // A cell size of 0 picks the largest body diameter each step
+    public UniformGridBroadPhase() {
+        this(0);
+    }
+
+    public UniformGridBroadPhase(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public double getCellSize() { return cellSize; }
+    public void setCellSize(double cellSize) { this.cellSize = cellSize; }
+
+    @Override
+    public void collectPairs(List<PhysicsBody> bodies, PairList pairs) {
+        int n = bodies.size();
+        if (n < 2) return;
+        if (minX.length < n) {
+            minX = new double[n]; minY = new double[n];
+            maxX = new double[n]; maxY = new double[n];
+        }
+
+        double maxDiameter = 0;
+        for (int i = 0; i < n; i++) {
+            PhysicsBody b = bodies.get(i);
+            minX[i] = b.getMinX(); maxX[i] = b.getMaxX();
+            minY[i] = b.getMinY(); maxY[i] = b.getMaxY();
+            maxDiameter = Math.max(maxDiameter, Math.max(maxX[i] - minX[i], maxY[i] - minY[i]));
+        }
+        double cs = cellSize > 0 ? cellSize : Math.max(maxDiameter, 1e-3);
+        double inv = 1.0 / cs;
+
+        // 1. Generate (body, cell) entries
+        int entries = 0;
+        for (int i = 0; i < n; i++) {
+            int x0 = (int) Math.floor(minX[i] * inv), x1 = (int) Math.floor(maxX[i] * inv);
+            int y0 = (int) Math.floor(minY[i] * inv), y1 = (int) Math.floor(maxY[i] * inv);
+            for (int cx = x0; cx <= x1; cx++) {
+                for (int cy = y0; cy <= y1; cy++) {
+                    if (entries == entryBody.length) grow(Math.max(2 * entries, 2 * n));
+                    entryBody[entries] = i;
+                    entryCellX[entries] = cx;
+                    entryCellY[entries] = cy;
+                    entries++;
+                }
+            }
+        }
+
+        // 2. Counting sort of the entries into hash buckets
+        int buckets = Integer.highestOneBit(Math.max(entries, 1)) * 2;
+        if (bucketStart.length < buckets + 1) bucketStart = new int[buckets + 1];
+        Arrays.fill(bucketStart, 0, buckets + 1, 0);
+        int mask = buckets - 1;
+        for (int e = 0; e < entries; e++) {
+            int h = (entryCellX[e] * 73856093) ^ (entryCellY[e] * 19349663);
+            h ^= h >>> 16;
+            entryBucket[e] = h & mask;
+            bucketStart[entryBucket[e] + 1]++;
+        }
+        for (int k = 0; k < buckets; k++) bucketStart[k + 1] += bucketStart[k];
+        if (sorted.length < entries) sorted = new int[entryBody.length];
+        for (int e = 0; e < entries; e++) {
+            sorted[bucketStart[entryBucket[e]]++] = e;
+        }
+        // bucketStart[k] is now the end of bucket k, i.e. the start of bucket k + 1
+
+        // 3. Compare entries that share a cell
+        int start = 0;
+        for (int k = 0; k < buckets; k++) {
+            int end = bucketStart[k];
+            for (int p = start; p < end; p++) {
+                int ep = sorted[p];
+                int ia = entryBody[ep];
+                PhysicsBody a = bodies.get(ia);
+                for (int q = p + 1; q < end; q++) {
+                    int eq = sorted[q];
+                    if (entryCellX[ep] != entryCellX[eq] || entryCellY[ep] != entryCellY[eq]) continue;
+                    int ib = entryBody[eq];
+                    PhysicsBody b = bodies.get(ib);
+                    if (BroadPhase.isInactive(a) && BroadPhase.isInactive(b)) continue;
+                    if (minX[ia] > maxX[ib] || minX[ib] > maxX[ia]) continue;
+                    if (minY[ia] > maxY[ib] || minY[ib] > maxY[ia]) continue;
+                    // Report the pair only from the cell holding the corner of the
+                    // overlap, so bodies sharing several cells are reported once
+                    int ox = (int) Math.floor(Math.max(minX[ia], minX[ib]) * inv);
+                    int oy = (int) Math.floor(Math.max(minY[ia], minY[ib]) * inv);
+                    if (ox != entryCellX[ep] || oy != entryCellY[ep]) continue;
+                    if (ia < ib) pairs.add(ia, ib); else pairs.add(ib, ia);
+                }
+            }
+            start = end;
+        }
+    }
+
+    private void grow(int capacity) {
+        entryBody = Arrays.copyOf(entryBody, capacity);
+        entryCellX = Arrays.copyOf(entryCellX, capacity);
+        entryCellY = Arrays.copyOf(entryCellY, capacity);
+        entryBucket = Arrays.copyOf(entryBucket, capacity);
+    }
+}
@@ -42,4 +42,68 @@ public class Vector2D {
     public double cross(Vector2D v) {
         return this.x * v.y - this.y * v.x;
     }
-}
\ No newline at end of file
+
+    // In-place variants. These mutate and return this vector so the integrator
+    // and the contact solver can run without allocating temporaries.
+
+    public Vector2D set(double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    public Vector2D set(Vector2D v) {
+        return set(v.x, v.y);
+    }
+
+    public Vector2D setZero() {
+        return set(0, 0);
+    }
+
+    public Vector2D addLocal(Vector2D v) {
+        this.x += v.x;
+        this.y += v.y;
+        return this;
+    }
+
+    public Vector2D addLocal(double x, double y) {
+        this.x += x;
+        this.y += y;
+        return this;
+    }
+
+    public Vector2D subtractLocal(Vector2D v) {
+        this.x -= v.x;
+        this.y -= v.y;
+        return this;
+    }
+
+    public Vector2D scaleLocal(double scalar) {
+        this.x *= scalar;
+        this.y *= scalar;
+        return this;
+    }
+
+    // this += v * scalar
+    public Vector2D addScaledLocal(Vector2D v, double scalar) {
+        this.x += v.x * scalar;
+        this.y += v.y * scalar;
+        return this;
+    }
+
+    // this = this * scalar + v
+    public Vector2D scaleAddLocal(double scalar, Vector2D v) {
+        this.x = this.x * scalar + v.x;
+        this.y = this.y * scalar + v.y;
+        return this;
+    }
+
+    public Vector2D normalizeLocal() {
+        double mag = magnitude();
+        return (mag == 0) ? setZero() : scaleLocal(1 / mag);
+    }
+
+    public double magnitudeSquared() {
+        return x * x + y * y;
+    }
+}
@@ -0,0 +1,247 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// The complete state of a world's bodies in a compact binary form, for
+// rollback, replays and branching a simulation. Every body is one fixed-size
+// record (id, flags, shape, mass properties, transform, velocities, pending
+// force, previous transform, sleep timer and island ring), followed by the
+// contact impulses the solver warm starts from and the world's random state,
+// so stepping a restored world repeats the steps taken from the original.
+//
+// A WorldCheckpoint keeps one checkpoint in memory and reuses its buffer, so
+// capturing and restoring in a loop does not allocate. save() and load() go
+// through a memory-mapped file instead: bodies are written to and read from
+// the mapping directly, without an intermediate copy.
+//
+// Stepping a restored world repeats the original steps bit for bit with the
+// sweep and prune and grid broad phases. The pairs of a
+// DynamicAabbTreeBroadPhase come out in an order that depends on the history
+// of its tree, so there the solver may visit contacts in another order.
+//
+// Restoring updates the world's bodies in place, so references to them stay
+// valid; bodies are only created or dropped when the counts differ. Static
+// geometry, bounds and settings are not part of a checkpoint.
+public class WorldCheckpoint {
+    private static final int MAGIC = 0x50324457; // "P2DW"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 8;
+    public static final int BODY_BYTES = 4 * 4 + 21 * 8;
+    private static final int STATIC = 1, SLEEPING = 2, BULLET = 4;
+    private static final int CIRCLE = 0, RECTANGLE = 1, TRIANGLE = 2;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(0).order(ByteOrder.LITTLE_ENDIAN);
+    // Second view of buffer for restore(), so reading leaves the capture intact
+    private ByteBuffer reader = buffer.duplicate();
+    private int size;
+
+    public void capture(PhysicsWorld world) {
+        int size = sizeOf(world);
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            reader = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        write(world, buffer);
+        this.size = size;
+    }
+
+    public void restore(PhysicsWorld world) {
+        if (size == 0) throw new IllegalStateException("Nothing captured");
+        reader.clear();
+        read(world, reader);
+    }
+
+    // Bytes of the last capture
+    public int size() { return size; }
+
+    public static void save(PhysicsWorld world, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(world));
+            write(world, out.order(ByteOrder.LITTLE_ENDIAN));
+            out.force();
+        }
+    }
+
+    public static void load(PhysicsWorld world, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            read(world, in.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    public static int sizeOf(PhysicsWorld world) {
+        return HEADER_BYTES + world.getBodies().size() * BODY_BYTES + world.getSolver().impulseBytes();
+    }
+
+    // Writes from the buffer's position on; the buffer must be little endian
+    public static void write(PhysicsWorld world, ByteBuffer out) {
+        List<PhysicsBody> bodies = world.getBodies();
+        int n = bodies.size();
+        out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(world.getNextBodyId()).putDouble(world.getAccumulator());
+        out.putLong(world.getRandomState());
+        // Records are written at absolute offsets, which skips the position
+        // bookkeeping of relative puts
+        int base = out.position();
+        for (int i = 0; i < n; i++) {
+            writeBody(bodies.get(i), out, base + i * BODY_BYTES);
+        }
+        out.position(base + n * BODY_BYTES);
+        world.getSolver().writeImpulses(out);
+    }
+
+    public static void read(PhysicsWorld world, ByteBuffer in) {
+        if (in.getInt() != MAGIC) throw new IllegalArgumentException("Not a world checkpoint");
+        int version = in.getInt();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+        int n = in.getInt();
+        int nextBodyId = in.getInt();
+        double accumulator = in.getDouble();
+        long randomState = in.getLong();
+
+        List<PhysicsBody> bodies = world.getBodies();
+        if (bodies.size() > n) {
+            // Dropped bodies are out of the world, e.g. free for a BodyPool
+            for (int i = n; i < bodies.size(); i++) bodies.get(i).index = -1;
+            bodies.subList(n, bodies.size()).clear();
+        }
+        int base = in.position();
+        for (int i = 0; i < n; i++) {
+            int at = base + i * BODY_BYTES;
+            PhysicsBody b = i < bodies.size() ? bodies.get(i) : null;
+            Shape shape = readShape(in, at, b != null ? b.shape : i > 0 ? bodies.get(i - 1).shape : null);
+            if (b == null) {
+                b = new PhysicsBody(new Vector2D(0, 0), shape, 1, false);
+                bodies.add(b);
+            }
+            if (b.shape != shape) {
+                b.shape = shape;
+                b.invalidateWorldGeometry();
+            }
+            b.index = i;
+            readBody(b, in, at);
+        }
+        // Island rings are stored as body indices
+        for (int i = 0; i < n; i++) {
+            int next = in.getInt(base + i * BODY_BYTES + 12);
+            bodies.get(i).nextInIsland = next < 0 ? null : bodies.get(next);
+        }
+        in.position(base + n * BODY_BYTES);
+        world.getSolver().readImpulses(in);
+        world.restored(nextBodyId, accumulator, randomState);
+    }
+
+    // One body record of BODY_BYTES at at. With readRecord() this moves single
+    // bodies between worlds, e.g. the shards of a sim.ShardedWorld.
+    public static void writeBody(PhysicsBody b, ByteBuffer out, int at) {
+        int flags = (b.isStatic ? STATIC : 0) | (b.isSleeping ? SLEEPING : 0) | (b.isBullet ? BULLET : 0);
+        double width, height;
+        int shape;
+        if (b.shape instanceof CircleShape) {
+            shape = CIRCLE;
+            width = height = ((CircleShape) b.shape).getRadius();
+        } else if (b.shape instanceof RectangleShape) {
+            shape = RECTANGLE;
+            width = ((RectangleShape) b.shape).getWidth();
+            height = ((RectangleShape) b.shape).getHeight();
+        } else if (b.shape instanceof TriangleShape) {
+            shape = TRIANGLE;
+            width = height = ((TriangleShape) b.shape).getSize();
+        } else {
+            throw new IllegalArgumentException("Cannot checkpoint " + b.shape.getClass().getSimpleName());
+        }
+        out.putInt(at, b.id);
+        out.putInt(at + 4, flags);
+        out.putInt(at + 8, shape);
+        out.putInt(at + 12, b.nextInIsland == null ? -1 : b.nextInIsland.index);
+        at += 16;
+        out.putDouble(at, width);
+        out.putDouble(at + 8, height);
+        out.putDouble(at + 16, b.mass);
+        out.putDouble(at + 24, b.momentOfInertia);
+        out.putDouble(at + 32, b.restitution);
+        out.putDouble(at + 40, b.friction);
+        out.putDouble(at + 48, b.linearDamping);
+        out.putDouble(at + 56, b.angularDamping);
+        out.putDouble(at + 64, b.position.x);
+        out.putDouble(at + 72, b.position.y);
+        out.putDouble(at + 80, b.angle);
+        out.putDouble(at + 88, b.velocity.x);
+        out.putDouble(at + 96, b.velocity.y);
+        out.putDouble(at + 104, b.angularVelocity);
+        out.putDouble(at + 112, b.force.x);
+        out.putDouble(at + 120, b.force.y);
+        out.putDouble(at + 128, b.torque);
+        out.putDouble(at + 136, b.previousPosition.x);
+        out.putDouble(at + 144, b.previousPosition.y);
+        out.putDouble(at + 152, b.previousAngle);
+        out.putDouble(at + 160, b.sleepTime);
+    }
+
+    // Reads the record at at into body, with the recorded shape and id, or
+    // into a new body when body is null. The island ring is left as it was.
+    public static PhysicsBody readRecord(ByteBuffer in, int at, PhysicsBody body) {
+        Shape shape = readShape(in, at, body != null ? body.shape : null);
+        if (body == null) {
+            body = new PhysicsBody(new Vector2D(0, 0), shape, 1, false);
+        } else if (body.shape != shape) {
+            body.shape = shape;
+            body.invalidateWorldGeometry();
+        }
+        readBody(body, in, at);
+        return body;
+    }
+
+    static void readBody(PhysicsBody b, ByteBuffer in, int at) {
+        b.id = in.getInt(at);
+        int flags = in.getInt(at + 4);
+        b.isStatic = (flags & STATIC) != 0;
+        b.isSleeping = (flags & SLEEPING) != 0;
+        b.isBullet = (flags & BULLET) != 0;
+        at += 16;
+        b.mass = in.getDouble(at + 16);
+        b.momentOfInertia = in.getDouble(at + 24);
+        b.restitution = in.getDouble(at + 32);
+        b.friction = in.getDouble(at + 40);
+        b.linearDamping = in.getDouble(at + 48);
+        b.angularDamping = in.getDouble(at + 56);
+        b.position.set(in.getDouble(at + 64), in.getDouble(at + 72));
+        b.angle = in.getDouble(at + 80);
+        b.velocity.set(in.getDouble(at + 88), in.getDouble(at + 96));
+        b.angularVelocity = in.getDouble(at + 104);
+        b.force.set(in.getDouble(at + 112), in.getDouble(at + 120));
+        b.torque = in.getDouble(at + 128);
+        b.previousPosition.set(in.getDouble(at + 136), in.getDouble(at + 144));
+        b.previousAngle = in.getDouble(at + 152);
+        b.sleepTime = in.getDouble(at + 160);
+    }
+
+    // Reuses current when it already is the recorded shape, so restoring a
+    // world over itself does not even look up the shared shapes
+    static Shape readShape(ByteBuffer in, int at, Shape current) {
+        int shape = in.getInt(at + 8);
+        double width = in.getDouble(at + 16), height = in.getDouble(at + 24);
+        switch (shape) {
+            case CIRCLE:
+                if (current instanceof CircleShape && ((CircleShape) current).getRadius() == width) return current;
+                return CircleShape.of(width);
+            case RECTANGLE:
+                if (current instanceof RectangleShape && ((RectangleShape) current).getWidth() == width
+                        && ((RectangleShape) current).getHeight() == height) return current;
+                return RectangleShape.of(width, height);
+            case TRIANGLE:
+                if (current instanceof TriangleShape && ((TriangleShape) current).getSize() == (int) width) return current;
+                return TriangleShape.of((int) width);
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+}
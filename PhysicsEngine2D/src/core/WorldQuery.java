@@ -0,0 +1,256 @@
+package core;
+
+// One thread's queries on a PhysicsWorld. The traversal stack, the hit handed
+// to callbacks and the state of the current query live here, so queries do
+// not allocate and several threads can query the same world at once, each
+// with its own WorldQuery.
+//
+// The trees only narrow things down to bodies and pieces whose boxes are in
+// the way; the tests here then look at the actual shapes. Polygons are tested
+// in body space, with the rotation and box each body cached when
+// PhysicsWorld last brought the query tree up to date. They are read as
+// fields rather than through the getters, which would recompute them for a
+// body moved by hand since and so write to it from several threads.
+final class WorldQuery {
+    private final NodeStack stack = new NodeStack();
+    private final RaycastHit hit = new RaycastHit();
+
+    // Current query, in fields so the visitors below are allocated once
+    private QueryCallback callback;
+    private double boxX1, boxY1, boxX2, boxY2;
+    private double pointX, pointY, radius;
+    private RaycastCallback rayCallback;
+    private double rayX, rayY, rayDx, rayDy;
+    private double maxFraction;
+    private StaticGeometry geometry;
+    private RaycastHit closest;
+
+    private final DynamicAabbTreeBroadPhase.LeafVisitor boxVisitor = body -> {
+        if (body.minX > boxX2 || body.maxX < boxX1
+                || body.minY > boxY2 || body.maxY < boxY1) return true;
+        return callback.reportBody(body);
+    };
+    private final DynamicAabbTreeBroadPhase.LeafVisitor pointVisitor = body ->
+            !containsPoint(body, pointX, pointY) || callback.reportBody(body);
+    private final DynamicAabbTreeBroadPhase.LeafVisitor circleVisitor = body ->
+            !overlapsCircle(body, pointX, pointY, radius) || callback.reportBody(body);
+    private final DynamicAabbTreeBroadPhase.RayVisitor bodyRayVisitor = (body, max) ->
+            raycastBody(body, max) ? report(max) : max;
+    private final StaticGeometry.RayVisitor pieceRayVisitor = (piece, max) ->
+            raycastPiece(piece, max) ? report(max) : max;
+    private final RaycastCallback closestCallback = h -> {
+        closest.set(h);
+        return h.fraction;
+    };
+
+    void queryAABB(DynamicAabbTreeBroadPhase tree, double x1, double y1, double x2, double y2, QueryCallback callback) {
+        this.callback = callback;
+        boxX1 = x1;
+        boxY1 = y1;
+        boxX2 = x2;
+        boxY2 = y2;
+        tree.query(x1, y1, x2, y2, boxVisitor, stack);
+        this.callback = null;
+    }
+
+    void queryPoint(DynamicAabbTreeBroadPhase tree, double x, double y, QueryCallback callback) {
+        this.callback = callback;
+        pointX = x;
+        pointY = y;
+        tree.query(x, y, x, y, pointVisitor, stack);
+        this.callback = null;
+    }
+
+    void queryCircle(DynamicAabbTreeBroadPhase tree, double x, double y, double radius, QueryCallback callback) {
+        this.callback = callback;
+        pointX = x;
+        pointY = y;
+        this.radius = radius;
+        tree.query(x - radius, y - radius, x + radius, y + radius, circleVisitor, stack);
+        this.callback = null;
+    }
+
+    // Bodies first, then static geometry; a hit on either clips the ray for both
+    void raycast(DynamicAabbTreeBroadPhase tree, StaticGeometry geometry, double x1, double y1, double x2, double y2, RaycastCallback callback) {
+        this.geometry = geometry;
+        rayCallback = callback;
+        rayX = x1;
+        rayY = y1;
+        rayDx = x2 - x1;
+        rayDy = y2 - y1;
+        maxFraction = 1;
+        tree.raycast(x1, y1, rayDx, rayDy, maxFraction, bodyRayVisitor, stack);
+        if (maxFraction > 0) geometry.raycast(x1, y1, rayDx, rayDy, maxFraction, pieceRayVisitor, stack);
+        rayCallback = null;
+        this.geometry = null;
+    }
+
+    boolean raycastClosest(DynamicAabbTreeBroadPhase tree, StaticGeometry geometry, double x1, double y1, double x2, double y2, RaycastHit result) {
+        result.clear();
+        closest = result;
+        raycast(tree, geometry, x1, y1, x2, y2, closestCallback);
+        closest = null;
+        return result.hasHit();
+    }
+
+    private double report(double max) {
+        double fraction = rayCallback.reportHit(hit);
+        if (fraction < 0) return max;
+        maxFraction = Math.min(fraction, max);
+        return maxFraction;
+    }
+
+    // Whether the segment crosses the box at b[i..i+3] between 0 and maxFraction
+    static boolean rayHitsBox(double[] b, int i, double x, double y, double dx, double dy, double maxFraction) {
+        double low = 0, high = maxFraction;
+        if (dx == 0) {
+            if (x < b[i] || x > b[i + 2]) return false;
+        } else {
+            double t1 = (b[i] - x) / dx, t2 = (b[i + 2] - x) / dx;
+            low = Math.max(low, Math.min(t1, t2));
+            high = Math.min(high, Math.max(t1, t2));
+            if (low > high) return false;
+        }
+        if (dy == 0) {
+            return y >= b[i + 1] && y <= b[i + 3];
+        }
+        double t1 = (b[i + 1] - y) / dy, t2 = (b[i + 3] - y) / dy;
+        low = Math.max(low, Math.min(t1, t2));
+        high = Math.min(high, Math.max(t1, t2));
+        return low <= high;
+    }
+
+    // Rays starting inside a shape do not hit it
+    private boolean raycastBody(PhysicsBody body, double max) {
+        if (body.shape instanceof PolygonShape) {
+            PolygonShape polygon = (PolygonShape) body.shape;
+            double cos = body.cos, sin = body.sin;
+            double ox = rayX - body.position.x, oy = rayY - body.position.y;
+            double x = ox * cos + oy * sin, y = -ox * sin + oy * cos;
+            double dx = rayDx * cos + rayDy * sin, dy = -rayDx * sin + rayDy * cos;
+            Vector2D[] v = polygon.getVertices(), n = polygon.getNormals();
+            double low = 0, high = max;
+            int face = -1;
+            for (int i = 0; i < v.length; i++) {
+                // The ray is inside edge i where n . (p - v) <= 0
+                double numerator = n[i].x * (v[i].x - x) + n[i].y * (v[i].y - y);
+                double denominator = n[i].x * dx + n[i].y * dy;
+                if (denominator == 0) {
+                    if (numerator < 0) return false;
+                } else if (denominator < 0 && numerator < low * denominator) {
+                    low = numerator / denominator;
+                    face = i;
+                } else if (denominator > 0 && numerator < high * denominator) {
+                    high = numerator / denominator;
+                }
+                if (high < low) return false;
+            }
+            if (face < 0) return false;
+            setHit(body, -1, low, n[face].x * cos - n[face].y * sin, n[face].x * sin + n[face].y * cos);
+            return true;
+        }
+        double r = body.getRadius();
+        double sx = rayX - body.position.x, sy = rayY - body.position.y;
+        double b = sx * sx + sy * sy - r * r;
+        double c = sx * rayDx + sy * rayDy;
+        double rr = rayDx * rayDx + rayDy * rayDy;
+        double sigma = c * c - rr * b;
+        if (sigma < 0 || rr == 0) return false;
+        double a = -(c + Math.sqrt(sigma));
+        if (a < 0 || a > max * rr) return false;
+        double fraction = a / rr;
+        double nx = sx + fraction * rayDx, ny = sy + fraction * rayDy;
+        double length = Math.sqrt(nx * nx + ny * ny);
+        setHit(body, -1, fraction, nx / length, ny / length);
+        return true;
+    }
+
+    // Segments are hit from either side, with the normal facing the ray
+    private boolean raycastPiece(int piece, double max) {
+        double[] v = geometry.getVertices(piece), n = geometry.getNormals(piece);
+        if (v.length == 4) {
+            double numerator = n[0] * (v[0] - rayX) + n[1] * (v[1] - rayY);
+            double denominator = n[0] * rayDx + n[1] * rayDy;
+            if (denominator == 0) return false;
+            double t = numerator / denominator;
+            if (t < 0 || t > max) return false;
+            double ex = v[2] - v[0], ey = v[3] - v[1];
+            double s = ((rayX + rayDx * t - v[0]) * ex + (rayY + rayDy * t - v[1]) * ey) / (ex * ex + ey * ey);
+            if (s < 0 || s > 1) return false;
+            double sign = denominator < 0 ? 1 : -1;
+            setHit(null, piece, t, n[0] * sign, n[1] * sign);
+            return true;
+        }
+        double low = 0, high = max;
+        int face = -1;
+        for (int i = 0; i < v.length; i += 2) {
+            double numerator = n[i] * (v[i] - rayX) + n[i + 1] * (v[i + 1] - rayY);
+            double denominator = n[i] * rayDx + n[i + 1] * rayDy;
+            if (denominator == 0) {
+                if (numerator < 0) return false;
+            } else if (denominator < 0 && numerator < low * denominator) {
+                low = numerator / denominator;
+                face = i;
+            } else if (denominator > 0 && numerator < high * denominator) {
+                high = numerator / denominator;
+            }
+            if (high < low) return false;
+        }
+        if (face < 0) return false;
+        setHit(null, piece, low, n[face], n[face + 1]);
+        return true;
+    }
+
+    private void setHit(PhysicsBody body, int piece, double fraction, double nx, double ny) {
+        hit.body = body;
+        hit.piece = piece;
+        hit.fraction = fraction;
+        hit.x = rayX + rayDx * fraction;
+        hit.y = rayY + rayDy * fraction;
+        hit.normalX = nx;
+        hit.normalY = ny;
+    }
+
+    private static boolean containsPoint(PhysicsBody body, double x, double y) {
+        double ox = x - body.position.x, oy = y - body.position.y;
+        if (!(body.shape instanceof PolygonShape)) {
+            double r = body.getRadius();
+            return ox * ox + oy * oy <= r * r;
+        }
+        double cos = body.cos, sin = body.sin;
+        double lx = ox * cos + oy * sin, ly = -ox * sin + oy * cos;
+        PolygonShape polygon = (PolygonShape) body.shape;
+        Vector2D[] v = polygon.getVertices(), n = polygon.getNormals();
+        for (int i = 0; i < v.length; i++) {
+            if (n[i].x * (lx - v[i].x) + n[i].y * (ly - v[i].y) > 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean overlapsCircle(PhysicsBody body, double x, double y, double radius) {
+        double ox = x - body.position.x, oy = y - body.position.y;
+        if (!(body.shape instanceof PolygonShape)) {
+            double reach = body.getRadius() + radius;
+            return ox * ox + oy * oy <= reach * reach;
+        }
+        double cos = body.cos, sin = body.sin;
+        double lx = ox * cos + oy * sin, ly = -ox * sin + oy * cos;
+        PolygonShape polygon = (PolygonShape) body.shape;
+        Vector2D[] v = polygon.getVertices(), n = polygon.getNormals();
+        // Inside, or within radius of the nearest edge
+        double separation = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < v.length; i++) {
+            separation = Math.max(separation, n[i].x * (lx - v[i].x) + n[i].y * (ly - v[i].y));
+        }
+        if (separation <= 0) return true;
+        if (separation > radius) return false;
+        for (int i = 0; i < v.length; i++) {
+            Vector2D a = v[i], b = v[(i + 1) % v.length];
+            double ex = b.x - a.x, ey = b.y - a.y;
+            double t = Math.max(0, Math.min(1, ((lx - a.x) * ex + (ly - a.y) * ey) / (ex * ex + ey * ey)));
+            double dx = lx - a.x - ex * t, dy = ly - a.y - ey * t;
+            if (dx * dx + dy * dy <= radius * radius) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,142 @@
+package core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Append-only log of everything that went into a world, for finding where two
+// runs part ways. Attached with PhysicsWorld.setRecorder(), it writes the
+// world's settings, gravity and a checkpoint of its current state, then
+// every body added or removed, every reset, gravity and bounds change and new
+// piece of static geometry, and the dt of every step followed by the world's
+// stateHash() after it. WorldReplay reads the log back into a fresh world.
+// Force fields are code rather than data, so they cannot go in the log:
+// PhysicsWorld will not record a world that has any.
+//
+// Records go through a direct buffer that is written to the file channel when
+// full and at least every FLUSH_STEPS steps. Changes made by other means, like
+// forces applied or bodies moved between steps, are not recorded: a replay
+// shows them as the step where the hashes first differ.
+public class WorldRecorder implements AutoCloseable {
+    static final int MAGIC = 0x50324c47; // "P2LG"
+    static final int VERSION = 4;
+    static final byte START = 1, PIECE = 2, BOUNDS = 3, BODY = 4, RESET = 5, STEP = 6, REMOVE = 7, GRAVITY = 8;
+    private static final int FLUSH_STEPS = 60;
+
+    private final FileChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    // Pieces of static geometry already in the log
+    private int loggedPieces;
+    private int steps;
+
+    public WorldRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        out.putInt(MAGIC).putInt(VERSION);
+    }
+
+    void started(PhysicsWorld world) {
+        byte[] broadPhase = world.getBroadPhase().getClass().getSimpleName().getBytes(StandardCharsets.UTF_8);
+        ContactSolver solver = world.getSolver();
+        StaticGeometry geometry = world.getStaticGeometry();
+        reserve(1 + 4 + broadPhase.length + 4 + 4 + 1 + 8 + 8 + 8 + 8 + 8 + 4);
+        out.put(START).putInt(broadPhase.length).put(broadPhase);
+        out.putInt(solver.getVelocityIterations()).putInt(solver.getPositionIterations());
+        out.put((byte) (solver.isWarmStarting() ? 1 : 0));
+        out.putDouble(world.getFixedTimeStep());
+        out.putDouble(geometry.getFriction()).putDouble(geometry.getRestitution());
+        out.putDouble(world.getGravity().x).putDouble(world.getGravity().y);
+
+        // The checkpoint can be far bigger than the buffer, so it gets its own
+        int size = WorldCheckpoint.sizeOf(world);
+        out.putInt(size);
+        flush();
+        ByteBuffer checkpoint = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        WorldCheckpoint.write(world, checkpoint);
+        checkpoint.flip();
+        write(checkpoint);
+
+        loggedPieces = StaticGeometry.BOUND_PIECES;
+        logNewPieces(geometry);
+        boundsChanged(world);
+    }
+
+    void bodyAdded(PhysicsWorld world, PhysicsBody body) {
+        reserve(1 + WorldCheckpoint.BODY_BYTES);
+        out.put(BODY);
+        WorldCheckpoint.writeBody(body, out, out.position());
+        out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+    }
+
+    // Before the body is taken out, while its index still is its own
+    void bodyRemoved(PhysicsWorld world, PhysicsBody body) {
+        reserve(1 + 4);
+        out.put(REMOVE).putInt(body.index);
+    }
+
+    void wasReset(PhysicsWorld world) {
+        reserve(1);
+        out.put(RESET);
+    }
+
+    void gravityChanged(PhysicsWorld world) {
+        reserve(1 + 8 + 8);
+        out.put(GRAVITY).putDouble(world.getGravity().x).putDouble(world.getGravity().y);
+    }
+
+    void boundsChanged(PhysicsWorld world) {
+        StaticGeometry geometry = world.getStaticGeometry();
+        reserve(1 + 1 + 4 * 8);
+        out.put(BOUNDS).put((byte) (geometry.hasBounds() ? 1 : 0));
+        out.putDouble(geometry.getMinX()).putDouble(geometry.getMinY());
+        out.putDouble(geometry.getMaxX()).putDouble(geometry.getMaxY());
+    }
+
+    void stepped(PhysicsWorld world, double dt) {
+        logNewPieces(world.getStaticGeometry());
+        reserve(1 + 8 + 8);
+        out.put(STEP).putDouble(dt).putLong(world.stateHash());
+        if (++steps % FLUSH_STEPS == 0) flush();
+    }
+
+    private void logNewPieces(StaticGeometry geometry) {
+        int count = geometry.getPieceCount();
+        for (; loggedPieces < count; loggedPieces++) {
+            double[] v = geometry.getVertices(loggedPieces);
+            reserve(1 + 4 + v.length * 8);
+            out.put(PIECE).putInt(v.length);
+            for (double x : v) out.putDouble(x);
+        }
+    }
+
+    // Steps recorded so far
+    public int getStepCount() { return steps; }
+
+    public void flush() {
+        out.flip();
+        write(out);
+        out.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void reserve(int bytes) {
+        if (out.remaining() < bytes) flush();
+    }
+
+    private void write(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write world log", e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a WorldRecorder log back into a fresh world, one recorded step at a
+// time, and compares the world's stateHash() after each step with the one that
+// was recorded.
+public class WorldReplay implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private PhysicsWorld world;
+    private int step;
+    private long recordedHash, replayedHash;
+
+    public WorldReplay(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        in.limit(0);
+        if (!require(8) || in.getInt() != WorldRecorder.MAGIC) throw new IllegalArgumentException("Not a world log");
+        int version = in.getInt();
+        if (version != WorldRecorder.VERSION) throw new IllegalArgumentException("Unsupported log version " + version);
+    }
+
+    // The world being replayed; null until the first record has been read
+    public PhysicsWorld getWorld() { return world; }
+    // Steps replayed so far
+    public int getStep() { return step; }
+    public long getRecordedHash() { return recordedHash; }
+    public long getReplayedHash() { return replayedHash; }
+    public boolean matches() { return recordedHash == replayedHash; }
+
+    // Applies the records up to the next step and takes it. Returns false once
+    // the log has no more steps.
+    public boolean nextStep() throws IOException {
+        while (require(1)) {
+            byte type = in.get();
+            switch (type) {
+                case WorldRecorder.START: readStart(); break;
+                case WorldRecorder.PIECE: readPiece(); break;
+                case WorldRecorder.BOUNDS: readBounds(); break;
+                case WorldRecorder.BODY: readBody(); break;
+                case WorldRecorder.REMOVE:
+                    need(4);
+                    world.removeBody(world.getBodies().get(in.getInt()));
+                    break;
+                case WorldRecorder.RESET: world.reset(); break;
+                case WorldRecorder.GRAVITY:
+                    need(16);
+                    world.setGravity(in.getDouble(), in.getDouble());
+                    break;
+                case WorldRecorder.STEP:
+                    need(16);
+                    double dt = in.getDouble();
+                    recordedHash = in.getLong();
+                    world.update(dt);
+                    replayedHash = world.stateHash();
+                    step++;
+                    return true;
+                default:
+                    throw new IllegalArgumentException("Unknown record " + type + " after step " + step);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readStart() throws IOException {
+        need(4);
+        int length = in.getInt();
+        need(length + 4 + 4 + 1 + 8 + 8 + 8 + 8 + 8 + 4);
+        byte[] name = new byte[length];
+        in.get(name);
+        world = new PhysicsWorld(createBroadPhase(new String(name, StandardCharsets.UTF_8)));
+        world.getSolver().setVelocityIterations(in.getInt());
+        world.getSolver().setPositionIterations(in.getInt());
+        world.getSolver().setWarmStarting(in.get() != 0);
+        world.setFixedTimeStep(in.getDouble());
+        world.getStaticGeometry().setFriction(in.getDouble());
+        world.getStaticGeometry().setRestitution(in.getDouble());
+        world.setGravity(in.getDouble(), in.getDouble());
+
+        // The checkpoint is read straight from a mapping of the file
+        int size = in.getInt();
+        long at = channel.position() - in.remaining();
+        WorldCheckpoint.read(world, channel.map(FileChannel.MapMode.READ_ONLY, at, size).order(ByteOrder.LITTLE_ENDIAN));
+        channel.position(at + size);
+        in.clear().limit(0);
+    }
+
+    private void readPiece() throws IOException {
+        need(4);
+        int length = in.getInt();
+        need(length * 8);
+        if (length == 4) {
+            world.getStaticGeometry().addSegment(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+            return;
+        }
+        Vector2D[] points = new Vector2D[length / 2];
+        for (int i = 0; i < points.length; i++) points[i] = new Vector2D(in.getDouble(), in.getDouble());
+        world.getStaticGeometry().addPolygon(points);
+    }
+
+    private void readBounds() throws IOException {
+        need(1 + 4 * 8);
+        boolean enabled = in.get() != 0;
+        double minX = in.getDouble(), minY = in.getDouble(), maxX = in.getDouble(), maxY = in.getDouble();
+        if (enabled) world.setBounds(minX, minY, maxX, maxY); else world.clearBounds();
+    }
+
+    private void readBody() throws IOException {
+        need(WorldCheckpoint.BODY_BYTES);
+        int at = in.position();
+        PhysicsBody body = new PhysicsBody(new Vector2D(0, 0), WorldCheckpoint.readShape(in, at, null), 1, false);
+        WorldCheckpoint.readBody(body, in, at);
+        in.position(at + WorldCheckpoint.BODY_BYTES);
+        world.addBody(body);
+    }
+
+    // The broad phases that take no arguments, by class name
+    private static BroadPhase createBroadPhase(String name) {
+        switch (name) {
+            case "SweepAndPruneBroadPhase": return new SweepAndPruneBroadPhase();
+            case "UniformGridBroadPhase": return new UniformGridBroadPhase();
+            case "DynamicAabbTreeBroadPhase": return new DynamicAabbTreeBroadPhase();
+            case "BruteForceBroadPhase": return new BruteForceBroadPhase();
+            default: throw new IllegalArgumentException("Cannot replay with " + name);
+        }
+    }
+
+    private void need(int bytes) throws IOException {
+        if (!require(bytes)) throw new IOException("World log ends in the middle of a record");
+    }
+
+    // Reads from the file until at least bytes are buffered; false at the end
+    private boolean require(int bytes) throws IOException {
+        if (in.remaining() >= bytes) return true;
+        in.compact();
+        while (in.position() < bytes && channel.read(in) > 0) { }
+        in.flip();
+        return in.remaining() >= bytes;
+    }
+}
@@ -0,0 +1,153 @@
+package core;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.EventType;
+
+// Timings and counters of the last PhysicsWorld.update, filled in while
+// PhysicsWorld.setStatsEnabled(true). Disabled, the world only checks one
+// null per phase. The phase times are wall clock, so with an executor they
+// cover the work of all threads; allocated bytes only count the stepping
+// thread.
+//
+// Written by the stepping thread once per step. Readers on other threads,
+// such as JMX, may see values a step behind; copy() takes them all at once.
+public class WorldStats implements WorldStatsMXBean {
+    // Phases of PhysicsWorld.update, in order; GRAVITY covers the force fields too
+    static final int GRAVITY = 0, VELOCITIES = 1, COLLISIONS = 2, POSITIONS = 3, BOUNDARIES = 4, SLEEPING = 5, PARTICLES = 6;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // Asked before each step, so no event is allocated unless a recording wants it
+    private static final EventType STEP_EVENT = EventType.getEventType(PhysicsStepEvent.class);
+
+    private final long[] phaseNanos = new long[7];
+    private long steps;
+    private long stepNanos;
+    private double averageStepMillis;
+    private int candidatePairs, staticPairs, contacts, islands;
+    private int awakeBodies, sleepingBodies;
+    private int particles;
+    private int velocityIterations, positionIterations;
+    private long allocatedBytes;
+
+    // State of the step being measured
+    private long stepStart, phaseStart, allocatedAtStart;
+    private PhysicsStepEvent event;
+
+    void beginStep() {
+        if (STEP_EVENT.isEnabled()) {
+            event = new PhysicsStepEvent();
+            event.begin();
+        }
+        allocatedAtStart = THREADS.getCurrentThreadAllocatedBytes();
+        stepStart = phaseStart = System.nanoTime();
+    }
+
+    void endPhase(int phase) {
+        long now = System.nanoTime();
+        phaseNanos[phase] = now - phaseStart;
+        phaseStart = now;
+    }
+
+    void endStep(PhysicsWorld world, PairList pairs, ContactManifold[] manifolds, ContactIslands contactIslands) {
+        stepNanos = System.nanoTime() - stepStart;
+        steps++;
+        double millis = stepNanos / 1e6;
+        averageStepMillis = averageStepMillis == 0 ? millis : averageStepMillis * 0.95 + millis * 0.05;
+
+        candidatePairs = pairs.size();
+        staticPairs = 0;
+        contacts = 0;
+        for (int k = 0; k < pairs.size(); k++) {
+            if (pairs.getB(k) < 0) staticPairs++;
+            if (manifolds[k].touching) contacts++;
+        }
+        islands = contactIslands.getIslandCount();
+        awakeBodies = 0;
+        sleepingBodies = 0;
+        for (int i = 0; i < world.getBodies().size(); i++) {
+            PhysicsBody b = world.getBodies().get(i);
+            if (b.isStatic) continue;
+            if (b.isSleeping) sleepingBodies++; else awakeBodies++;
+        }
+        particles = world.getParticles().getCount();
+        velocityIterations = world.getSolver().getVelocityIterations();
+        positionIterations = world.getSolver().getPositionIterations();
+        // Measured last, so the counting above is the only thing it includes
+        // besides the step
+        allocatedBytes = THREADS.getCurrentThreadAllocatedBytes() - allocatedAtStart;
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.collisionNanos = phaseNanos[COLLISIONS];
+                event.positionNanos = phaseNanos[POSITIONS];
+                event.candidatePairs = candidatePairs;
+                event.contacts = contacts;
+                event.islands = islands;
+                event.awakeBodies = awakeBodies;
+                event.sleepingBodies = sleepingBodies;
+                event.particleNanos = phaseNanos[PARTICLES];
+                event.particles = particles;
+                event.allocatedBytes = allocatedBytes;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+
+    // Makes the stats visible to JConsole and other JMX clients as
+    // physics:type=World,name=<name>
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("physics:type=World,name=" + ObjectName.quote(name)));
+    }
+
+    public void unregister(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName("physics:type=World,name=" + ObjectName.quote(name)));
+    }
+
+    // Copies every value, e.g. into a snapshot for another thread
+    public void copy(WorldStats other) {
+        System.arraycopy(other.phaseNanos, 0, phaseNanos, 0, phaseNanos.length);
+        steps = other.steps;
+        stepNanos = other.stepNanos;
+        averageStepMillis = other.averageStepMillis;
+        candidatePairs = other.candidatePairs;
+        staticPairs = other.staticPairs;
+        contacts = other.contacts;
+        islands = other.islands;
+        awakeBodies = other.awakeBodies;
+        sleepingBodies = other.sleepingBodies;
+        particles = other.particles;
+        velocityIterations = other.velocityIterations;
+        positionIterations = other.positionIterations;
+        allocatedBytes = other.allocatedBytes;
+    }
+
+    @Override public long getSteps() { return steps; }
+    @Override public long getStepNanos() { return stepNanos; }
+    @Override public double getAverageStepMillis() { return averageStepMillis; }
+    @Override public long getGravityNanos() { return phaseNanos[GRAVITY]; }
+    @Override public long getVelocityNanos() { return phaseNanos[VELOCITIES]; }
+    // Broad phase, narrow phase and the velocity solver
+    @Override public long getCollisionNanos() { return phaseNanos[COLLISIONS]; }
+    // Integration, bullets and the position solver
+    @Override public long getPositionNanos() { return phaseNanos[POSITIONS]; }
+    @Override public long getBoundaryNanos() { return phaseNanos[BOUNDARIES]; }
+    @Override public long getSleepNanos() { return phaseNanos[SLEEPING]; }
+    @Override public long getParticleNanos() { return phaseNanos[PARTICLES]; }
+    // Pairs from the broad phase and static geometry, including the static ones
+    @Override public int getCandidatePairs() { return candidatePairs; }
+    @Override public int getStaticPairs() { return staticPairs; }
+    // Candidate pairs the narrow phase found touching
+    @Override public int getContacts() { return contacts; }
+    @Override public int getIslands() { return islands; }
+    @Override public int getAwakeBodies() { return awakeBodies; }
+    @Override public int getSleepingBodies() { return sleepingBodies; }
+    @Override public int getParticles() { return particles; }
+    @Override public int getVelocityIterations() { return velocityIterations; }
+    @Override public int getPositionIterations() { return positionIterations; }
+    @Override public long getAllocatedBytes() { return allocatedBytes; }
+}
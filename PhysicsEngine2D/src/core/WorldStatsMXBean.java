@@ -0,0 +1,25 @@
+package core;
+
+// What WorldStats exposes over JMX, see WorldStats.register()
+public interface WorldStatsMXBean {
+    long getSteps();
+    long getStepNanos();
+    double getAverageStepMillis();
+    long getGravityNanos();
+    long getVelocityNanos();
+    long getCollisionNanos();
+    long getPositionNanos();
+    long getBoundaryNanos();
+    long getSleepNanos();
+    long getParticleNanos();
+    int getCandidatePairs();
+    int getStaticPairs();
+    int getContacts();
+    int getIslands();
+    int getAwakeBodies();
+    int getSleepingBodies();
+    int getParticles();
+    int getVelocityIterations();
+    int getPositionIterations();
+    long getAllocatedBytes();
+}
@@ -0,0 +1,122 @@
+package gui;
+
+import core.*;
+import sim.WorldSnapshot;
+import java.awt.*;
+import java.awt.geom.Path2D;
+
+// Draws a snapshot in two fills: every awake body goes into one Path2D and
+// every sleeping body into another, instead of one draw call (plus a
+// Graphics2D copy and transform) per body. Bodies whose bounding circle is
+// outside the visible area are skipped. Frame times are tracked so the
+// saving can be compared against the per-shape ShapeRenderer path.
+public class BodyRenderer {
+    // Control point distance for approximating a quarter circle with a cubic
+    private static final double KAPPA = 0.5522847498;
+
+    private final Path2D.Double awakePath = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+    private final Path2D.Double sleepingPath = new Path2D.Double(Path2D.WIND_NON_ZERO, 256);
+    private final Vector2D renderPosition = new Vector2D(0, 0);
+    // Polygons are filled, segments (two vertices) drawn as lines
+    private final Path2D.Double staticFill = new Path2D.Double();
+    private final Path2D.Double staticLines = new Path2D.Double();
+    private int staticVersion = -1;
+
+    private boolean batched = true;
+    private double averageFrameMillis;
+    private int drawn, culled;
+
+    public boolean isBatched() { return batched; }
+    public void setBatched(boolean batched) { this.batched = batched; }
+    public double getAverageFrameMillis() { return averageFrameMillis; }
+    public int getDrawnCount() { return drawn; }
+    public int getCulledCount() { return culled; }
+
+    public void render(Graphics2D g, WorldSnapshot snapshot, double alpha, Rectangle view, Color awake, Color sleeping) {
+        long start = System.nanoTime();
+        drawn = 0;
+        culled = 0;
+        awakePath.reset();
+        sleepingPath.reset();
+
+        for (int i = 0; i < snapshot.count; i++) {
+            double x = snapshot.previousX[i] + (snapshot.x[i] - snapshot.previousX[i]) * alpha;
+            double y = snapshot.previousY[i] + (snapshot.y[i] - snapshot.previousY[i]) * alpha;
+            double angle = snapshot.previousAngle[i] + (snapshot.angle[i] - snapshot.previousAngle[i]) * alpha;
+            core.Shape shape = snapshot.shapes[i];
+
+            double r = shape.getBoundingRadius();
+            if (x + r < view.x || x - r > view.x + view.width || y + r < view.y || y - r > view.y + view.height) {
+                culled++;
+                continue;
+            }
+            drawn++;
+
+            if (batched) {
+                append(snapshot.sleeping[i] ? sleepingPath : awakePath, shape, x, y, angle);
+            } else {
+                g.setColor(snapshot.sleeping[i] ? sleeping : awake);
+                ShapeRenderer.draw(g, shape, renderPosition.set(x, y), angle);
+            }
+        }
+
+        if (batched) {
+            g.setColor(awake);
+            g.fill(awakePath);
+            g.setColor(sleeping);
+            g.fill(sleepingPath);
+        }
+
+        double millis = (System.nanoTime() - start) / 1e6;
+        averageFrameMillis = averageFrameMillis == 0 ? millis : averageFrameMillis * 0.95 + millis * 0.05;
+    }
+
+    // Static geometry never moves, so its paths are only rebuilt when pieces were added
+    public void renderStatic(Graphics2D g, WorldSnapshot snapshot, Color color) {
+        if (snapshot.staticVersion != staticVersion) {
+            staticVersion = snapshot.staticVersion;
+            staticFill.reset();
+            staticLines.reset();
+            for (double[] v : snapshot.staticPieces) {
+                Path2D.Double path = v.length == 4 ? staticLines : staticFill;
+                path.moveTo(v[0], v[1]);
+                for (int i = 2; i < v.length; i += 2) path.lineTo(v[i], v[i + 1]);
+                if (v.length > 4) path.closePath();
+            }
+        }
+        g.setColor(color);
+        g.fill(staticFill);
+        g.draw(staticLines);
+    }
+
+    private static void append(Path2D.Double path, core.Shape shape, double x, double y, double angle) {
+        if (shape instanceof CircleShape) {
+            appendCircle(path, x, y, ((CircleShape) shape).getRadius());
+        } else if (shape instanceof RectangleShape) {
+            appendPolygon(path, ((RectangleShape) shape).getVertices(), x, y, angle);
+        } else if (shape instanceof TriangleShape) {
+            appendPolygon(path, ((TriangleShape) shape).getVertices(), x, y, angle);
+        }
+    }
+
+    private static void appendCircle(Path2D.Double path, double x, double y, double r) {
+        double k = r * KAPPA;
+        path.moveTo(x + r, y);
+        path.curveTo(x + r, y + k, x + k, y + r, x, y + r);
+        path.curveTo(x - k, y + r, x - r, y + k, x - r, y);
+        path.curveTo(x - r, y - k, x - k, y - r, x, y - r);
+        path.curveTo(x + k, y - r, x + r, y - k, x + r, y);
+        path.closePath();
+    }
+
+    private static void appendPolygon(Path2D.Double path, Vector2D[] vertices, double x, double y, double angle) {
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        for (int i = 0; i < vertices.length; i++) {
+            Vector2D v = vertices[i];
+            double wx = x + v.x * cos - v.y * sin;
+            double wy = y + v.x * sin + v.y * cos;
+            if (i == 0) path.moveTo(wx, wy); else path.lineTo(wx, wy);
+        }
+        path.closePath();
+    }
+}
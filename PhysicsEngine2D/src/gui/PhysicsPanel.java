@@ -105,19 +105,34 @@
 package gui;
 
 import core.*;
+import sim.SimulationThread;
+import sim.WorldSnapshot;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.management.JMException;
 
 public class PhysicsPanel extends JPanel {
-    private final PhysicsWorld world = new PhysicsWorld();
+    // The world is stepped on its own thread; the EDT only queues commands to
+    // it and draws the snapshots it publishes
+    private final SimulationThread simulation = new SimulationThread(createWorld());
     private final Timer timer;
     private final JComboBox<String> shapeSelector;
+    private final BodyRenderer renderer = new BodyRenderer();
+    private final ParticleRenderer particleRenderer = new ParticleRenderer();
+    // Removed bodies are reused for the next spawns
+    private final BodyPool pool = new BodyPool();
+    private PhysicsBody picked;
     
     // Define colors for the physics objects
     private static final Color OBJECT_COLOR = new Color(0, 150, 255);
     private static final Color SLEEPING_OBJECT_COLOR = new Color(120, 120, 120);
+    private static final Color STATIC_COLOR = new Color(90, 160, 90);
+    private static final Color PARTICLE_COLOR = new Color(255, 170, 60);
     private static final Color PANEL_BG_COLOR = new Color(30, 30, 30);
+    private static final Color OVERLAY_COLOR = new Color(220, 220, 220);
 
 
     public PhysicsPanel() {
@@ -128,57 +143,139 @@ public class PhysicsPanel extends JPanel {
 
         shapeSelector = new JComboBox<>(new String[]{"Circle", "Rectangle", "Triangle"});
 
-        timer = new Timer(16, e -> {
-            int width = getWidth();
-            int height = getHeight();
-            world.update(0.016, width, height);
-            repaint();
+        // The timer only paces repaints
+        timer = new Timer(16, e -> repaint());
+
+        // B switches between the batched renderer and one draw call per body
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('b'), "toggleBatching");
+        getActionMap().put("toggleBatching", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                renderer.setBatched(!renderer.isBatched());
+            }
+        });
+
+        // S shows the step timings and counters of the world
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('s'), "toggleStats");
+        getActionMap().put("toggleStats", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                simulation.submit(world -> world.setStatsEnabled(!world.isStatsEnabled()));
+            }
+        });
+
+        // P puts a particle emitter at the cursor
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('p'), "addEmitter");
+        getActionMap().put("addEmitter", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Point mouse = getMousePosition();
+                if (mouse == null) return;
+                simulation.submit(world -> world.getParticles().addEmitter(new ParticleEmitter(mouse.x, mouse.y, 2, 2000, 8)));
+            }
+        });
+
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                simulation.setBounds(getWidth(), getHeight());
+            }
         });
 
         addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
-                Vector2D pos = new Vector2D(e.getX(), e.getY());
+                double x = e.getX(), y = e.getY();
+                // Right click removes the body under the cursor
+                if (SwingUtilities.isRightMouseButton(e)) {
+                    simulation.submit(world -> removeBodyAt(world, x, y));
+                    return;
+                }
                 core.Shape shape;
                 
                 String selectedShape = (String) shapeSelector.getSelectedItem();
 
                 switch (selectedShape) {
                     case "Circle":
-                        shape = new CircleShape(20);
+                        shape = CircleShape.of(20);
                         break;
                     case "Rectangle":
-                        shape = new RectangleShape(40, 30);
+                        shape = RectangleShape.of(40, 30);
                         break;
                     case "Triangle":
-                        shape = new TriangleShape(40);
+                        shape = TriangleShape.of(40);
                         break;
                     default:
-                        shape = new CircleShape(20);
+                        shape = CircleShape.of(20);
                         break;
                 }
 
-                PhysicsBody body = new PhysicsBody(pos, shape, 10, false);
-                body.applyTorque((Math.random() - 0.5) * 500);
-                world.addBody(body);
-                // Wake up the world if it was sleeping
-                world.getBodies().forEach(PhysicsBody::wakeUp);
+                // Sleeping islands wake up by themselves if the new body lands on them.
+                // The spin comes from the world's random numbers so a recorded
+                // session replays with the same spins.
+                simulation.submit(world -> {
+                    PhysicsBody body = pool.acquire(x, y, shape, 10, false);
+                    body.applyTorque((world.nextRandom() - 0.5) * 500);
+                    world.addBody(body);
+                });
             }
         });
+
+        // -Dphysics.record=<file> logs the session for sim.ReplayTool
+        String log = System.getProperty("physics.record");
+        if (log != null) {
+            simulation.submit(world -> {
+                try {
+                    world.setRecorder(new WorldRecorder(Path.of(log)));
+                } catch (IOException e) {
+                    System.err.println("Not recording: " + e.getMessage());
+                }
+            });
+        }
+
+        simulation.setBounds(800, 600);
+        simulation.start();
+        timer.start();
+    }
+
+    // Runs on the simulation thread, which is also the only one using the pool.
+    // The world must not change during the query, so the body is removed after it.
+    private void removeBodyAt(PhysicsWorld world, double x, double y) {
+        picked = null;
+        world.queryPoint(x, y, body -> {
+            if (body.isStatic) return true;
+            picked = body;
+            return false;
+        });
+        if (picked == null) return;
+        world.removeBody(picked);
+        pool.release(picked);
+        picked = null;
+    }
+
+    private static PhysicsWorld createWorld() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setSeed(System.nanoTime());
+        // Readable in JConsole; only filled in while S has turned stats on
+        try {
+            world.getStats().register("PhysicsPanel");
+        } catch (JMException e) {
+            System.err.println("Stats not registered: " + e.getMessage());
+        }
+        return world;
     }
 
     public void start() {
-        timer.start();
+        simulation.setRunning(true);
     }
 
     public void stop() {
-        timer.stop();
+        simulation.setRunning(false);
     }
 
     public void reset() {
         stop();
-        world.reset();
-        repaint();
+        simulation.submit(PhysicsWorld::reset);
     }
     
     public JComboBox<String> getShapeSelector() {
@@ -192,16 +289,30 @@ public class PhysicsPanel extends JPanel {
         Graphics2D g2d = (Graphics2D) g.create();
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        for (PhysicsBody b : world.getBodies()) {
-            // --- MODIFIED ---
-            // Use our new color scheme for the objects
-            if (b.isSleeping) {
-                g2d.setColor(SLEEPING_OBJECT_COLOR);
-            } else {
-                g2d.setColor(OBJECT_COLOR);
-            }
-            b.shape.draw(g2d, b.position, b.angle);
-        }
+        WorldSnapshot snapshot = simulation.getSnapshot();
+        double alpha = snapshot.alphaAt(System.nanoTime());
+        Rectangle view = g2d.getClipBounds();
+        if (view == null) view = new Rectangle(0, 0, getWidth(), getHeight());
+        renderer.renderStatic(g2d, snapshot, STATIC_COLOR);
+        renderer.render(g2d, snapshot, alpha, view, OBJECT_COLOR, SLEEPING_OBJECT_COLOR);
+        particleRenderer.render(g2d, snapshot, getWidth(), getHeight(), PARTICLE_COLOR);
+
+        g2d.setColor(OVERLAY_COLOR);
+        g2d.drawString(String.format("%s render %.2f ms, %d drawn, %d culled, %d particles in %.2f ms (B to toggle, S for step stats, P for an emitter, right click removes)",
+                renderer.isBatched() ? "batched" : "per-shape", renderer.getAverageFrameMillis(),
+                renderer.getDrawnCount(), renderer.getCulledCount(), snapshot.particleCount,
+                particleRenderer.getAverageFrameMillis()), 10, 20);
+        if (snapshot.statsEnabled) drawStats(g2d, snapshot.stats);
         g2d.dispose();
     }
+
+    private static void drawStats(Graphics2D g, WorldStats s) {
+        g.drawString(String.format("step %.2f ms (avg %.2f): gravity %.2f, velocities %.2f, collisions %.2f, positions %.2f, boundaries %.2f, sleeping %.2f, particles %.2f",
+                s.getStepNanos() / 1e6, s.getAverageStepMillis(), s.getGravityNanos() / 1e6, s.getVelocityNanos() / 1e6,
+                s.getCollisionNanos() / 1e6, s.getPositionNanos() / 1e6, s.getBoundaryNanos() / 1e6, s.getSleepNanos() / 1e6,
+                s.getParticleNanos() / 1e6), 10, 38);
+        g.drawString(String.format("%d pairs (%d static), %d contacts, %d islands, %d awake, %d sleeping, %d/%d iterations, %d B allocated",
+                s.getCandidatePairs(), s.getStaticPairs(), s.getContacts(), s.getIslands(), s.getAwakeBodies(),
+                s.getSleepingBodies(), s.getVelocityIterations(), s.getPositionIterations(), s.getAllocatedBytes()), 10, 56);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package gui;
+
+import core.*;
+import java.awt.*;
+
+// Draws the core shapes. Kept out of the core package so the engine itself
+// has no dependency on AWT and can run headless.
+public class ShapeRenderer {
+    private ShapeRenderer() {}
+
+    public static void draw(Graphics2D g, core.Shape shape, Vector2D position, double angle) {
+        if (shape instanceof CircleShape) {
+            drawCircle(g, (CircleShape) shape, position);
+        } else if (shape instanceof RectangleShape) {
+            drawRectangle(g, (RectangleShape) shape, position, angle);
+        } else if (shape instanceof TriangleShape) {
+            drawTriangle(g, (TriangleShape) shape, position, angle);
+        }
+    }
+
+    private static void drawCircle(Graphics2D g, CircleShape circle, Vector2D position) {
+        double radius = circle.getRadius();
+        int r = (int) (radius * 2);
+        g.fillOval((int)(position.x - radius), (int)(position.y - radius), r, r);
+    }
+
+    private static void drawRectangle(Graphics2D g, RectangleShape rect, Vector2D pos, double angle) {
+        double width = rect.getWidth();
+        double height = rect.getHeight();
+        Graphics2D g2d = (Graphics2D) g.create();
+        g2d.translate(pos.x, pos.y);
+        g2d.rotate(angle);
+        g2d.fillRect((int)(-width / 2), (int)(-height / 2), (int)width, (int)height);
+        g2d.dispose();
+    }
+
+    private static void drawTriangle(Graphics2D g, TriangleShape triangle, Vector2D position, double angle) {
+        Vector2D[] vertices = triangle.getVertices();
+        int[] xPoints = { (int) vertices[0].x, (int) vertices[1].x, (int) vertices[2].x };
+        int[] yPoints = { (int) vertices[0].y, (int) vertices[1].y, (int) vertices[2].y };
+
+        Polygon poly = new Polygon(xPoints, yPoints, 3);
+
+        Graphics2D g2d = (Graphics2D) g.create();
+        g2d.translate(position.x, position.y);
+        g2d.rotate(angle);
+        g2d.fillPolygon(poly);
+        g2d.dispose();
+    }
+}
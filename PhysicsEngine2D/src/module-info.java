@@ -6,4 +6,6 @@
  */
 module PhysicsEngine2D {
 	requires java.desktop;
+	requires jdk.management;
+	requires jdk.jfr;
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package sim;
+
+import core.PhysicsWorld;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Steps many independent worlds as fast as possible, one world per pool
+// worker at a time, with no display involved.
+//
+//   java -p bin -m PhysicsEngine2D/sim.HeadlessRunner [worlds] [bodies] [steps] [threads] [rain|pile] [circle|rectangle|triangle|mixed]
+public class HeadlessRunner {
+    public static class Result {
+        public final Scenario scenario;
+        public final long steps;
+        public final long nanos;
+
+        Result(Scenario scenario, long steps, long nanos) {
+            this.scenario = scenario;
+            this.steps = steps;
+            this.nanos = nanos;
+        }
+
+        public double stepsPerSecond() {
+            return steps / (nanos / 1e9);
+        }
+    }
+
+    private final int steps;
+    private final double dt;
+    private final int threads;
+
+    public HeadlessRunner(int steps, double dt, int threads) {
+        this.steps = steps;
+        this.dt = dt;
+        this.threads = threads;
+    }
+
+    public List<Result> run(List<Scenario> scenarios) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Scenario scenario : scenarios) {
+                futures.add(pool.submit(() -> runOne(scenario)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public Result runOne(Scenario scenario) {
+        PhysicsWorld world = scenario.createWorld();
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            world.update(dt, scenario.width, scenario.height);
+        }
+        return new Result(scenario, steps, System.nanoTime() - start);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int worlds = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int bodies = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        String kind = args.length > 4 ? args[4] : "rain";
+        Scenario.ShapeMix shapes = args.length > 5 ? Scenario.ShapeMix.valueOf(args[5].toUpperCase()) : Scenario.ShapeMix.MIXED;
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < worlds; i++) {
+            scenarios.add(kind.equals("pile") ? Scenario.pile(bodies, shapes, i) : Scenario.rain(bodies, shapes, i));
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = new HeadlessRunner(steps, 0.016, threads).run(scenarios);
+        double wall = (System.nanoTime() - start) / 1e9;
+
+        long totalSteps = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            totalSteps += r.steps;
+            System.out.printf("world %d %s: %.1f steps/sec%n", i, r.scenario, r.stepsPerSecond());
+        }
+        System.out.printf("%d worlds on %d threads: %d steps in %.2f s, %.1f steps/sec overall%n",
+                worlds, threads, totalSteps, wall, totalSteps / wall);
+    }
+}
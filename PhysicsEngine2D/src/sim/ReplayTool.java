@@ -0,0 +1,32 @@
+package sim;
+
+import core.WorldReplay;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Reruns a log written by core.WorldRecorder as fast as possible and reports
+// the first step whose state hash differs from the recorded one.
+//
+//   java -p bin -m PhysicsEngine2D/sim.ReplayTool <log>
+public class ReplayTool {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayTool <log>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try (WorldReplay replay = new WorldReplay(Path.of(args[0]))) {
+            while (replay.nextStep()) {
+                if (!replay.matches()) {
+                    System.out.printf("step %d diverges: recorded hash %016x, replayed %016x (%d bodies)%n",
+                            replay.getStep(), replay.getRecordedHash(), replay.getReplayedHash(),
+                            replay.getWorld().getBodies().size());
+                    System.exit(1);
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d steps replayed in %.2f s (%.0f steps/sec), no divergence%n",
+                    replay.getStep(), seconds, replay.getStep() / seconds);
+        }
+    }
+}
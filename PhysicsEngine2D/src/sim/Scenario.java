@@ -0,0 +1,86 @@
+package sim;
+
+import core.*;
+import java.util.Random;
+
+// A reproducible starting state for a world: which bodies to spawn, where,
+// and the size of the box they live in. Used by the headless runner and the
+// benchmarks so they all exercise the same scenes.
+public class Scenario {
+    public enum ShapeMix { CIRCLE, RECTANGLE, TRIANGLE, MIXED }
+
+    public final String name;
+    public final int width, height;
+    public final int bodyCount;
+    public final ShapeMix shapes;
+    public final long seed;
+    private final boolean pile;
+
+    private Scenario(String name, int width, int height, int bodyCount, ShapeMix shapes, long seed, boolean pile) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.bodyCount = bodyCount;
+        this.shapes = shapes;
+        this.seed = seed;
+        this.pile = pile;
+    }
+
+    // Bodies scattered over a box roughly 25 times their combined area, falling
+    // with random velocities. Few contacts per body.
+    public static Scenario rain(int bodyCount, ShapeMix shapes, long seed) {
+        int side = (int) Math.max(400, Math.sqrt(bodyCount * 400.0 * 25));
+        return new Scenario("rain", side, side, bodyCount, shapes, seed, false);
+    }
+
+    // Bodies packed on a grid in the bottom of a box, so nearly every body is
+    // touching its neighbours once they drop.
+    public static Scenario pile(int bodyCount, ShapeMix shapes, long seed) {
+        int width = (int) Math.max(400, Math.sqrt(bodyCount) * 24);
+        int height = (int) Math.max(300, (bodyCount / (width / 20.0)) * 20 * 2);
+        return new Scenario("pile", width, height, bodyCount, shapes, seed, true);
+    }
+
+    public PhysicsWorld createWorld() {
+        PhysicsWorld world = new PhysicsWorld();
+        populate(world);
+        return world;
+    }
+
+    public void populate(PhysicsWorld world) {
+        world.setBounds(0, 0, width, height);
+        Random random = new Random(seed);
+        int columns = Math.max(1, (width - 20) / 20);
+        for (int i = 0; i < bodyCount; i++) {
+            Vector2D pos;
+            if (pile) {
+                pos = new Vector2D(20 + (i % columns) * 20, height - 20 - (i / columns) * 20);
+            } else {
+                pos = new Vector2D(10 + random.nextDouble() * (width - 20), 10 + random.nextDouble() * (height - 20));
+            }
+            PhysicsBody body = new PhysicsBody(pos, createShape(random), 10, false);
+            if (!pile) {
+                body.velocity.set(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100);
+            }
+            body.applyTorque((random.nextDouble() - 0.5) * 500);
+            world.addBody(body);
+        }
+    }
+
+    private Shape createShape(Random random) {
+        ShapeMix kind = shapes;
+        if (kind == ShapeMix.MIXED) {
+            kind = ShapeMix.values()[random.nextInt(3)];
+        }
+        switch (kind) {
+            case RECTANGLE: return RectangleShape.of(16, 12);
+            case TRIANGLE: return TriangleShape.of(16);
+            default: return CircleShape.of(8);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + bodyCount + " " + shapes.name().toLowerCase() + ", " + width + "x" + height + ")";
+    }
+}
@@ -0,0 +1,68 @@
+package sim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+// One end of the localhost connection between a ShardedWorld and one of its
+// ShardWorkers. Messages are length-prefixed little-endian buffers, so body
+// records go over the wire exactly as WorldCheckpoint lays them out.
+final class ShardChannel {
+    private final SocketChannel channel;
+    private ByteBuffer in = allocate(1 << 16);
+
+    ShardChannel(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Clears out for a new message, keeping room for the length
+    static ByteBuffer begin(ByteBuffer out) {
+        out.clear();
+        out.position(4);
+        return out;
+    }
+
+    // out with room for bytes more after its position, grown if need be
+    static ByteBuffer reserve(ByteBuffer out, int bytes) {
+        if (out.remaining() >= bytes) return out;
+        ByteBuffer grown = allocate(Math.max(out.position() + bytes, out.capacity() * 2));
+        out.flip();
+        return grown.put(out);
+    }
+
+    // Sends the message begun in out, leaving out begun for the next one
+    void send(ByteBuffer out) throws IOException {
+        out.putInt(0, out.position() - 4);
+        out.flip();
+        while (out.hasRemaining()) channel.write(out);
+        begin(out);
+    }
+
+    // The next message, valid until the next call
+    ByteBuffer receive() throws IOException {
+        in.clear().limit(4);
+        fill();
+        int length = in.getInt(0);
+        if (in.capacity() < length) in = allocate(Math.max(length, in.capacity() * 2));
+        in.clear().limit(length);
+        fill();
+        return in.flip();
+    }
+
+    private void fill() throws IOException {
+        while (in.hasRemaining()) {
+            if (channel.read(in) < 0) throw new EOFException("Shard connection closed");
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,47 @@
+package sim;
+
+// Splits a world's bounds into columns x rows equal rectangles, the regions
+// owned by the shards of a ShardedWorld. Region i is column i % columns of
+// row i / columns. Points outside the bounds belong to the nearest region.
+public class ShardLayout {
+    public final double minX, minY, maxX, maxY;
+    public final int columns, rows;
+    private final double width, height;
+
+    public ShardLayout(double minX, double minY, double maxX, double maxY, int columns, int rows) {
+        if (columns < 1 || rows < 1) throw new IllegalArgumentException("Need at least one region");
+        if (maxX <= minX || maxY <= minY) throw new IllegalArgumentException("Empty bounds");
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.columns = columns;
+        this.rows = rows;
+        this.width = (maxX - minX) / columns;
+        this.height = (maxY - minY) / rows;
+    }
+
+    // Vertical strips, which suit worlds that settle into a pile on the floor
+    public static ShardLayout strips(double minX, double minY, double maxX, double maxY, int shards) {
+        return new ShardLayout(minX, minY, maxX, maxY, shards, 1);
+    }
+
+    public int getRegionCount() { return columns * rows; }
+
+    public int column(double x) {
+        return Math.max(0, Math.min((int) ((x - minX) / width), columns - 1));
+    }
+
+    public int row(double y) {
+        return Math.max(0, Math.min((int) ((y - minY) / height), rows - 1));
+    }
+
+    public int owner(double x, double y) {
+        return row(y) * columns + column(x);
+    }
+
+    public double getRegionMinX(int region) { return minX + (region % columns) * width; }
+    public double getRegionMinY(int region) { return minY + (region / columns) * height; }
+    public double getRegionMaxX(int region) { return getRegionMinX(region) + width; }
+    public double getRegionMaxY(int region) { return getRegionMinY(region) + height; }
+}
@@ -0,0 +1,216 @@
+package sim;
+
+import core.BodyPool;
+import core.CircleShape;
+import core.PhysicsBody;
+import core.PhysicsWorld;
+import core.WorldCheckpoint;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The process behind one shard of a ShardedWorld. Its world holds the bodies
+// whose centres are in its region, which it owns, and ghosts: copies of the
+// bodies other shards own near its region. Owned bodies collide with ghosts
+// like with any body, but what the step does to a ghost is thrown away when
+// its owner sends it again, so ghosts are read-only to the shards that get
+// them. Each step the worker
+//   1. takes in the bodies migrating to it and the fresh ghosts, and drops
+//      the ghosts that were not sent again, other than the bodies that only
+//      left it last step
+//   2. steps its world
+//   3. sends back the owned bodies that left its region, which stay on as
+//      ghosts, and the owned bodies near other regions as their ghosts
+//
+// Started by ShardedWorld with the port to connect back to and the layout:
+//   sim.ShardWorker port shard columns rows minX minY maxX maxY ghostWidth gravityX gravityY [boundMinX boundMinY boundMaxX boundMaxY]
+public class ShardWorker {
+    // Messages from the ShardedWorld
+    static final int STEP = 1, COLLECT = 2, STOP = 3;
+    // What a body record in a STEP is to the shard that receives it
+    static final int MIGRANT = 0, GHOST = 1;
+    // Roles of the bodies in the world
+    private static final int OWNED = 1, MIRROR = 2;
+
+    private final int shard;
+    private final ShardLayout layout;
+    private final double ghostWidth;
+    private final PhysicsWorld world = new PhysicsWorld();
+    private final BodyPool pool = new BodyPool();
+    // By body id: the body, whether it is owned or a ghost, and the last
+    // message it came with, or is kept until
+    private PhysicsBody[] bodies = new PhysicsBody[0];
+    private int[] role = new int[0], received = new int[0];
+    private int message;
+    private List<PhysicsBody> ghosts = new ArrayList<>(), nextGhosts = new ArrayList<>();
+    private ByteBuffer out = ShardChannel.allocate(1 << 16);
+
+    public ShardWorker(int shard, ShardLayout layout, double ghostWidth) {
+        this.shard = shard;
+        this.layout = layout;
+        this.ghostWidth = ghostWidth;
+    }
+
+    public PhysicsWorld getWorld() { return world; }
+
+    // Serves the ShardedWorld until it says STOP
+    void serve(ShardChannel channel) throws IOException {
+        ShardChannel.begin(out);
+        while (true) {
+            ByteBuffer in = channel.receive();
+            switch (in.getInt()) {
+                case STEP:
+                    double dt = in.getDouble();
+                    receive(in);
+                    long start = System.nanoTime();
+                    world.update(dt);
+                    long nanos = System.nanoTime() - start;
+                    sendBodies(nanos);
+                    break;
+                case COLLECT:
+                    sendOwned();
+                    break;
+                case STOP:
+                    return;
+                default:
+                    throw new IOException("Unknown shard message");
+            }
+            channel.send(out);
+        }
+    }
+
+    private void receive(ByteBuffer in) {
+        message++;
+        nextGhosts.clear();
+        for (int n = in.getInt(); n > 0; n--) {
+            int kind = in.getInt();
+            int at = in.position();
+            int id = in.getInt(at);
+            ensureId(id);
+            PhysicsBody b = bodies[id];
+            if (b == null) {
+                // The placeholder shape is replaced by the recorded one
+                b = WorldCheckpoint.readRecord(in, at, pool.acquire(0, 0, CircleShape.of(1), 1, false));
+                world.adoptBody(b);
+                bodies[id] = b;
+            } else {
+                WorldCheckpoint.readRecord(in, at, b);
+            }
+            if (kind == GHOST && role[id] != MIRROR) nextGhosts.add(b);
+            role[id] = kind == GHOST ? MIRROR : OWNED;
+            received[id] = message;
+            in.position(at + WorldCheckpoint.BODY_BYTES);
+        }
+        // Ghosts not sent again have moved away from the region
+        for (int i = 0; i < ghosts.size(); i++) {
+            PhysicsBody b = ghosts.get(i);
+            int id = b.getId();
+            if (received[id] >= message) {
+                if (role[id] == MIRROR) nextGhosts.add(b);
+                continue;
+            }
+            world.removeBody(b);
+            pool.release(b);
+            bodies[id] = null;
+            role[id] = 0;
+        }
+        List<PhysicsBody> t = ghosts; ghosts = nextGhosts; nextGhosts = t;
+    }
+
+    // Step time, owned body count and the records for other shards, each
+    // with the shard it is for and whether it migrates or is a ghost there
+    private void sendBodies(long nanos) {
+        int header = out.position();
+        out.putLong(nanos).putInt(0).putInt(0);
+        int owned = 0, records = 0;
+        List<PhysicsBody> all = world.getBodies();
+        for (int i = 0; i < all.size(); i++) {
+            PhysicsBody b = all.get(i);
+            int id = b.getId();
+            if (role[id] != OWNED) continue;
+            int owner = layout.owner(b.position.x, b.position.y);
+            if (owner != shard) {
+                put(owner, MIGRANT, b);
+                records++;
+                // Its new owner only sends it back as a ghost after the next
+                // step, so it is kept through that one as if it had been sent
+                role[id] = MIRROR;
+                received[id] = message + 1;
+                ghosts.add(b);
+                continue;
+            }
+            owned++;
+            double reach = b.getRadius() + ghostWidth;
+            int left = layout.column(b.position.x - reach), right = layout.column(b.position.x + reach);
+            for (int row = layout.row(b.position.y - reach), last = layout.row(b.position.y + reach); row <= last; row++) {
+                for (int column = left; column <= right; column++) {
+                    int region = row * layout.columns + column;
+                    if (region == shard) continue;
+                    put(region, GHOST, b);
+                    records++;
+                }
+            }
+        }
+        out.putInt(header + 8, owned).putInt(header + 12, records);
+    }
+
+    private void sendOwned() {
+        int header = out.position();
+        out.putInt(0);
+        int owned = 0;
+        List<PhysicsBody> all = world.getBodies();
+        for (int i = 0; i < all.size(); i++) {
+            PhysicsBody b = all.get(i);
+            if (role[b.getId()] != OWNED) continue;
+            out = ShardChannel.reserve(out, WorldCheckpoint.BODY_BYTES);
+            WorldCheckpoint.writeBody(b, out, out.position());
+            out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+            owned++;
+        }
+        out.putInt(header, owned);
+    }
+
+    private void put(int region, int kind, PhysicsBody b) {
+        out = ShardChannel.reserve(out, 8 + WorldCheckpoint.BODY_BYTES);
+        out.putInt(region).putInt(kind);
+        WorldCheckpoint.writeBody(b, out, out.position());
+        out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+    }
+
+    private void ensureId(int id) {
+        if (id < bodies.length) return;
+        int n = Math.max(id + 1, bodies.length * 2);
+        bodies = Arrays.copyOf(bodies, n);
+        role = Arrays.copyOf(role, n);
+        received = Arrays.copyOf(received, n);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int shard = Integer.parseInt(args[1]);
+        ShardLayout layout = new ShardLayout(Double.parseDouble(args[4]), Double.parseDouble(args[5]),
+                Double.parseDouble(args[6]), Double.parseDouble(args[7]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        ShardWorker worker = new ShardWorker(shard, layout, Double.parseDouble(args[8]));
+        worker.world.setGravity(Double.parseDouble(args[9]), Double.parseDouble(args[10]));
+        if (args.length > 14) {
+            worker.world.setBounds(Double.parseDouble(args[11]), Double.parseDouble(args[12]),
+                    Double.parseDouble(args[13]), Double.parseDouble(args[14]));
+        }
+
+        ShardChannel channel = new ShardChannel(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+        ByteBuffer hello = ShardChannel.begin(ShardChannel.allocate(8));
+        hello.putInt(shard);
+        channel.send(hello);
+        try {
+            worker.serve(channel);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package sim;
+
+import core.PhysicsBody;
+import core.PhysicsWorld;
+import core.StaticGeometry;
+import core.WorldCheckpoint;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A world too big for one JVM, split by a ShardLayout into regions that each
+// belong to a ShardWorker process on this machine. Workers step their
+// regions at the same time; in between, a body that crossed into another
+// region migrates to that region's worker, and bodies within ghostWidth of
+// another region are mirrored to its worker as ghosts, so bodies on either
+// side of a border still collide. Bodies go over localhost sockets as
+// WorldCheckpoint body records, passing through this process, which routes
+// them without decoding.
+//
+// Ghosts are a step old, and each side of a contact across a border solves
+// it with its own copy of the other body, so the shards of a pile pushing
+// on each other do not match one world step for step. Workers get the
+// gravity and bounds of the world they were created from but not its other
+// static geometry or settings. Force fields need every body in the world, so
+// a world with any is not sharded at all.
+//
+//   try (ShardedWorld sharded = new ShardedWorld(world, ShardLayout.strips(0, 0, w, h, 4), ShardedWorld.ghostWidth(world))) {
+//       for (...) sharded.step(1 / 60.0);
+//       List<PhysicsBody> bodies = sharded.collect();
+//   }
+public class ShardedWorld implements AutoCloseable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+    // Length, STEP, dt and record count
+    private static final int STEP_HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    private final ShardLayout layout;
+    private final Process[] workers;
+    private final ShardChannel[] channels;
+    // The message each worker gets with the next step, filled as the bodies
+    // for it come in
+    private final ByteBuffer[] pending;
+    private final int[] pendingRecords;
+    private final long[] stepNanos;
+    private final int[] bodyCounts;
+    // Bodies in the pending messages that move to another shard
+    private int migrating;
+    private final ByteBuffer control = ShardChannel.allocate(64);
+    private int stepCount;
+
+    // Starts a worker per region and hands each the bodies of world in its
+    // region; world itself is left as it was
+    public ShardedWorld(PhysicsWorld world, ShardLayout layout, double ghostWidth) throws IOException {
+        if (!world.getForceFields().isEmpty()) throw new IllegalArgumentException("Cannot shard a world with force fields");
+        this.layout = layout;
+        int n = layout.getRegionCount();
+        workers = new Process[n];
+        channels = new ShardChannel[n];
+        pending = new ByteBuffer[n];
+        pendingRecords = new int[n];
+        stepNanos = new long[n];
+        bodyCounts = new int[n];
+        for (int shard = 0; shard < n; shard++) {
+            pending[shard] = ShardChannel.begin(ShardChannel.allocate(1 << 16));
+            beginStep(shard);
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            for (int shard = 0; shard < n; shard++) {
+                workers[shard] = new ProcessBuilder(command(port, shard, ghostWidth, world))
+                        .inheritIO().start();
+            }
+            // The socket adaptor is the one accept() of a channel that times
+            // out, rather than waiting forever for a worker that died
+            server.socket().setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            for (int i = 0; i < n; i++) {
+                Socket socket = server.socket().accept();
+                ShardChannel channel = new ShardChannel(socket.getChannel());
+                channels[channel.receive().getInt()] = channel;
+            }
+        } catch (SocketTimeoutException e) {
+            close();
+            throw new IOException("Shard workers did not connect within " + CONNECT_TIMEOUT_MILLIS + " ms", e);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        List<PhysicsBody> bodies = world.getBodies();
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            int shard = layout.owner(b.position.x, b.position.y);
+            ByteBuffer out = pending[shard] = ShardChannel.reserve(pending[shard], 4 + WorldCheckpoint.BODY_BYTES);
+            out.putInt(ShardWorker.MIGRANT);
+            WorldCheckpoint.writeBody(b, out, out.position());
+            out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+            pendingRecords[shard]++;
+        }
+        migrating = bodies.size();
+    }
+
+    // Twice the diameter of the largest body. A body of the width next to a
+    // border is enough for the bodies across it to collide with, but ghosts
+    // are stepped like any body, and the deeper ghosts they rest on keep the
+    // ones at the border from sagging. Wider zones stiffen piles across
+    // borders further, for more records exchanged every step.
+    public static double ghostWidth(PhysicsWorld world) {
+        double largest = 0;
+        List<PhysicsBody> bodies = world.getBodies();
+        for (int i = 0; i < bodies.size(); i++) largest = Math.max(largest, bodies.get(i).getRadius());
+        return 4 * largest;
+    }
+
+    public ShardLayout getLayout() { return layout; }
+    public int getShardCount() { return channels.length; }
+    // Steps taken since the shards were created
+    public int getStepCount() { return stepCount; }
+    // Bodies the shard owned after the last step, and how long it took to
+    // step its world, leaving out the exchange
+    public int getBodyCount(int shard) { return bodyCounts[shard]; }
+    public long getStepNanos(int shard) { return stepNanos[shard]; }
+
+    // Bodies in all shards, counting the ones migrating between them
+    public int getBodyCount() {
+        int count = migrating;
+        for (int c : bodyCounts) count += c;
+        return count;
+    }
+
+    // Steps every shard once, then passes the migrating bodies and ghosts on
+    // to the shards that get them with the next step
+    public void step(double dt) throws IOException {
+        for (int shard = 0; shard < channels.length; shard++) {
+            ByteBuffer out = pending[shard];
+            out.putDouble(8, dt).putInt(16, pendingRecords[shard]);
+            channels[shard].send(out);
+            beginStep(shard);
+        }
+        migrating = 0;
+        for (int shard = 0; shard < channels.length; shard++) {
+            ByteBuffer in = channels[shard].receive();
+            stepNanos[shard] = in.getLong();
+            bodyCounts[shard] = in.getInt();
+            for (int records = in.getInt(); records > 0; records--) {
+                int to = in.getInt();
+                int kind = in.getInt();
+                ByteBuffer out = pending[to] = ShardChannel.reserve(pending[to], 4 + WorldCheckpoint.BODY_BYTES);
+                out.putInt(kind);
+                out.put(out.position(), in, in.position(), WorldCheckpoint.BODY_BYTES);
+                out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+                in.position(in.position() + WorldCheckpoint.BODY_BYTES);
+                pendingRecords[to]++;
+                if (kind == ShardWorker.MIGRANT) migrating++;
+            }
+        }
+        stepCount++;
+    }
+
+    // The bodies every shard owns, as new bodies with the ids they had in
+    // the world the shards were created from, in the order of those ids
+    public List<PhysicsBody> collect() throws IOException {
+        List<PhysicsBody> bodies = new ArrayList<>();
+        // Bodies on their way to another shard are only in its next step
+        for (int shard = 0; shard < channels.length; shard++) {
+            ByteBuffer out = pending[shard];
+            for (int at = STEP_HEADER_BYTES, i = 0; i < pendingRecords[shard]; i++, at += 4 + WorldCheckpoint.BODY_BYTES) {
+                if (out.getInt(at) == ShardWorker.MIGRANT) bodies.add(WorldCheckpoint.readRecord(out, at + 4, null));
+            }
+        }
+        for (int shard = 0; shard < channels.length; shard++) {
+            ShardChannel.begin(control).putInt(ShardWorker.COLLECT);
+            channels[shard].send(control);
+        }
+        for (int shard = 0; shard < channels.length; shard++) {
+            ByteBuffer in = channels[shard].receive();
+            for (int n = in.getInt(); n > 0; n--) {
+                bodies.add(WorldCheckpoint.readRecord(in, in.position(), null));
+                in.position(in.position() + WorldCheckpoint.BODY_BYTES);
+            }
+        }
+        bodies.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return bodies;
+    }
+
+    // Stops the workers, waiting a little for them to exit before killing them
+    @Override
+    public void close() throws IOException {
+        for (int shard = 0; shard < channels.length; shard++) {
+            if (channels[shard] == null) continue;
+            try {
+                ShardChannel.begin(control).putInt(ShardWorker.STOP);
+                channels[shard].send(control);
+            } catch (IOException e) {
+                // Already gone
+            }
+            channels[shard].close();
+            channels[shard] = null;
+        }
+        for (Process worker : workers) {
+            if (worker == null) continue;
+            try {
+                if (!worker.waitFor(5, TimeUnit.SECONDS)) worker.destroyForcibly();
+            } catch (InterruptedException e) {
+                worker.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Step header, with dt and the record count filled in by step()
+    private void beginStep(int shard) {
+        ShardChannel.begin(pending[shard]).putInt(ShardWorker.STEP).putDouble(0).putInt(0);
+        pendingRecords[shard] = 0;
+    }
+
+    // The java running this process, on the same module or class path
+    private List<String> command(int port, int shard, double ghostWidth, PhysicsWorld world) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        Module module = ShardWorker.class.getModule();
+        if (module.isNamed()) {
+            command.add("-p");
+            command.add(System.getProperty("jdk.module.path"));
+            command.add("-m");
+            command.add(module.getName() + "/" + ShardWorker.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+        }
+        command.add(String.valueOf(port));
+        command.add(String.valueOf(shard));
+        command.add(String.valueOf(layout.columns));
+        command.add(String.valueOf(layout.rows));
+        command.add(String.valueOf(layout.minX));
+        command.add(String.valueOf(layout.minY));
+        command.add(String.valueOf(layout.maxX));
+        command.add(String.valueOf(layout.maxY));
+        command.add(String.valueOf(ghostWidth));
+        command.add(String.valueOf(world.getGravity().x));
+        command.add(String.valueOf(world.getGravity().y));
+        StaticGeometry geometry = world.getStaticGeometry();
+        if (geometry.hasBounds()) {
+            command.add(String.valueOf(geometry.getMinX()));
+            command.add(String.valueOf(geometry.getMinY()));
+            command.add(String.valueOf(geometry.getMaxX()));
+            command.add(String.valueOf(geometry.getMaxY()));
+        }
+        return command;
+    }
+}
@@ -0,0 +1,92 @@
+package sim;
+
+import core.PhysicsWorld;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Owns a PhysicsWorld and steps it on its own thread. Other threads never touch
+// the world directly: they queue commands that run on the simulation thread
+// between steps and read transforms from the latest published WorldSnapshot.
+public class SimulationThread {
+    private final PhysicsWorld world;
+    private final Thread thread;
+    private final Queue<Consumer<PhysicsWorld>> commands = new ConcurrentLinkedQueue<>();
+    private final TripleBuffer<WorldSnapshot> snapshots = new TripleBuffer<>(WorldSnapshot::new);
+
+    private volatile boolean running;
+    private volatile boolean shutdown;
+
+    public SimulationThread(PhysicsWorld world) {
+        this.world = world;
+        this.thread = new Thread(this::loop, "physics-simulation");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(thread);
+    }
+
+    // Resumes or pauses stepping; commands are still processed while paused
+    public void setRunning(boolean running) {
+        this.running = running;
+        LockSupport.unpark(thread);
+    }
+
+    public void setBounds(int width, int height) {
+        submit(world -> world.setBounds(0, 0, width, height));
+    }
+
+    // Runs the command on the simulation thread before the next step
+    public void submit(Consumer<PhysicsWorld> command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    public WorldSnapshot getSnapshot() {
+        return snapshots.read();
+    }
+
+    private void loop() {
+        long last = System.nanoTime();
+        boolean wasStepping = false;
+        publish(false);
+        while (!shutdown) {
+            boolean changed = false;
+            Consumer<PhysicsWorld> command;
+            while ((command = commands.poll()) != null) {
+                command.accept(world);
+                changed = true;
+            }
+
+            long now = System.nanoTime();
+            boolean stepping = running;
+            if (stepping) {
+                // Time spent paused does not count as elapsed
+                if (!wasStepping) last = now;
+                changed |= world.step((now - last) / 1e9) > 0;
+            }
+            changed |= stepping != wasStepping;
+            wasStepping = stepping;
+            last = now;
+            if (changed) publish(stepping);
+
+            // Sleep until the next fixed step is due, or until a command arrives
+            long wait = stepping
+                    ? (long) ((1 - world.getInterpolationAlpha()) * world.getFixedTimeStep() * 1e9)
+                    : Long.MAX_VALUE;
+            LockSupport.parkNanos(Math.max(wait, 100_000L));
+        }
+    }
+
+    private void publish(boolean stepping) {
+        snapshots.getWriteBuffer().capture(world, stepping);
+        snapshots.publish();
+    }
+}
@@ -0,0 +1,42 @@
+package sim;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Lock-free handoff of the latest value from one writer thread to one reader
+// thread. The writer fills its private back buffer and publishes it by
+// swapping it with the shared middle slot; the reader swaps the middle slot
+// with its front buffer when something new was published. Neither side ever
+// waits for the other and a buffer is never written while it is being read.
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int writeIndex = 0; // owned by the writer
+    private int readIndex = 1;  // owned by the reader
+
+    public TripleBuffer(Supplier<T> factory) {
+        buffers = new Object[] { factory.get(), factory.get(), factory.get() };
+    }
+
+    // Writer side: the buffer to fill before the next publish()
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    public void publish() {
+        writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+    }
+
+    // Reader side: the most recently published buffer
+    @SuppressWarnings("unchecked")
+    public T read() {
+        if ((middle.get() & FRESH) != 0) {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return (T) buffers[readIndex];
+    }
+}
@@ -0,0 +1,104 @@
+package sim;
+
+import core.ParticleSystem;
+import core.PhysicsBody;
+import core.PhysicsWorld;
+import core.Shape;
+import core.StaticGeometry;
+import core.WorldStats;
+import java.util.Arrays;
+import java.util.List;
+
+// Copy of the body transforms a renderer needs, taken on the simulation
+// thread. Holds the previous and current transform of every body so the
+// reader can interpolate by its own clock.
+public class WorldSnapshot {
+    public int count;
+    public double[] previousX = new double[0], previousY = new double[0], previousAngle = new double[0];
+    public double[] x = new double[0], y = new double[0], angle = new double[0];
+    public Shape[] shapes = new Shape[0];
+    public boolean[] sleeping = new boolean[0];
+    // Vertices of the static geometry pieces other than the world bounds.
+    // Pieces never change, so the arrays are shared, not copied, and the list
+    // is only rebuilt when pieces were added, i.e. when staticVersion changes.
+    public double[][] staticPieces = new double[0][];
+    public int staticVersion = -1;
+    // Particles where the last step left them, not interpolated. Floats are
+    // plenty for drawing and halve the copy for large counts.
+    public int particleCount;
+    public float[] particleX = new float[0], particleY = new float[0], particleRadius = new float[0];
+    // Copy of the world's stats, when they are enabled
+    public boolean statsEnabled;
+    public final WorldStats stats = new WorldStats();
+
+    private double alpha;
+    private long capturedAt;
+    private double fixedTimeStep;
+    private boolean running;
+
+    public void capture(PhysicsWorld world, boolean running) {
+        List<PhysicsBody> bodies = world.getBodies();
+        int n = bodies.size();
+        if (x.length < n) {
+            int capacity = Math.max(n, x.length * 2);
+            previousX = Arrays.copyOf(previousX, capacity);
+            previousY = Arrays.copyOf(previousY, capacity);
+            previousAngle = Arrays.copyOf(previousAngle, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            angle = Arrays.copyOf(angle, capacity);
+            shapes = Arrays.copyOf(shapes, capacity);
+            sleeping = Arrays.copyOf(sleeping, capacity);
+        }
+        for (int i = 0; i < n; i++) {
+            PhysicsBody b = bodies.get(i);
+            previousX[i] = b.previousPosition.x;
+            previousY[i] = b.previousPosition.y;
+            previousAngle[i] = b.previousAngle;
+            x[i] = b.position.x;
+            y[i] = b.position.y;
+            angle[i] = b.angle;
+            shapes[i] = b.shape;
+            sleeping[i] = b.isSleeping;
+        }
+        // Drop references to shapes of bodies that no longer exist
+        if (count > n) Arrays.fill(shapes, n, count, null);
+        count = n;
+        ParticleSystem particles = world.getParticles();
+        particleCount = particles.getCount();
+        if (particleX.length < particleCount) {
+            int capacity = Math.max(particleCount, particleX.length * 2);
+            particleX = new float[capacity];
+            particleY = new float[capacity];
+            particleRadius = new float[capacity];
+        }
+        for (int i = 0; i < particleCount; i++) {
+            particleX[i] = (float) particles.getX(i);
+            particleY[i] = (float) particles.getY(i);
+            particleRadius[i] = (float) particles.getRadius(i);
+        }
+        statsEnabled = world.isStatsEnabled();
+        if (statsEnabled) stats.copy(world.getStats());
+        StaticGeometry geometry = world.getStaticGeometry();
+        if (geometry.getVersion() != staticVersion) {
+            staticPieces = new double[geometry.getPieceCount()][];
+            int pieces = 0;
+            for (int piece = 0; piece < geometry.getPieceCount(); piece++) {
+                if (!geometry.isBound(piece)) staticPieces[pieces++] = geometry.getVertices(piece);
+            }
+            staticPieces = Arrays.copyOf(staticPieces, pieces);
+            staticVersion = geometry.getVersion();
+        }
+        alpha = world.getInterpolationAlpha();
+        fixedTimeStep = world.getFixedTimeStep();
+        capturedAt = System.nanoTime();
+        this.running = running;
+    }
+
+    // Interpolation factor for a frame drawn at the given System.nanoTime():
+    // the accumulator at capture time plus the time that has passed since
+    public double alphaAt(long nanoTime) {
+        if (!running) return alpha;
+        return Math.min(1.0, alpha + (nanoTime - capturedAt) / 1e9 / fixedTimeStep);
+    }
+}
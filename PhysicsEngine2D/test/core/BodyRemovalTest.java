@@ -0,0 +1,175 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import sim.Scenario;
+
+class BodyRemovalTest {
+    private static final double DT = 1 / 60.0;
+
+    private static void assertIndexed(PhysicsWorld world) {
+        List<PhysicsBody> bodies = world.getBodies();
+        for (int i = 0; i < bodies.size(); i++) assertEquals(i, bodies.get(i).index);
+    }
+
+    // The bodies a query over the whole world finds, each exactly once
+    private static Set<PhysicsBody> everything(PhysicsWorld world) {
+        List<PhysicsBody> found = new ArrayList<>();
+        world.queryAABB(-1e6, -1e6, 1e6, 1e6, found::add);
+        Set<PhysicsBody> set = new HashSet<>(found);
+        assertEquals(found.size(), set.size(), "a body was found twice");
+        return set;
+    }
+
+    @Test
+    void removalMovesTheLastBodyIntoTheGap() {
+        PhysicsWorld world = Scenario.rain(50, Scenario.ShapeMix.MIXED, 1).createWorld();
+        PhysicsBody removed = world.getBodies().get(3);
+        PhysicsBody last = world.getBodies().get(49);
+        world.removeBody(removed);
+
+        assertEquals(49, world.getBodies().size());
+        assertSame(last, world.getBodies().get(3));
+        assertEquals(-1, removed.index);
+        assertIndexed(world);
+
+        // The last body itself just goes
+        PhysicsBody end = world.getBodies().get(48);
+        world.removeBody(end);
+        assertEquals(48, world.getBodies().size());
+        assertFalse(world.getBodies().contains(end));
+        assertIndexed(world);
+
+        assertThrows(IllegalArgumentException.class, () -> world.removeBody(removed));
+        assertThrows(IllegalArgumentException.class,
+                () -> world.removeBody(new PhysicsBody(new Vector2D(0, 0), CircleShape.of(5), 1, false)));
+    }
+
+    @Test
+    void churnKeepsTheBroadPhaseAndQueriesInStep() {
+        for (BroadPhase broadPhase : new BroadPhase[] { new DynamicAabbTreeBroadPhase(), new SweepAndPruneBroadPhase() }) {
+            PhysicsWorld world = new PhysicsWorld(broadPhase);
+            Scenario scenario = Scenario.rain(300, Scenario.ShapeMix.MIXED, 2);
+            scenario.populate(world);
+            BodyPool pool = new BodyPool();
+            Random random = new Random(4);
+            Set<PhysicsBody> gone = new HashSet<>();
+            for (int step = 0; step < 200; step++) {
+                for (int k = 0; k < 5; k++) {
+                    PhysicsBody b = world.getBodies().get(random.nextInt(world.getBodies().size()));
+                    world.removeBody(b);
+                    pool.release(b);
+                    gone.add(b);
+                }
+                // Removal and adding between queries as well as between steps
+                if (step % 2 == 0) everything(world);
+                for (int k = 0; k < 5; k++) {
+                    PhysicsBody b = pool.acquire(20 + random.nextDouble() * (scenario.width - 40),
+                            20 + random.nextDouble() * (scenario.height - 40), CircleShape.of(8), 3, false);
+                    gone.remove(b);
+                    world.addBody(b);
+                }
+                world.update(DT);
+                assertIndexed(world);
+            }
+            assertEquals(300, world.getBodies().size());
+            assertEquals(new HashSet<>(world.getBodies()), everything(world));
+            for (PhysicsBody b : gone) {
+                assertEquals(-1, b.index);
+                assertEquals(-1, b.proxy);
+            }
+        }
+    }
+
+    @Test
+    void removingASleepingBodyWakesWhatRestsOnIt() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.addBody(new PhysicsBody(new Vector2D(400, 590), new RectangleShape(600, 20), 0, true));
+        for (int i = 0; i < 4; i++) {
+            world.addBody(new PhysicsBody(new Vector2D(400, 560 - 40 * i), RectangleShape.of(40, 40), 1, false));
+        }
+        for (int i = 0; i < 300; i++) world.update(DT);
+        for (int i = 1; i <= 4; i++) assertTrue(world.getBodies().get(i).isSleeping);
+
+        PhysicsBody bottom = world.getBodies().get(1);
+        PhysicsBody top = world.getBodies().get(4);
+        double y = top.position.y;
+        world.removeBody(bottom);
+        for (PhysicsBody b : world.getBodies()) {
+            if (!b.isStatic) assertFalse(b.isSleeping);
+        }
+        for (int i = 0; i < 300; i++) world.update(DT);
+        assertEquals(y + 40, top.position.y, 2, "the stack did not drop into the gap");
+    }
+
+    @Test
+    void pooledBodiesComeBackAsNew() {
+        PhysicsWorld world = new PhysicsWorld(new DynamicAabbTreeBroadPhase());
+        world.setBounds(0, 0, 800, 600);
+        BodyPool pool = new BodyPool();
+        PhysicsBody used = pool.acquire(100, 100, RectangleShape.of(30, 20), 4, false);
+        world.addBody(used);
+        used.velocity.set(300, -40);
+        used.angularVelocity = 7;
+        used.applyForce(5, 5);
+        used.applyTorque(9);
+        used.isBullet = true;
+        used.restitution = 0.1;
+        used.friction = 0.9;
+        used.linearDamping = 1;
+        for (int i = 0; i < 30; i++) world.update(DT);
+        world.removeBody(used);
+        pool.release(used);
+        assertEquals(1, pool.size());
+
+        PhysicsBody body = pool.acquire(250, 350, CircleShape.of(12), 2, false);
+        assertSame(used, body);
+        assertEquals(0, pool.size());
+        PhysicsBody fresh = new PhysicsBody(new Vector2D(250, 350), CircleShape.of(12), 2, false);
+        assertEquals(fresh.position.x, body.position.x);
+        assertEquals(fresh.position.y, body.position.y);
+        assertEquals(fresh.previousPosition.x, body.previousPosition.x);
+        assertEquals(fresh.previousPosition.y, body.previousPosition.y);
+        assertEquals(0, body.velocity.x);
+        assertEquals(0, body.velocity.y);
+        assertEquals(0, body.force.x);
+        assertEquals(0, body.force.y);
+        assertSame(fresh.shape, body.shape);
+        assertEquals(fresh.mass, body.mass);
+        assertEquals(fresh.momentOfInertia, body.momentOfInertia);
+        assertEquals(fresh.isStatic, body.isStatic);
+        assertEquals(fresh.restitution, body.restitution);
+        assertEquals(fresh.friction, body.friction);
+        assertEquals(fresh.angle, body.angle);
+        assertEquals(fresh.previousAngle, body.previousAngle);
+        assertEquals(fresh.angularVelocity, body.angularVelocity);
+        assertEquals(fresh.torque, body.torque);
+        assertEquals(fresh.linearDamping, body.linearDamping);
+        assertEquals(fresh.angularDamping, body.angularDamping);
+        assertEquals(fresh.isSleeping, body.isSleeping);
+        assertEquals(fresh.isBullet, body.isBullet);
+        assertEquals(fresh.sleepTime, body.sleepTime);
+        assertNull(body.nextInIsland);
+        assertEquals(-1, body.index);
+        assertEquals(-1, body.id);
+        assertEquals(-1, body.proxy);
+        // Nothing cached from where the body was before
+        assertArrayEquals(new double[] { fresh.getMinX(), fresh.getMinY(), fresh.getMaxX(), fresh.getMaxY() },
+                new double[] { body.getMinX(), body.getMinY(), body.getMaxX(), body.getMaxY() });
+
+        world.addBody(body);
+        assertThrows(IllegalArgumentException.class, () -> pool.release(body));
+    }
+}
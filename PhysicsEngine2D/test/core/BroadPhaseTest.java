@@ -0,0 +1,105 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class BroadPhaseTest {
+    // A random scene of small and a few large bodies of every shape, some
+    // static and some asleep, packed tightly enough for plenty of overlaps
+    private static PhysicsWorld scene(long seed) {
+        PhysicsWorld world = new PhysicsWorld();
+        Random random = new Random(seed);
+        for (int i = 0; i < 600; i++) {
+            double size = i % 40 == 0 ? 60 + random.nextDouble() * 60 : 4 + random.nextDouble() * 16;
+            Shape shape;
+            switch (i % 3) {
+                case 0: shape = new CircleShape(size / 2); break;
+                case 1: shape = new RectangleShape(size, size * (0.3 + random.nextDouble())); break;
+                default: shape = TriangleShape.of((int) size); break;
+            }
+            PhysicsBody b = new PhysicsBody(new Vector2D(random.nextDouble() * 600, random.nextDouble() * 600), shape, 1, i % 7 == 0);
+            b.angle = random.nextDouble() * 2 * Math.PI;
+            b.isSleeping = !b.isStatic && i % 5 == 0;
+            world.addBody(b);
+        }
+        return world;
+    }
+
+    private static long key(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    // Every pair whose bounds overlap and that has an active body, by O(n^2)
+    private static Set<Long> allPairs(List<PhysicsBody> bodies) {
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 0; i < bodies.size(); i++) {
+            for (int j = i + 1; j < bodies.size(); j++) {
+                if (overlap(bodies.get(i), bodies.get(j)) && !(BroadPhase.isInactive(bodies.get(i)) && BroadPhase.isInactive(bodies.get(j)))) {
+                    pairs.add(key(i, j));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static boolean overlap(PhysicsBody a, PhysicsBody b) {
+        return a.getMinX() <= b.getMaxX() && b.getMinX() <= a.getMaxX() && a.getMinY() <= b.getMaxY() && b.getMinY() <= a.getMaxY();
+    }
+
+    // The pairs broadPhase reports, checking each is reported once and has an
+    // active body
+    private static Set<Long> collect(BroadPhase broadPhase, List<PhysicsBody> bodies) {
+        PairList list = new PairList();
+        broadPhase.collectPairs(bodies, list);
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 0; i < list.size(); i++) {
+            int a = list.getA(i), b = list.getB(i);
+            assertTrue(a != b);
+            assertFalse(BroadPhase.isInactive(bodies.get(a)) && BroadPhase.isInactive(bodies.get(b)), "inactive pair " + a + ", " + b);
+            assertTrue(pairs.add(key(a, b)), "pair " + a + ", " + b + " reported twice");
+        }
+        return pairs;
+    }
+
+    @Test
+    void everyBroadPhaseFindsTheOverlappingPairs() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<PhysicsBody> bodies = scene(seed).getBodies();
+            Set<Long> expected = allPairs(bodies);
+            assertTrue(expected.size() > 100);
+
+            Set<Long> all = collect(new BruteForceBroadPhase(), bodies);
+            assertTrue(all.containsAll(expected));
+            assertEquals(expected, collect(new SweepAndPruneBroadPhase(), bodies));
+            assertEquals(expected, collect(new UniformGridBroadPhase(), bodies));
+            assertEquals(expected, collect(new UniformGridBroadPhase(15), bodies));
+            // The tree pairs fattened bounds, so it may report a few more
+            Set<Long> tree = collect(new DynamicAabbTreeBroadPhase(), bodies);
+            assertTrue(tree.containsAll(expected));
+        }
+    }
+
+    @Test
+    void pairsFollowTheBodiesFromStepToStep() {
+        PhysicsWorld world = scene(4);
+        BroadPhase[] broadPhases = { new SweepAndPruneBroadPhase(), new UniformGridBroadPhase(), new DynamicAabbTreeBroadPhase() };
+        Random random = new Random(8);
+        for (int step = 0; step < 20; step++) {
+            for (PhysicsBody b : world.getBodies()) {
+                if (!BroadPhase.isInactive(b)) b.position.addLocal(random.nextDouble() * 10 - 5, random.nextDouble() * 10 - 5);
+            }
+            Set<Long> expected = allPairs(world.getBodies());
+            for (BroadPhase broadPhase : broadPhases) {
+                Set<Long> pairs = collect(broadPhase, world.getBodies());
+                assertTrue(pairs.containsAll(expected), broadPhase.getClass().getSimpleName() + " step " + step);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BulletTest {
+    private static final double DT = 1 / 60.0;
+    // A hundred pixels a step, twenty five times the width of what is hit
+    private static final double SPEED = 6000;
+
+    // The furthest right a small body fired at x = 200 from the left gets
+    private static double shoot(PhysicsWorld world, boolean bullet) {
+        world.setGravity(0, 0);
+        PhysicsBody b = new PhysicsBody(new Vector2D(130, 300), CircleShape.of(2), 1, false);
+        b.velocity.set(SPEED, 0);
+        b.isBullet = bullet;
+        world.addBody(b);
+        double furthest = b.position.x;
+        for (int i = 0; i < 10; i++) {
+            world.update(DT);
+            furthest = Math.max(furthest, b.position.x);
+        }
+        return furthest;
+    }
+
+    private static PhysicsWorld segmentWorld() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.getStaticGeometry().addSegment(200, 200, 200, 400);
+        return world;
+    }
+
+    private static PhysicsWorld plankWorld(boolean isStatic) {
+        PhysicsWorld world = new PhysicsWorld();
+        world.addBody(new PhysicsBody(new Vector2D(200, 300), new RectangleShape(4, 200), isStatic ? 0 : 50, isStatic));
+        return world;
+    }
+
+    @Test
+    void bulletStaysOnTheNearSideOfAThinSegment() {
+        assertTrue(shoot(segmentWorld(), true) < 200);
+        // Static pieces are looked ahead at by every body, so this one stops
+        // even a body that is not a bullet
+        assertTrue(shoot(segmentWorld(), false) < 200);
+    }
+
+    @Test
+    void bulletStaysOnTheNearSideOfAThinBody() {
+        for (boolean isStatic : new boolean[] { true, false }) {
+            PhysicsWorld world = plankWorld(isStatic);
+            PhysicsBody plank = world.getBodies().get(0);
+            assertTrue(shoot(world, true) < 200, isStatic ? "static plank" : "plank");
+            if (!isStatic) assertTrue(plank.velocity.x > 0, "the plank was not pushed");
+
+            // Without the flag it is through in one step
+            assertTrue(shoot(plankWorld(isStatic), false) > 200, isStatic ? "static plank" : "plank");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class CollisionTest {
+    private static final double EPSILON = 1e-9;
+
+    private static PhysicsBody box(double x, double y) {
+        return new PhysicsBody(new Vector2D(x, y), RectangleShape.of(40, 40), 1, false);
+    }
+
+    private static PhysicsBody triangle(double x, double y, double angle) {
+        PhysicsBody b = new PhysicsBody(new Vector2D(x, y), TriangleShape.of(40), 1, false);
+        b.angle = angle;
+        return b;
+    }
+
+    private static void assertNormal(double nx, double ny, ContactManifold m) {
+        assertEquals(nx, m.normalX, EPSILON);
+        assertEquals(ny, m.normalY, EPSILON);
+    }
+
+    @Test
+    void boxOnBox() {
+        // The top box sinks 2 into the one below it, offset by half its width
+        PhysicsBody below = box(100, 100), above = box(120, 62);
+        ContactManifold m = new ContactManifold();
+        assertTrue(Collision.collide(below, above, m));
+        assertNormal(0, -1, m);
+        assertEquals(2, m.pointCount);
+        assertEquals(2, m.depth[0], EPSILON);
+        assertEquals(2, m.depth[1], EPSILON);
+        assertEquals(100, Math.min(m.pointX[0], m.pointX[1]), EPSILON);
+        assertEquals(120, Math.max(m.pointX[0], m.pointX[1]), EPSILON);
+        assertTrue(m.featureId[0] != m.featureId[1]);
+
+        // The other way round the normal flips
+        assertTrue(Collision.collide(above, below, m));
+        assertNormal(0, 1, m);
+        assertEquals(2, m.pointCount);
+
+        above.position.y = 59;
+        assertFalse(Collision.collide(below, above, m));
+    }
+
+    @Test
+    void triangleOnBox() {
+        ContactManifold m = new ContactManifold();
+        PhysicsBody below = box(100, 100);
+
+        // Resting on its base: a point at each end of it
+        PhysicsBody base = triangle(100, 63, 0);
+        assertTrue(Collision.collide(below, base, m));
+        assertNormal(0, -1, m);
+        assertEquals(2, m.pointCount);
+        assertEquals(3, m.depth[0], EPSILON);
+        assertEquals(3, m.depth[1], EPSILON);
+
+        // Standing on its apex: one point
+        PhysicsBody apex = triangle(100, 61, Math.PI);
+        assertTrue(Collision.collide(apex, below, m));
+        assertNormal(0, 1, m);
+        assertEquals(1, m.pointCount);
+        assertEquals(1, m.depth[0], EPSILON);
+        assertEquals(100, m.pointX[0], EPSILON);
+    }
+
+    @Test
+    void featuresOfLargePolygonsAreTellApart() {
+        // A circle against each face and each vertex of a 40 sided piece
+        int sides = 40;
+        double radius = 200;
+        Vector2D[] points = new Vector2D[sides];
+        for (int i = 0; i < sides; i++) {
+            double a = 2 * Math.PI * i / sides;
+            points[i] = new Vector2D(radius * Math.cos(a), radius * Math.sin(a));
+        }
+        StaticGeometry geometry = new PhysicsWorld().getStaticGeometry();
+        int piece = geometry.addPolygon(points);
+        double[] v = geometry.getVertices(piece);
+
+        Set<Integer> ids = new HashSet<>();
+        ContactManifold m = new ContactManifold();
+        for (int i = 0; i < sides; i++) {
+            int next = (i + 1) % sides;
+            double fx = (v[2 * i] + v[2 * next]) / 2, fy = (v[2 * i + 1] + v[2 * next + 1]) / 2;
+            double f = Math.hypot(fx, fy);
+            PhysicsBody onFace = new PhysicsBody(new Vector2D(fx / f * (f + 4), fy / f * (f + 4)), CircleShape.of(5), 1, false);
+            assertTrue(Collision.collide(onFace, geometry, piece, m, 0));
+            ids.add(m.featureId[0]);
+
+            double vx = v[2 * i], vy = v[2 * i + 1];
+            PhysicsBody onVertex = new PhysicsBody(new Vector2D(vx / radius * (radius + 4), vy / radius * (radius + 4)),
+                    CircleShape.of(5), 1, false);
+            assertTrue(Collision.collide(onVertex, geometry, piece, m, 0));
+            ids.add(m.featureId[0]);
+        }
+        assertEquals(2 * sides, ids.size());
+
+        // And a box across each face, the polygon against polygon ids
+        ids.clear();
+        for (int i = 0; i < sides; i++) {
+            int next = (i + 1) % sides;
+            double fx = (v[2 * i] + v[2 * next]) / 2, fy = (v[2 * i + 1] + v[2 * next + 1]) / 2;
+            double f = Math.hypot(fx, fy);
+            PhysicsBody b = new PhysicsBody(new Vector2D(fx / f * (f + 3), fy / f * (f + 3)), RectangleShape.of(8, 8), 1, false);
+            b.angle = Math.atan2(fy, fx);
+            assertTrue(Collision.collide(b, geometry, piece, m, 0));
+            for (int p = 0; p < m.pointCount; p++) assertTrue(ids.add(m.featureId[p]), "face " + i);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ContactSolverTest {
+    private static final double DT = 1 / 60.0;
+
+    // A static ground with boxes stacked on it, each resting on the last
+    private static PhysicsWorld stack(int boxes) {
+        PhysicsWorld world = new PhysicsWorld();
+        world.addBody(new PhysicsBody(new Vector2D(400, 590), new RectangleShape(600, 20), 0, true));
+        for (int i = 0; i < boxes; i++) {
+            world.addBody(new PhysicsBody(new Vector2D(400, 560 - 40 * i), RectangleShape.of(40, 40), 1, false));
+        }
+        return world;
+    }
+
+    @Test
+    void tallStackStandsAndSleeps() {
+        PhysicsWorld world = stack(15);
+        for (int i = 0; i < 600; i++) world.update(DT);
+
+        // Each contact sinks by up to the solver's slop, no more
+        double below = 580;
+        for (int i = 1; i <= 15; i++) {
+            PhysicsBody box = world.getBodies().get(i);
+            assertEquals(400, box.position.x, 1, "box " + i + " slid off the stack");
+            assertEquals(0, box.angle, 0.01, "box " + i + " tipped over");
+            assertEquals(below - 20, box.position.y, 1, "box " + i + " is not resting on the one below");
+            assertTrue(box.isSleeping, "box " + i + " is still awake");
+            below = box.position.y - 20;
+        }
+    }
+
+    @Test
+    void warmStartingSettlesFasterThanStartingCold() {
+        assertTrue(stepsToSleep(true) < stepsToSleep(false));
+    }
+
+    private static int stepsToSleep(boolean warmStarting) {
+        PhysicsWorld world = stack(10);
+        world.getSolver().setWarmStarting(warmStarting);
+        for (int step = 1; step <= 3000; step++) {
+            world.update(DT);
+            if (world.getBodies().get(10).isSleeping) return step;
+        }
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,165 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class ForceFieldTest {
+    private static final double G = 100;
+
+    // n bodies over a disc, the first static, with a clump of bodies on one
+    // spot so the tree has leaves it cannot split
+    private static PhysicsWorld disc(int n, long seed) {
+        PhysicsWorld world = new PhysicsWorld();
+        Random random = new Random(seed);
+        for (int i = 0; i < n; i++) {
+            double a = random.nextDouble() * 2 * Math.PI, d = Math.sqrt(random.nextDouble()) * 1000;
+            if (i % 50 == 0) d = a = 0;
+            world.addBody(new PhysicsBody(new Vector2D(Math.cos(a) * d, Math.sin(a) * d), CircleShape.of(2),
+                    1 + random.nextDouble() * 4, i == 0));
+        }
+        return world;
+    }
+
+    // The force on every body after one application of attraction, as x, y pairs
+    private static double[] forces(PhysicsWorld world, MutualAttraction attraction, ForkJoinPool executor) {
+        List<PhysicsBody> bodies = world.getBodies();
+        for (PhysicsBody b : bodies) b.force.setZero();
+        attraction.apply(bodies, 1 / 60.0, executor);
+        double[] f = new double[2 * bodies.size()];
+        for (int i = 0; i < bodies.size(); i++) {
+            f[2 * i] = bodies.get(i).force.x;
+            f[2 * i + 1] = bodies.get(i).force.y;
+        }
+        return f;
+    }
+
+    private static double[] directSum(PhysicsWorld world, double softening) {
+        List<PhysicsBody> bodies = world.getBodies();
+        double[] f = new double[2 * bodies.size()];
+        for (int i = 0; i < bodies.size(); i++) {
+            PhysicsBody b = bodies.get(i);
+            if (b.isStatic) continue;
+            for (int j = 0; j < bodies.size(); j++) {
+                if (j == i) continue;
+                PhysicsBody o = bodies.get(j);
+                double dx = o.position.x - b.position.x, dy = o.position.y - b.position.y;
+                double d2 = dx * dx + dy * dy + softening * softening;
+                double scale = G * b.mass * o.mass / (d2 * Math.sqrt(d2));
+                f[2 * i] += dx * scale;
+                f[2 * i + 1] += dy * scale;
+            }
+        }
+        return f;
+    }
+
+    // Largest error of any body's force, relative to its size, and the error
+    // of all bodies relative to the size of all forces
+    private static double[] errors(double[] f, double[] exact) {
+        double max = 0, error = 0, norm = 0;
+        for (int i = 0; i < f.length; i += 2) {
+            double size = Math.hypot(exact[i], exact[i + 1]);
+            if (size == 0) continue;
+            double e = Math.hypot(f[i] - exact[i], f[i + 1] - exact[i + 1]);
+            max = Math.max(max, e / size);
+            error += e;
+            norm += size;
+        }
+        return new double[] { max, error / norm };
+    }
+
+    @Test
+    void thetaZeroMatchesTheDirectSum() {
+        PhysicsWorld world = disc(2000, 1);
+        MutualAttraction attraction = new MutualAttraction(G);
+        attraction.setTheta(0);
+        double[] f = forces(world, attraction, null);
+        assertTrue(errors(f, directSum(world, attraction.getSoftening()))[0] < 1e-9);
+        assertEquals(0, f[0]);
+        assertEquals(0, f[1]);
+    }
+
+    @Test
+    void defaultThetaIsWithinHalfAPercent() {
+        PhysicsWorld world = disc(5000, 2);
+        MutualAttraction attraction = new MutualAttraction(G);
+        double[] error = errors(forces(world, attraction, null), directSum(world, attraction.getSoftening()));
+        assertTrue(error[1] < 0.005, "mean error " + error[1]);
+    }
+
+    @Test
+    void sameForcesOnAnyNumberOfThreads() {
+        // Enough bodies for the tree to be built as several tasks
+        PhysicsWorld world = disc(20000, 3);
+        MutualAttraction attraction = new MutualAttraction(G);
+        double[] serial = forces(world, attraction, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(serial, forces(world, attraction, pool));
+            assertArrayEquals(serial, forces(world, new MutualAttraction(G), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void circularOrbitHoldsItsRadius() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setGravity(0, 0);
+        double sunMass = 1e5, g = 10, r = 300;
+        PhysicsBody sun = new PhysicsBody(new Vector2D(0, 0), CircleShape.of(20), sunMass, true);
+        PhysicsBody planet = new PhysicsBody(new Vector2D(r, 0), CircleShape.of(3), 1, false);
+        planet.linearDamping = 1;
+        planet.angularDamping = 1;
+        planet.velocity.set(0, Math.sqrt(g * sunMass / r));
+        world.addBody(sun);
+        world.addBody(planet);
+        world.addForceField(new MutualAttraction(g));
+
+        double angle = 0, lastAngle = 0;
+        for (int i = 0; i < 6000; i++) {
+            world.update(1 / 120.0);
+            double d = Math.hypot(planet.position.x, planet.position.y);
+            assertEquals(r, d, r * 0.001, "step " + i);
+            double a = Math.atan2(planet.position.y, planet.position.x);
+            angle += Math.IEEEremainder(a - lastAngle, 2 * Math.PI);
+            lastAngle = a;
+        }
+        assertFalse(planet.isSleeping);
+        // Fifty seconds at sqrt(G M / r^3) radians a second
+        assertEquals(50 * Math.sqrt(g * sunMass / (r * r * r)), angle, 0.05);
+    }
+
+    @Test
+    void explosionWakesSleepingBodiesAndIsDropped() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setBounds(0, 0, 800, 600);
+        for (int i = 0; i < 20; i++) world.addBody(new PhysicsBody(new Vector2D(100 + i * 30, 580), CircleShape.of(10), 1, false));
+        for (int i = 0; i < 600; i++) world.update(1 / 60.0);
+        for (PhysicsBody b : world.getBodies()) assertTrue(b.isSleeping);
+
+        world.addForceField(RadialForceField.explosion(400, 600, 200, 20000, 0.1));
+        world.update(1 / 60.0);
+        for (PhysicsBody b : world.getBodies()) {
+            double d = Math.hypot(b.position.x - 400, b.position.y - 600);
+            assertEquals(d > 200, b.isSleeping, "body at " + b.position.x);
+        }
+        for (int i = 0; i < 10; i++) world.update(1 / 60.0);
+        assertTrue(world.getForceFields().isEmpty());
+        for (PhysicsBody b : world.getBodies()) {
+            if (Math.abs(b.position.x - 400) < 100) assertTrue(b.position.y < 560, "body at " + b.position.x + " was not thrown up");
+        }
+    }
+
+    @Test
+    void negativeThetaIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MutualAttraction(G).setTheta(-0.1));
+    }
+}
@@ -0,0 +1,76 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class IslandSleepTest {
+    private static final double DT = 1 / 60.0;
+
+    private static List<PhysicsBody> stack(PhysicsWorld world, double x, double bottom, int boxes) {
+        List<PhysicsBody> stack = new ArrayList<>();
+        for (int i = 0; i < boxes; i++) {
+            PhysicsBody box = new PhysicsBody(new Vector2D(x, bottom - 20 - 40 * i), RectangleShape.of(40, 40), 1, false);
+            world.addBody(box);
+            stack.add(box);
+        }
+        return stack;
+    }
+
+    private static boolean allAsleep(List<PhysicsBody> bodies) {
+        for (PhysicsBody b : bodies) if (!b.isSleeping) return false;
+        return true;
+    }
+
+    private static boolean noneAsleep(List<PhysicsBody> bodies) {
+        for (PhysicsBody b : bodies) if (b.isSleeping) return false;
+        return true;
+    }
+
+    @Test
+    void settledPileSleepsWhileAnotherMoves() {
+        PhysicsWorld world = new PhysicsWorld();
+        // One ground under both piles: static bodies do not join islands
+        world.addBody(new PhysicsBody(new Vector2D(400, 590), new RectangleShape(800, 20), 0, true));
+        List<PhysicsBody> left = stack(world, 150, 580, 3);
+        List<PhysicsBody> right = stack(world, 450, 580, 2);
+        // The right pile is dragged along the ground by its bottom box
+        for (int i = 0; i < 300; i++) {
+            right.get(0).velocity.x = 20;
+            world.update(DT);
+            if (i >= 120) {
+                assertTrue(allAsleep(left), "step " + i);
+                assertTrue(noneAsleep(right), "step " + i);
+            }
+        }
+        for (int i = 0; i < 300; i++) world.update(DT);
+        assertTrue(allAsleep(right));
+        assertTrue(allAsleep(left));
+    }
+
+    @Test
+    void wakingOneBodyWakesItsIsland() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.addBody(new PhysicsBody(new Vector2D(400, 590), new RectangleShape(800, 20), 0, true));
+        List<PhysicsBody> left = stack(world, 200, 580, 4);
+        List<PhysicsBody> right = stack(world, 600, 580, 2);
+        for (int i = 0; i < 300; i++) world.update(DT);
+        assertTrue(allAsleep(left));
+        assertTrue(allAsleep(right));
+
+        left.get(2).wakeUp();
+        assertTrue(noneAsleep(left));
+        assertTrue(allAsleep(right));
+
+        // A body pushed into a sleeping pile wakes that pile when they touch
+        PhysicsBody ball = new PhysicsBody(new Vector2D(500, 540), CircleShape.of(15), 1, false);
+        ball.velocity.set(400, 0);
+        world.addBody(ball);
+        for (int i = 0; i < 30 && right.get(0).isSleeping; i++) world.update(DT);
+        assertFalse(right.get(0).isSleeping);
+        assertTrue(noneAsleep(right));
+    }
+}
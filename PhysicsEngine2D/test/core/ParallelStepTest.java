@@ -0,0 +1,46 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import sim.Scenario;
+
+class ParallelStepTest {
+    private static final int STEPS = 120;
+
+    // The state hash after every step of scenario, stepped on executor
+    private static long[] hashes(Scenario scenario, ForkJoinPool executor) {
+        PhysicsWorld world = scenario.createWorld();
+        world.setExecutor(executor);
+        long[] h = new long[STEPS];
+        for (int i = 0; i < STEPS; i++) {
+            world.update(1 / 60.0);
+            h[i] = world.stateHash();
+        }
+        return h;
+    }
+
+    private static void assertSameOnAnyThreads(Scenario scenario) {
+        long[] serial = hashes(scenario, null);
+        for (int threads : new int[] { 1, 4 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                assertArrayEquals(serial, hashes(scenario, pool), threads + " threads");
+                assertArrayEquals(serial, hashes(scenario, pool), threads + " threads, again");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void rainStepsTheSameOnAnyNumberOfThreads() {
+        assertSameOnAnyThreads(Scenario.rain(3000, Scenario.ShapeMix.MIXED, 21));
+    }
+
+    @Test
+    void pileStepsTheSameOnAnyNumberOfThreads() {
+        assertSameOnAnyThreads(Scenario.pile(2000, Scenario.ShapeMix.MIXED, 22));
+    }
+}
@@ -0,0 +1,67 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class ParticleSystemTest {
+    private static final double DT = 1 / 60.0;
+
+    @Test
+    void emitterAtTheCapOwesNothing() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setBounds(0, 0, 800, 600);
+        ParticleSystem particles = world.getParticles();
+        particles.setMaxParticles(10);
+        ParticleEmitter emitter = new ParticleEmitter(400, 100, 3, 60, 100);
+        particles.addEmitter(emitter);
+        for (int i = 0; i < 10; i++) world.update(DT);
+        assertEquals(10, particles.getCount());
+        for (int i = 0; i < 20; i++) {
+            world.update(DT);
+            assertEquals(10, particles.getCount());
+            assertTrue(emitter.pending >= 0 && emitter.pending < 1, "owes " + emitter.pending);
+        }
+        assertFalse(particles.spawn(400, 300, 0, 0, 3, 100));
+
+        // Once there is room again it emits at its rate straight away
+        particles.setMaxParticles(20);
+        world.update(DT);
+        assertEquals(11, particles.getCount());
+        for (int i = 0; i < 9; i++) world.update(DT);
+        assertEquals(20, particles.getCount());
+    }
+
+    @Test
+    void sameResultOnAnyNumberOfThreads() {
+        double[] serial = run(null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(serial, run(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Positions of a pile of particles poured onto a box, after two seconds
+    private static double[] run(ForkJoinPool executor) {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setExecutor(executor);
+        world.setBounds(0, 0, 400, 600);
+        world.addBody(new PhysicsBody(new Vector2D(200, 450), new RectangleShape(120, 40), 0, true));
+        ParticleSystem particles = world.getParticles();
+        particles.setSeed(12);
+        for (int i = 0; i < 4; i++) particles.addEmitter(new ParticleEmitter(80 + 80 * i, 50, 2, 600, 100));
+        for (int i = 0; i < 120; i++) world.update(DT);
+        double[] at = new double[2 * particles.getCount()];
+        for (int i = 0; i < particles.getCount(); i++) {
+            at[2 * i] = particles.getX(i);
+            at[2 * i + 1] = particles.getY(i);
+        }
+        return at;
+    }
+}
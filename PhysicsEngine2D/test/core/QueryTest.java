@@ -0,0 +1,152 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import sim.Scenario;
+
+class QueryTest {
+    private PhysicsWorld world;
+    private PhysicsBody circle, box, post;
+
+    // A circle, a box and a static circle in a row across a bounded world
+    private void row(BroadPhase broadPhase) {
+        world = new PhysicsWorld(broadPhase);
+        world.setBounds(0, 0, 800, 600);
+        circle = new PhysicsBody(new Vector2D(100, 300), new CircleShape(20), 1, false);
+        box = new PhysicsBody(new Vector2D(300, 300), new RectangleShape(40, 40), 1, false);
+        post = new PhysicsBody(new Vector2D(500, 300), new CircleShape(20), 0, true);
+        world.addBody(circle);
+        world.addBody(box);
+        world.addBody(post);
+    }
+
+    private Set<PhysicsBody> found;
+    private final QueryCallback collect = body -> found.add(body);
+
+    @Test
+    void raycastClosestStopsAtTheFirstShape() {
+        for (BroadPhase broadPhase : new BroadPhase[] { new SweepAndPruneBroadPhase(), new DynamicAabbTreeBroadPhase() }) {
+            row(broadPhase);
+            RaycastHit hit = new RaycastHit();
+            assertTrue(world.raycastClosest(50, 300, 700, 300, hit));
+            assertSame(circle, hit.body);
+            assertEquals(80, hit.x, 1e-9);
+            assertEquals(300, hit.y, 1e-9);
+            assertEquals(-1, hit.normalX, 1e-9);
+            assertEquals(0, hit.normalY, 1e-9);
+            assertEquals(30 / 650.0, hit.fraction, 1e-12);
+
+            // Past the circle the box is next, hit on its left face
+            assertTrue(world.raycastClosest(150, 300, 700, 300, hit));
+            assertSame(box, hit.body);
+            assertEquals(280, hit.x, 1e-9);
+        }
+    }
+
+    @Test
+    void raycastReportsEveryHitAndTheBounds() {
+        row(new SweepAndPruneBroadPhase());
+        Set<PhysicsBody> bodies = new HashSet<>();
+        int[] walls = new int[1];
+        world.raycast(50, 300, 850, 300, hit -> {
+            if (hit.body != null) bodies.add(hit.body); else walls[0]++;
+            return 1;
+        });
+        assertEquals(Set.of(circle, box, post), bodies);
+        assertEquals(1, walls[0]);
+
+        // Straight down past everything: the floor of the bounds
+        RaycastHit hit = new RaycastHit();
+        assertTrue(world.raycastClosest(400, 100, 400, 700, hit));
+        assertNull(hit.body);
+        assertTrue(hit.piece >= 0);
+        assertEquals(600, hit.y, 1e-9);
+        assertEquals(500 / 600.0, hit.fraction, 1e-12);
+
+        // Starting inside the circle does not hit it
+        assertFalse(world.raycastClosest(100, 300, 100, 250, hit));
+    }
+
+    @Test
+    void pointQueryTestsTheShapeNotItsBox() {
+        row(new DynamicAabbTreeBroadPhase());
+        found = new HashSet<>();
+        world.queryPoint(319, 281, collect);
+        assertEquals(Set.of(box), found);
+
+        // Inside the circle's bounding box but outside the circle
+        found.clear();
+        world.queryPoint(117, 317, collect);
+        assertTrue(found.isEmpty());
+
+        found.clear();
+        world.queryAABB(110, 250, 290, 350, collect);
+        assertEquals(Set.of(circle, box), found);
+    }
+
+    @Test
+    void circleQueryMatchesBruteForce() {
+        for (BroadPhase broadPhase : new BroadPhase[] { new SweepAndPruneBroadPhase(), new DynamicAabbTreeBroadPhase() }) {
+            Scenario scenario = Scenario.rain(500, Scenario.ShapeMix.MIXED, 3);
+            world = new PhysicsWorld(broadPhase);
+            scenario.populate(world);
+            for (int i = 0; i < 30; i++) world.update(1 / 60.0);
+
+            Random random = new Random(5);
+            found = new HashSet<>();
+            for (int q = 0; q < 200; q++) {
+                double x = random.nextDouble() * scenario.width, y = random.nextDouble() * scenario.height;
+                double r = 5 + random.nextDouble() * 60;
+                PhysicsBody probe = new PhysicsBody(new Vector2D(x, y), new CircleShape(r), 1, false);
+                Set<PhysicsBody> expected = new HashSet<>();
+                for (PhysicsBody b : world.getBodies()) {
+                    if (Collision.separation(b, probe) < 0) expected.add(b);
+                }
+                found.clear();
+                world.queryCircle(x, y, r, collect);
+                assertEquals(expected, found, "query " + q);
+            }
+        }
+    }
+
+    @Test
+    void batchedRaycastsMatchOneByOne() {
+        Scenario scenario = Scenario.rain(2000, Scenario.ShapeMix.MIXED, 11);
+        world = scenario.createWorld();
+        world.update(1 / 60.0);
+        // Bodies turned by hand after the step are brought up to date before
+        // the rays are split over the threads
+        for (int i = 0; i < world.getBodies().size(); i += 10) world.getBodies().get(i).angle += 0.5;
+
+        int count = 1000;
+        double[] rays = new double[4 * count];
+        Random random = new Random(9);
+        for (int i = 0; i < rays.length; i++) rays[i] = random.nextDouble() * scenario.width;
+        RaycastHit[] batched = new RaycastHit[count];
+        for (int i = 0; i < count; i++) batched[i] = new RaycastHit();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            world.setExecutor(pool);
+            world.raycastClosest(rays, batched, count);
+        } finally {
+            pool.shutdown();
+        }
+
+        RaycastHit single = new RaycastHit();
+        for (int i = 0; i < count; i++) {
+            world.raycastClosest(rays[4 * i], rays[4 * i + 1], rays[4 * i + 2], rays[4 * i + 3], single);
+            assertSame(single.body, batched[i].body, "ray " + i);
+            assertEquals(single.piece, batched[i].piece, "ray " + i);
+            assertEquals(single.fraction, batched[i].fraction, "ray " + i);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class StaticGeometryTest {
+    @Test
+    void degeneratePiecesAreRejected() {
+        StaticGeometry geometry = new PhysicsWorld().getStaticGeometry();
+        int count = geometry.getPieceCount();
+        assertThrows(IllegalArgumentException.class, () -> geometry.addSegment(10, 20, 10, 20));
+        assertThrows(IllegalArgumentException.class, () -> geometry.addChain(new Vector2D(0, 0), new Vector2D(5, 0), new Vector2D(5, 0)));
+        assertThrows(IllegalArgumentException.class, () -> geometry.addPolygon(new Vector2D(0, 0), new Vector2D(5, 0)));
+        assertThrows(IllegalArgumentException.class,
+                () -> geometry.addPolygon(new Vector2D(0, 0), new Vector2D(5, 0), new Vector2D(5, 5), new Vector2D(0, 0)));
+        assertEquals(count, geometry.getPieceCount());
+
+        geometry.addSegment(10, 20, 10, 21);
+        geometry.addPolygon(new Vector2D(0, 0), new Vector2D(5, 0), new Vector2D(5, 5));
+        assertEquals(count + 2, geometry.getPieceCount());
+    }
+}
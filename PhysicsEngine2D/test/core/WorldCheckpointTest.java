@@ -0,0 +1,100 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sim.Scenario;
+
+class WorldCheckpointTest {
+    private static final double DT = 1 / 60.0;
+
+    @TempDir
+    Path dir;
+
+    private static long[] hashes(PhysicsWorld world, int steps) {
+        long[] h = new long[steps];
+        for (int i = 0; i < steps; i++) {
+            world.update(DT);
+            h[i] = world.stateHash();
+        }
+        return h;
+    }
+
+    @Test
+    void restoredWorldRepeatsTheSameSteps() {
+        for (BroadPhase broadPhase : new BroadPhase[] { new SweepAndPruneBroadPhase(), new UniformGridBroadPhase() }) {
+            PhysicsWorld world = new PhysicsWorld(broadPhase);
+            Scenario.pile(400, Scenario.ShapeMix.MIXED, 1).populate(world);
+            hashes(world, 60);
+
+            WorldCheckpoint checkpoint = new WorldCheckpoint();
+            checkpoint.capture(world);
+            PhysicsBody first = world.getBodies().get(0);
+            long[] original = hashes(world, 60);
+            checkpoint.restore(world);
+            assertSame(first, world.getBodies().get(0));
+            assertArrayEquals(original, hashes(world, 60), broadPhase.getClass().getSimpleName());
+
+            // The capture is left as it was, so it can be restored again
+            checkpoint.restore(world);
+            assertArrayEquals(original, hashes(world, 60));
+        }
+    }
+
+    @Test
+    void savedFileLoadsIntoAnotherWorld() throws IOException {
+        Scenario scenario = Scenario.rain(300, Scenario.ShapeMix.MIXED, 2);
+        PhysicsWorld world = scenario.createWorld();
+        world.setSeed(77);
+        hashes(world, 45);
+        Path file = dir.resolve("world.bin");
+        WorldCheckpoint.save(world, file);
+
+        PhysicsWorld loaded = new PhysicsWorld();
+        loaded.setBounds(0, 0, scenario.width, scenario.height);
+        WorldCheckpoint.load(loaded, file);
+        assertEquals(world.getBodies().size(), loaded.getBodies().size());
+        assertEquals(world.stateHash(), loaded.stateHash());
+        assertEquals(world.nextRandom(), loaded.nextRandom());
+        for (int i = 0; i < world.getBodies().size(); i++) {
+            PhysicsBody a = world.getBodies().get(i), b = loaded.getBodies().get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.shape.getClass(), b.shape.getClass());
+            assertEquals(a.getRadius(), b.getRadius());
+            assertEquals(a.mass, b.mass);
+            assertEquals(a.isStatic, b.isStatic);
+        }
+        assertArrayEquals(hashes(world, 60), hashes(loaded, 60));
+    }
+
+    @Test
+    void restoreAddsAndDropsBodiesToMatchTheCount() {
+        PhysicsWorld world = Scenario.rain(100, Scenario.ShapeMix.CIRCLE, 4).createWorld();
+        hashes(world, 10);
+        WorldCheckpoint checkpoint = new WorldCheckpoint();
+        checkpoint.capture(world);
+        long hash = world.stateHash();
+
+        world.addBody(new PhysicsBody(new Vector2D(50, 50), CircleShape.of(10), 1, false));
+        checkpoint.restore(world);
+        assertEquals(100, world.getBodies().size());
+        assertEquals(hash, world.stateHash());
+
+        world.removeBody(world.getBodies().get(3));
+        world.removeBody(world.getBodies().get(7));
+        checkpoint.restore(world);
+        assertEquals(100, world.getBodies().size());
+        assertEquals(hash, world.stateHash());
+    }
+
+    @Test
+    void restoreBeforeCaptureFails() {
+        assertThrows(IllegalStateException.class, () -> new WorldCheckpoint().restore(new PhysicsWorld()));
+    }
+}
@@ -0,0 +1,105 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sim.Scenario;
+
+class WorldRecorderTest {
+    private static final double DT = 1 / 60.0;
+
+    @TempDir
+    Path dir;
+
+    // Steps replayed, failing on the first whose hash differs
+    private static int replayAll(Path log) throws IOException {
+        try (WorldReplay replay = new WorldReplay(log)) {
+            while (replay.nextStep()) {
+                assertEquals(replay.getRecordedHash(), replay.getReplayedHash(), "step " + replay.getStep());
+            }
+            return replay.getStep();
+        }
+    }
+
+    @Test
+    void replayOfAScriptedSessionMatchesEveryStep() throws IOException {
+        Path log = dir.resolve("session.log");
+        PhysicsWorld world = new PhysicsWorld();
+        Scenario.pile(200, Scenario.ShapeMix.MIXED, 8).populate(world);
+        world.setSeed(3);
+        world.setGravity(40, 300);
+        for (int i = 0; i < 20; i++) world.update(DT);
+
+        try (WorldRecorder recorder = new WorldRecorder(log)) {
+            world.setRecorder(recorder);
+            for (int step = 0; step < 300; step++) {
+                if (step % 25 == 0) {
+                    PhysicsBody b = new PhysicsBody(new Vector2D(100 + step, 50), CircleShape.of(8), 2, false);
+                    b.angularVelocity = world.nextRandom() * 10;
+                    world.addBody(b);
+                }
+                if (step == 60) world.getStaticGeometry().addSegment(0, 250, 200, 300);
+                if (step == 90) world.removeBody(world.getBodies().get(17));
+                if (step == 120) world.setGravity(0, -200);
+                if (step == 150) world.setBounds(0, 0, 500, 700);
+                if (step == 200) world.reset();
+                world.update(DT);
+            }
+            world.setRecorder(null);
+            assertEquals(300, recorder.getStepCount());
+        }
+        assertEquals(300, replayAll(log));
+    }
+
+    @Test
+    void replayFindsTheStepOfAnUnrecordedChange() throws IOException {
+        Path log = dir.resolve("diverged.log");
+        PhysicsWorld world = Scenario.rain(100, Scenario.ShapeMix.CIRCLE, 5).createWorld();
+        try (WorldRecorder recorder = new WorldRecorder(log)) {
+            world.setRecorder(recorder);
+            for (int step = 0; step < 50; step++) {
+                if (step == 30) world.getBodies().get(4).velocity.x += 1;
+                world.update(DT);
+            }
+            world.setRecorder(null);
+        }
+
+        try (WorldReplay replay = new WorldReplay(log)) {
+            assertNull(replay.getWorld());
+            while (replay.nextStep() && replay.matches()) { }
+            assertEquals(31, replay.getStep());
+            assertFalse(replay.matches());
+        }
+    }
+
+    @Test
+    void worldsWithForceFieldsAreNotRecorded() throws IOException {
+        PhysicsWorld world = new PhysicsWorld();
+        world.addForceField(new UniformForceField(0, 10));
+        try (WorldRecorder recorder = new WorldRecorder(dir.resolve("fields.log"))) {
+            assertThrows(IllegalStateException.class, () -> world.setRecorder(recorder));
+        }
+
+        PhysicsWorld recorded = new PhysicsWorld();
+        try (WorldRecorder recorder = new WorldRecorder(dir.resolve("recorded.log"))) {
+            recorded.setRecorder(recorder);
+            assertThrows(IllegalStateException.class, () -> recorded.addForceField(new UniformForceField(0, 10)));
+            assertTrue(recorded.getForceFields().isEmpty());
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("not.log");
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        assertThrows(IllegalArgumentException.class, () -> new WorldReplay(file));
+    }
+}
@@ -0,0 +1,83 @@
+package core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import sim.Scenario;
+
+class WorldStatsTest {
+    private static final double DT = 1 / 60.0;
+
+    private static long[] values(WorldStats s) {
+        return new long[] {
+            s.getSteps(), s.getStepNanos(), s.getGravityNanos(), s.getVelocityNanos(), s.getCollisionNanos(),
+            s.getPositionNanos(), s.getBoundaryNanos(), s.getSleepNanos(), s.getParticleNanos(),
+            s.getCandidatePairs(), s.getStaticPairs(), s.getContacts(), s.getIslands(), s.getAwakeBodies(),
+            s.getSleepingBodies(), s.getParticles(), s.getVelocityIterations(), s.getPositionIterations(),
+            s.getAllocatedBytes(), (long) s.getAverageStepMillis()
+        };
+    }
+
+    @Test
+    void enabledStatsAreFilledIn() {
+        PhysicsWorld world = Scenario.pile(300, Scenario.ShapeMix.MIXED, 4).createWorld();
+        world.getParticles().addEmitter(new ParticleEmitter(100, 100, 2, 60, 100));
+        world.setStatsEnabled(true);
+        for (int i = 0; i < 60; i++) world.update(DT);
+
+        WorldStats s = world.getStats();
+        assertEquals(60, s.getSteps());
+        assertTrue(s.getStepNanos() > 0);
+        assertTrue(s.getAverageStepMillis() > 0);
+        assertTrue(s.getCollisionNanos() > 0);
+        assertTrue(s.getPositionNanos() > 0);
+        assertTrue(s.getGravityNanos() + s.getVelocityNanos() + s.getCollisionNanos() + s.getPositionNanos()
+                + s.getBoundaryNanos() + s.getSleepNanos() + s.getParticleNanos() <= s.getStepNanos());
+        assertTrue(s.getCandidatePairs() > 0);
+        assertTrue(s.getStaticPairs() > 0);
+        assertTrue(s.getContacts() > 0 && s.getContacts() <= s.getCandidatePairs());
+        assertTrue(s.getIslands() > 0);
+        int dynamic = 0;
+        for (PhysicsBody b : world.getBodies()) if (!b.isStatic) dynamic++;
+        assertEquals(dynamic, s.getAwakeBodies() + s.getSleepingBodies());
+        assertEquals(world.getParticles().getCount(), s.getParticles());
+        assertEquals(world.getSolver().getVelocityIterations(), s.getVelocityIterations());
+        assertEquals(world.getSolver().getPositionIterations(), s.getPositionIterations());
+
+        WorldStats copy = new WorldStats();
+        copy.copy(s);
+        assertEquals(Arrays.toString(values(s)), Arrays.toString(values(copy)));
+    }
+
+    // No flight recording is running, so not even the JFR event is made
+    @Test
+    void enabledStatsDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        PhysicsWorld world = Scenario.pile(300, Scenario.ShapeMix.MIXED, 4).createWorld();
+        world.setStatsEnabled(true);
+        for (int i = 0; i < 200; i++) world.update(DT);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) world.update(DT);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated < 1000, allocated + " bytes over 1000 steps");
+    }
+
+    @Test
+    void disabledStatsStayAsTheyWere() {
+        PhysicsWorld world = Scenario.pile(300, Scenario.ShapeMix.MIXED, 4).createWorld();
+        for (int i = 0; i < 30; i++) world.update(DT);
+        assertEquals(Arrays.toString(new long[values(world.getStats()).length]),
+                Arrays.toString(values(world.getStats())));
+
+        world.setStatsEnabled(true);
+        world.update(DT);
+        long[] once = values(world.getStats());
+        assertEquals(1, once[0]);
+        world.setStatsEnabled(false);
+        for (int i = 0; i < 30; i++) world.update(DT);
+        assertEquals(Arrays.toString(once), Arrays.toString(values(world.getStats())));
+    }
+}
@@ -0,0 +1,262 @@
+package sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import core.CircleShape;
+import core.PhysicsBody;
+import core.PhysicsWorld;
+import core.UniformForceField;
+import core.Vector2D;
+import core.WorldCheckpoint;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ShardedWorldTest {
+    private static final double DT = 1 / 60.0;
+
+    // Workers on threads of this process, stepped and routed like
+    // ShardedWorld does, so their worlds can be looked at between steps
+    private static final class LocalShards implements AutoCloseable {
+        final ShardWorker[] workers;
+        private final ShardChannel[] channels;
+        private final Thread[] threads;
+        private final ByteBuffer[] pending;
+        private final int[] records;
+
+        LocalShards(PhysicsWorld world, ShardLayout layout, double ghostWidth) throws IOException {
+            int n = layout.getRegionCount();
+            workers = new ShardWorker[n];
+            channels = new ShardChannel[n];
+            threads = new Thread[n];
+            pending = new ByteBuffer[n];
+            records = new int[n];
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                for (int shard = 0; shard < n; shard++) {
+                    ShardWorker worker = workers[shard] = new ShardWorker(shard, layout, ghostWidth);
+                    worker.getWorld().setGravity(world.getGravity().x, world.getGravity().y);
+                    ShardChannel channel = new ShardChannel(SocketChannel.open(server.getLocalAddress()));
+                    channels[shard] = new ShardChannel(server.accept());
+                    threads[shard] = new Thread(() -> {
+                        try {
+                            worker.serve(channel);
+                            channel.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    threads[shard].start();
+                    pending[shard] = ShardChannel.allocate(1 << 16);
+                    begin(shard);
+                }
+            }
+            for (PhysicsBody b : world.getBodies()) {
+                int shard = layout.owner(b.position.x, b.position.y);
+                ByteBuffer out = pending[shard] = ShardChannel.reserve(pending[shard], 4 + WorldCheckpoint.BODY_BYTES);
+                out.putInt(ShardWorker.MIGRANT);
+                WorldCheckpoint.writeBody(b, out, out.position());
+                out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+                records[shard]++;
+            }
+        }
+
+        private void begin(int shard) {
+            ShardChannel.begin(pending[shard]).putInt(ShardWorker.STEP).putDouble(0).putInt(0);
+            records[shard] = 0;
+        }
+
+        void step(double dt) throws IOException {
+            for (int shard = 0; shard < channels.length; shard++) {
+                channels[shard].send(pending[shard].putDouble(8, dt).putInt(16, records[shard]));
+                begin(shard);
+            }
+            for (int shard = 0; shard < channels.length; shard++) {
+                ByteBuffer in = channels[shard].receive();
+                in.getLong();
+                in.getInt();
+                for (int n = in.getInt(); n > 0; n--) {
+                    int to = in.getInt();
+                    ByteBuffer out = pending[to] = ShardChannel.reserve(pending[to], 4 + WorldCheckpoint.BODY_BYTES);
+                    out.putInt(in.getInt());
+                    out.put(out.position(), in, in.position(), WorldCheckpoint.BODY_BYTES);
+                    out.position(out.position() + WorldCheckpoint.BODY_BYTES);
+                    in.position(in.position() + WorldCheckpoint.BODY_BYTES);
+                    records[to]++;
+                }
+            }
+        }
+
+        // The body with the id in the world of the shard, owned or a ghost
+        PhysicsBody find(int shard, int id) {
+            for (PhysicsBody b : workers[shard].getWorld().getBodies()) if (b.getId() == id) return b;
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            ByteBuffer stop = ShardChannel.allocate(8);
+            for (int shard = 0; shard < channels.length; shard++) {
+                ShardChannel.begin(stop).putInt(ShardWorker.STOP);
+                channels[shard].send(stop);
+                channels[shard].close();
+            }
+            try {
+                for (Thread thread : threads) thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void layoutGivesEveryPointOneRegion() {
+        ShardLayout layout = new ShardLayout(0, 0, 400, 200, 4, 2);
+        assertEquals(8, layout.getRegionCount());
+        assertEquals(0, layout.owner(10, 10));
+        assertEquals(3, layout.owner(399, 10));
+        assertEquals(5, layout.owner(150, 150));
+        // Outside the bounds, the nearest region
+        assertEquals(0, layout.owner(-50, -50));
+        assertEquals(7, layout.owner(1000, 1000));
+        assertEquals(100, layout.getRegionMinX(1));
+        assertEquals(100, layout.getRegionMinY(5));
+        assertThrows(IllegalArgumentException.class, () -> ShardLayout.strips(0, 0, 400, 200, 0));
+    }
+
+    @Test
+    void bodiesAndIdsSurviveMigration() throws IOException {
+        Scenario scenario = Scenario.rain(400, Scenario.ShapeMix.MIXED, 6);
+        PhysicsWorld world = scenario.createWorld();
+        ShardLayout layout = ShardLayout.strips(0, 0, scenario.width, scenario.height, 2);
+        int[] startCounts = new int[2];
+        for (PhysicsBody b : world.getBodies()) startCounts[layout.owner(b.position.x, b.position.y)]++;
+
+        try (ShardedWorld sharded = new ShardedWorld(world, layout, ShardedWorld.ghostWidth(world))) {
+            int moved = 0;
+            for (int i = 0; i < 120; i++) {
+                sharded.step(DT);
+                assertEquals(400, sharded.getBodyCount(), "step " + i);
+                if (sharded.getBodyCount(0) != startCounts[0]) moved++;
+            }
+            assertTrue(moved > 0, "no body crossed the border");
+
+            List<PhysicsBody> bodies = sharded.collect();
+            assertEquals(400, bodies.size());
+            for (int i = 0; i < bodies.size(); i++) {
+                PhysicsBody b = bodies.get(i);
+                assertEquals(world.getBodies().get(i).getId(), b.getId());
+                assertEquals(world.getBodies().get(i).shape.getClass(), b.shape.getClass());
+                assertTrue(b.position.x >= 0 && b.position.x <= scenario.width, "body " + b.getId() + " left the box");
+            }
+        }
+    }
+
+    @Test
+    void bodyMovesToTheShardItCrossesInto() throws IOException {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setBounds(0, 0, 800, 400);
+        world.setGravity(0, 0);
+        PhysicsBody b = new PhysicsBody(new Vector2D(300, 200), CircleShape.of(10), 1, false);
+        b.linearDamping = 1;
+        b.velocity.set(240, 0);
+        world.addBody(b);
+
+        try (ShardedWorld sharded = new ShardedWorld(world, ShardLayout.strips(0, 0, 800, 400, 2), 40)) {
+            sharded.step(DT);
+            assertEquals(1, sharded.getBodyCount(0));
+            assertEquals(0, sharded.getBodyCount(1));
+            // A second to cross the border at x = 400
+            for (int i = 0; i < 60; i++) sharded.step(DT);
+            assertEquals(0, sharded.getBodyCount(0));
+            assertEquals(1, sharded.getBodyCount(1));
+            PhysicsBody moved = sharded.collect().get(0);
+            assertEquals(b.getId(), moved.getId());
+            assertEquals(300 + 61 * 240 * DT, moved.position.x, 1e-6);
+            assertEquals(200, moved.position.y, 1e-9);
+        }
+    }
+
+    @Test
+    void bodiesCollideThroughTheirGhosts() throws IOException {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setBounds(0, 0, 800, 400);
+        world.setGravity(0, 0);
+        for (int side = -1; side <= 1; side += 2) {
+            PhysicsBody b = new PhysicsBody(new Vector2D(400 + side * 80, 200), CircleShape.of(20), 1, false);
+            b.linearDamping = 1;
+            b.velocity.set(-side * 100, 0);
+            world.addBody(b);
+        }
+
+        try (ShardedWorld sharded = new ShardedWorld(world, ShardLayout.strips(0, 0, 800, 400, 2), ShardedWorld.ghostWidth(world))) {
+            for (int i = 0; i < 90; i++) sharded.step(DT);
+            List<PhysicsBody> bodies = sharded.collect();
+            assertEquals(2, bodies.size());
+            // They met at the border and went back the way they came
+            assertTrue(bodies.get(0).position.x < 380 && bodies.get(0).velocity.x < 0, "left body at " + bodies.get(0).position.x);
+            assertTrue(bodies.get(1).position.x > 420 && bodies.get(1).velocity.x > 0, "right body at " + bodies.get(1).position.x);
+        }
+    }
+
+    @Test
+    void bodyThatCrossesStaysAGhostOfTheShardItLeft() throws IOException {
+        // Two touching circles moving right together; the leading one crosses
+        // the border at x = 400 with the other still behind it
+        PhysicsWorld world = new PhysicsWorld();
+        world.setGravity(0, 0);
+        PhysicsBody behind = new PhysicsBody(new Vector2D(371, 200), CircleShape.of(10), 1, false);
+        PhysicsBody ahead = new PhysicsBody(new Vector2D(390, 200), CircleShape.of(10), 1, false);
+        for (PhysicsBody b : new PhysicsBody[] { behind, ahead }) {
+            b.linearDamping = 1;
+            b.velocity.set(30, 0);
+            world.addBody(b);
+        }
+
+        try (LocalShards shards = new LocalShards(world, ShardLayout.strips(0, 0, 800, 400, 2), 40)) {
+            int crossed = -1;
+            for (int i = 0; i < 60; i++) {
+                shards.step(DT);
+                if (i == 0) continue;
+                if (crossed < 0 && shards.find(1, ahead.getId()) != null) crossed = i;
+                PhysicsBody left = shards.find(0, behind.getId()), right = shards.find(0, ahead.getId());
+                assertNotNull(right, "step " + i);
+                // The body behind never gets into the space the other one left
+                assertTrue(right.position.x - left.position.x > 19, "step " + i);
+            }
+            assertTrue(crossed > 0, "the body never crossed");
+        }
+    }
+
+    @Test
+    void workersFallWithTheWorldsGravity() throws IOException {
+        PhysicsWorld world = new PhysicsWorld();
+        world.setBounds(0, 0, 800, 400);
+        world.setGravity(0, -120);
+        PhysicsBody b = new PhysicsBody(new Vector2D(600, 300), CircleShape.of(10), 1, false);
+        b.linearDamping = 1;
+        world.addBody(b);
+        try (ShardedWorld sharded = new ShardedWorld(world, ShardLayout.strips(0, 0, 800, 400, 2), 40)) {
+            for (int i = 0; i < 60; i++) sharded.step(DT);
+            PhysicsBody fallen = sharded.collect().get(0);
+            assertEquals(-120, fallen.velocity.y, 1e-6);
+            assertTrue(fallen.position.y < 250);
+        }
+    }
+
+    @Test
+    void worldsWithForceFieldsAreNotSharded() {
+        PhysicsWorld world = new PhysicsWorld();
+        world.addForceField(new UniformForceField(5, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedWorld(world, ShardLayout.strips(0, 0, 800, 600, 2), 40));
+    }
+}
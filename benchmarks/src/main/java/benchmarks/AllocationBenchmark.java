@@ -0,0 +1,48 @@
+package benchmarks;
+
+import core.PhysicsWorld;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sim.Scenario;
+
+// PhysicsWorld.update on a busy world that is never rebuilt, so the broad
+// phase buffers reach their steady state during warmup. What to look at is
+// the GC profiler's gc.alloc.rate.norm, the bytes allocated per update,
+// which should be 0:
+//
+//   java -jar benchmarks/target/benchmarks.jar AllocationBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AllocationBenchmark {
+    @Param({"2000"})
+    public int bodies;
+
+    private Scenario scenario;
+    private PhysicsWorld world;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        scenario = Scenario.rain(bodies, Scenario.ShapeMix.MIXED, 42);
+        world = scenario.createWorld();
+    }
+
+    @Benchmark
+    public void update() {
+        world.update(WorldState.DT, scenario.width, scenario.height);
+    }
+}
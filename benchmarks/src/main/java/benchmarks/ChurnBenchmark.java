@@ -0,0 +1,54 @@
+package benchmarks;
+
+import core.BodyPool;
+import core.PhysicsBody;
+import core.PhysicsWorld;
+import core.Shape;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// PhysicsWorld.update while churn bodies are replaced before every step, the
+// way projectiles or debris come and go. Removed bodies go to a BodyPool and
+// come back as the new ones, spawned along the top of the scenario.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ChurnBenchmark {
+    @Param({"10", "100"})
+    public int churn;
+
+    private final BodyPool pool = new BodyPool();
+    private final List<PhysicsBody> spawned = new ArrayList<>();
+    private final Random random = new Random(1);
+
+    @Benchmark
+    public void update(WorldState state) {
+        PhysicsWorld world = state.world;
+        List<PhysicsBody> bodies = world.getBodies();
+        spawned.clear();
+        for (int i = 0; i < churn && !bodies.isEmpty(); i++) {
+            PhysicsBody body = bodies.get(random.nextInt(bodies.size()));
+            Shape shape = body.shape;
+            world.removeBody(body);
+            pool.release(body);
+            spawned.add(pool.acquire(random.nextDouble() * state.scenario.width, random.nextDouble() * state.scenario.height / 4, shape, 10, false));
+        }
+        world.addBodies(spawned);
+        state.step();
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import core.CircleShape;
+import core.MutualAttraction;
+import core.PhysicsBody;
+import core.PhysicsWorld;
+import core.Vector2D;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// PhysicsWorld.applyForceFields with one MutualAttraction over a disc of
+// bodies, building its Barnes-Hut tree and summing every body's pull
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ForceFieldBenchmark {
+    @Param({"10000", "100000"})
+    public int bodies;
+
+    @Param({"0.5", "1.0"})
+    public double theta;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private PhysicsWorld world;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        world = new PhysicsWorld();
+        world.setGravity(0, 0);
+        if (parallel) world.setExecutor(ForkJoinPool.commonPool());
+        Random random = new Random(1);
+        for (int i = 0; i < bodies; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI, distance = Math.sqrt(random.nextDouble()) * 5000;
+            world.addBody(new PhysicsBody(new Vector2D(Math.cos(angle) * distance, Math.sin(angle) * distance),
+                    CircleShape.of(2), 1, false));
+        }
+        MutualAttraction attraction = new MutualAttraction(1);
+        attraction.setTheta(theta);
+        world.addForceField(attraction);
+    }
+
+    @Benchmark
+    public void applyForceFields() {
+        world.applyForceFields(WorldState.DT);
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import core.ParticleSystem;
+import core.PhysicsWorld;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// PhysicsWorld.update with nothing in the world but particles, dropped as a
+// square block that settles into a pile on the floor during warmup
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParticleBenchmark {
+    @Param({"100000", "500000"})
+    public int particles;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private PhysicsWorld world;
+
+    @Setup(Level.Trial)
+    public void createWorld() {
+        world = new PhysicsWorld();
+        world.setBounds(0, 0, 2000, 2000);
+        if (parallel) world.setExecutor(ForkJoinPool.commonPool());
+        ParticleSystem system = world.getParticles();
+        system.setMaxParticles(particles);
+        int side = (int) Math.ceil(Math.sqrt(particles));
+        for (int i = 0; i < particles; i++) {
+            system.spawn(10 + (i % side) * 2.2, 1990 - (i / side) * 2.2, 0, 0, 1, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    @Benchmark
+    public void update() {
+        world.update(WorldState.DT);
+    }
+}
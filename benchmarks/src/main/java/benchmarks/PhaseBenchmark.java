@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Each phase of PhysicsWorld.update on its own. The phases before the measured
+// one run in an untimed per-invocation setup and the ones after it in the
+// teardown, so every invocation sees the state a real step would.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseBenchmark {
+    public abstract static class PhaseState extends WorldState {
+        abstract int phase();
+
+        @Setup(Level.Invocation)
+        public void before() {
+            runPhases(0, phase());
+        }
+
+        @TearDown(Level.Invocation)
+        public void after() {
+            runPhases(phase() + 1, PHASES);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class GravityState extends PhaseState {
+        @Override int phase() { return 0; }
+    }
+
+    @State(Scope.Thread)
+    public static class VelocityState extends PhaseState {
+        @Override int phase() { return 1; }
+    }
+
+    @State(Scope.Thread)
+    public static class CollisionState extends PhaseState {
+        @Override int phase() { return 2; }
+    }
+
+    @State(Scope.Thread)
+    public static class PositionState extends PhaseState {
+        @Override int phase() { return 3; }
+    }
+
+    @State(Scope.Thread)
+    public static class BoundaryState extends PhaseState {
+        @Override int phase() { return 4; }
+    }
+
+    @State(Scope.Thread)
+    public static class SleepState extends PhaseState {
+        @Override int phase() { return 5; }
+    }
+
+    @Benchmark
+    public void gravity(GravityState state) {
+        state.world.applyGravity();
+    }
+
+    @Benchmark
+    public void velocities(VelocityState state) {
+        state.world.integrateVelocities(WorldState.DT);
+    }
+
+    @Benchmark
+    public void collisions(CollisionState state) {
+        state.world.handleCollisions(WorldState.DT);
+    }
+
+    @Benchmark
+    public void positions(PositionState state) {
+        state.world.integratePositions(WorldState.DT);
+    }
+
+    @Benchmark
+    public void boundaries(BoundaryState state) {
+        state.world.handleBoundaries();
+    }
+
+    @Benchmark
+    public void sleeping(SleepState state) {
+        state.world.updateSleeping(WorldState.DT);
+    }
+}
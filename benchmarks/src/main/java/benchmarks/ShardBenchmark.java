@@ -0,0 +1,89 @@
+package benchmarks;
+
+import core.PhysicsWorld;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sim.Scenario;
+import sim.ShardLayout;
+import sim.ShardedWorld;
+
+// Weak scaling of sim.ShardedWorld: the rain scenario with the same number
+// of bodies per shard, in vertical strips over 1, 2 and 4 worker processes,
+// next to one world of all the bodies in this process. With a core per
+// worker, sharded steps per second should stay close to flat as shards are
+// added, while oneWorld slows down with the bodies.
+//
+//   java -jar benchmarks/target/benchmarks.jar ShardBenchmark -p shards=1,2,4,8
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardBenchmark {
+    @State(Scope.Thread)
+    public static class Worlds {
+        @Param({"1", "2", "4"})
+        public int shards;
+
+        @Param({"2000"})
+        public int bodiesPerShard;
+
+        public Scenario scenario;
+
+        @Setup(Level.Trial)
+        public void createScenario() {
+            scenario = Scenario.rain(bodiesPerShard * shards, Scenario.ShapeMix.MIXED, 1);
+        }
+    }
+
+    // Rain settles into a pile, so both kinds of world start over every iteration
+    @State(Scope.Thread)
+    public static class OneWorld {
+        public PhysicsWorld world;
+
+        @Setup(Level.Iteration)
+        public void createWorld(Worlds worlds) {
+            world = worlds.scenario.createWorld();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sharded {
+        public ShardedWorld world;
+
+        @Setup(Level.Iteration)
+        public void createWorld(Worlds worlds) throws IOException {
+            PhysicsWorld seed = worlds.scenario.createWorld();
+            ShardLayout layout = ShardLayout.strips(0, 0, worlds.scenario.width, worlds.scenario.height, worlds.shards);
+            world = new ShardedWorld(seed, layout, ShardedWorld.ghostWidth(seed));
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            world.close();
+        }
+    }
+
+    @Benchmark
+    public void sharded(Sharded state) throws IOException {
+        state.world.step(WorldState.DT);
+    }
+
+    @Benchmark
+    public void oneWorld(OneWorld state) {
+        state.world.update(WorldState.DT);
+    }
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import core.BroadPhase;
+import core.BruteForceBroadPhase;
+import core.DynamicAabbTreeBroadPhase;
+import core.PhysicsWorld;
+import core.SweepAndPruneBroadPhase;
+import core.UniformGridBroadPhase;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import sim.Scenario;
+
+// A world built from a sim.Scenario, parameterized by body count, shape mix,
+// density and broad phase. "rain" is rebuilt for every iteration so it stays
+// sparse; "pile" is settled once per trial.
+@State(Scope.Thread)
+public class WorldState {
+    public static final double DT = 0.016;
+    static final int SETTLE_STEPS = 200;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"CIRCLE", "RECTANGLE", "TRIANGLE", "MIXED"})
+    public Scenario.ShapeMix shapes;
+
+    @Param({"rain", "pile"})
+    public String density;
+
+    // Only the default by default; pass -p broadPhase=sap,grid,tree,brute to compare
+    @Param({"sap"})
+    public String broadPhase;
+
+    public Scenario scenario;
+    public PhysicsWorld world;
+
+    @Setup(Level.Trial)
+    public void createScenario() {
+        scenario = density.equals("pile") ? Scenario.pile(bodies, shapes, 1) : Scenario.rain(bodies, shapes, 1);
+        if (density.equals("pile")) {
+            world = createWorld(scenario);
+            for (int i = 0; i < SETTLE_STEPS; i++) step();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createWorld() {
+        if (density.equals("rain")) {
+            world = createWorld(scenario);
+        }
+    }
+
+    private PhysicsWorld createWorld(Scenario scenario) {
+        PhysicsWorld created = scenario.createWorld();
+        created.setBroadPhase(createBroadPhase(broadPhase));
+        return created;
+    }
+
+    static BroadPhase createBroadPhase(String name) {
+        switch (name) {
+            case "sap": return new SweepAndPruneBroadPhase();
+            case "grid": return new UniformGridBroadPhase();
+            case "tree": return new DynamicAabbTreeBroadPhase();
+            case "brute": return new BruteForceBroadPhase();
+            default: throw new IllegalArgumentException("No broad phase " + name);
+        }
+    }
+
+    public void step() {
+        world.update(DT, scenario.width, scenario.height);
+    }
+
+    static final int PHASES = 6;
+
+    // Runs phases [from, to) of PhysicsWorld.update in order
+    public void runPhases(int from, int to) {
+        for (int phase = from; phase < to; phase++) {
+            switch (phase) {
+                case 0: world.applyGravity(); break;
+                case 1: world.integrateVelocities(DT); break;
+                case 2: world.handleCollisions(DT); break;
+                case 3: world.integratePositions(DT); break;
+                case 4: world.handleBoundaries(); break;
+                case 5: world.updateSleeping(DT); break;
+                default: throw new IllegalArgumentException("No phase " + phase);
+            }
+        }
+    }
+}